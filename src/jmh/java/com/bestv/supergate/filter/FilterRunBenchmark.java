@@ -0,0 +1,202 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.RpcTransport;
+import com.bestv.supergate.util.SequenceTraceIdGenerator;
+import com.bestv.supergate.util.StubRpcServer;
+import com.codahale.metrics.MetricRegistry;
+import com.netflix.zuul.context.RequestContext;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器端到端基准
+ * 声明式路由过滤器的run()从当前请求取参数、经连接池发往本机测试用rpc服务端、把业务结果写入回复,
+ * 与容器线程中同步执行时的路径相同; 抽样模式同时给出吞吐和延迟分位数;
+ * 回复体只计数不保存, 避免模拟回复逐字节写入的开销计入结果
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class FilterRunBenchmark {
+
+    /** 服务码 */
+    private static final String SERVICE_CODE = "r001.001.001";
+
+    /** 应用名 */
+    private static final String APP_NAME = "stub";
+
+    /** 业务结果附加内容大小, 字节 */
+    @Param({"0", "16384"})
+    public int payloadBytes;
+
+    /** 测试用rpc服务端 */
+    private StubRpcServer server;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    /** 过滤器 */
+    private DeclaredRouteFilter filter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+        RpcRequestContext.setRouterServer(Mockito.mock(RouterServer.class));
+
+        server = new StubRpcServer();
+        server.setPayloadBytes(payloadBytes);
+        server.start();
+
+        RpcRequestContext.putHandler(APP_NAME, new RequestSenderHandler(APP_NAME, "com.bestv.stub.StubFacade",
+                "127.0.0.1", server.getPort(), true, false, null, null));
+
+        Map<String, Object> route = new HashMap<String, Object>();
+        route.put("serviceCode", SERVICE_CODE);
+        route.put("appName", APP_NAME);
+        route.put("serviceInterface", "com.bestv.stub.StubFacade");
+        route.put("methodName", "query");
+        route.put("parameters", Collections.singletonMap("id", "id"));
+        filter = new DeclaredRouteFilter(RouteDefinition.parse(route, "bench"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+
+        transport.shutdown();
+        server.stop();
+    }
+
+    @Benchmark
+    public int run(Exchange exchange) {
+
+        exchange.response.setCommitted(false);
+        exchange.response.reset();
+        filter.run();
+        return exchange.response.getWrittenBytes();
+    }
+
+    /**
+     * 每个线程的请求和回复, 设置到该线程的zuul请求上下文
+     */
+    @State(Scope.Thread)
+    public static class Exchange {
+
+        /** 请求 */
+        MockHttpServletRequest request;
+
+        /** 回复, 每次清空复用 */
+        CountingResponse response;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            request = new MockHttpServletRequest("GET", "/" + SERVICE_CODE);
+            request.addParameter("id", String.valueOf(Thread.currentThread().getId()));
+            response = new CountingResponse();
+
+            RequestContext context = RequestContext.getCurrentContext();
+            context.setRequest(request);
+            context.setResponse(response);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            RequestContext.getCurrentContext().unset();
+        }
+    }
+
+    /**
+     * 只统计回复体字节数的回复
+     * 模拟回复的输出流只实现了单字节写入, 大回复时开销远超网关本身
+     */
+    static class CountingResponse extends MockHttpServletResponse {
+
+        /** 回复体字节数 */
+        private int writtenBytes;
+
+        /** 回复体输出流 */
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setWriteListener(WriteListener writeListener) {
+
+            }
+
+            public void write(int b) {
+                writtenBytes++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writtenBytes += len;
+            }
+        };
+
+        /**
+         * @see MockHttpServletResponse#getOutputStream()
+         */
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        /**
+         * @see MockHttpServletResponse#reset()
+         */
+        @Override
+        public void reset() {
+
+            super.reset();
+            writtenBytes = 0;
+        }
+
+        /**
+         * method for get writtenBytes
+         */
+        int getWrittenBytes() {
+            return writtenBytes;
+        }
+    }
+}
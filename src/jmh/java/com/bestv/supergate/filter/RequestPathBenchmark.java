@@ -0,0 +1,218 @@
+package com.bestv.supergate.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RoutePlan;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.RpcRequestFrame;
+import com.bestv.supergate.util.SequenceTraceIdGenerator;
+import com.bestv.supergate.util.TraceIdGenerator;
+import com.codahale.metrics.MetricRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个请求的参数绑定和编码基准, 配合-prof gc查看每次请求的分配量
+ * 现在的路径: 按路由计划中排好序的参数key取值、校验, 按预编译模板直接编码到缓冲;
+ * 原先的路径: 每次拼接模板缓存键并查表, 复制并排序参数占位键, 给参数值加引号,
+ * 用MessageFormat生成请求字符串, fastjson解析后放入请求id, 再序列化为字节
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestPathBenchmark {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 原先模板缓存键的分隔符 */
+    private static final String SPECIAL_STR_A = "★☆";
+
+    /** 原先模板缓存键的分隔符 */
+    private static final String SPECIAL_STR_B = "☆★";
+
+    /** 接口名 */
+    private static final String SERVICE_INTERFACE = "com.bestv.bizprod.common.service.api.UserManageFacade";
+
+    /** 方法名 */
+    private static final String METHOD_NAME = "normalLogin";
+
+    /** 请求参数类名 */
+    private static final String REQUEST_CLASS = "com.bestv.bizprod.common.service.api.request.NormalLoginRequest";
+
+    /** 原先由参数树生成的请求模板 */
+    private static final String REQUEST_GEN = "'{'\"@type\":\"com.bestv.flame.common.dto.RpcRequest\","
+            + "\"serviceInterface\":\"" + SERVICE_INTERFACE + "\",\"methodName\":\"" + METHOD_NAME + "\","
+            + "\"args\":['{'\"@type\":\"" + REQUEST_CLASS + "\",\"password\":{0},\"phoneNo\":{1}'}']'}'";
+
+    /** 请求 */
+    private MockHttpServletRequest request;
+
+    /** 请求id生成 */
+    private TraceIdGenerator traceIdGenerator;
+
+    /** 缓冲分配 */
+    private ByteBufAllocator allocator;
+
+    /** 与routes.yaml中b001.001.002相同的路由计划 */
+    private RoutePlan routePlan;
+
+    /** 原先的类信息缓冲 */
+    private StringBuilder classInfoStringBuffer;
+
+    /** 原先的参数链接缓冲 */
+    private StringBuilder paramStringBuffer;
+
+    /** 原先的占位键 -> 请求参数key */
+    private Map<String, Object> argumentMap;
+
+    /** 原先的模板缓存 */
+    private Map<String, String> genMap;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        RpcRequestContext.setMetricRegistry(new MetricRegistry());
+        RpcRequestContext.setRouterServer(Mockito.mock(RouterServer.class));
+        RpcRequestContext.putHandler("bizprod", Mockito.mock(RequestSenderHandler.class));
+
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("request.password", "password");
+        parameters.put("request.phoneNo", "phoneNo");
+
+        Map<String, Object> route = new HashMap<String, Object>();
+        route.put("serviceCode", "b001.001.002");
+        route.put("appName", "bizprod");
+        route.put("serviceInterface", SERVICE_INTERFACE);
+        route.put("methodName", METHOD_NAME);
+        route.put("classInfo", Collections.singletonMap("request", REQUEST_CLASS));
+        route.put("parameters", parameters);
+        routePlan = new DeclaredRouteFilter(RouteDefinition.parse(route, "bench")).getRoutePlan();
+
+        request = new MockHttpServletRequest("GET", "/b001.001.002");
+        request.addParameter("password", "password123");
+        request.addParameter("phoneNo", "13800000000");
+
+        traceIdGenerator = new SequenceTraceIdGenerator();
+        allocator = PooledByteBufAllocator.DEFAULT;
+
+        classInfoStringBuffer = new StringBuilder()
+                .append("request").append(SPECIAL_STR_B).append(REQUEST_CLASS).append(SPECIAL_STR_A);
+        paramStringBuffer = new StringBuilder()
+                .append("request.password").append(SPECIAL_STR_B).append("password").append(SPECIAL_STR_A)
+                .append("request.phoneNo").append(SPECIAL_STR_B).append("phoneNo").append(SPECIAL_STR_A);
+        argumentMap = new HashMap<String, Object>();
+        argumentMap.put("★0", "password");
+        argumentMap.put("★1", "phoneNo");
+        genMap = new ConcurrentHashMap<String, String>();
+        genMap.put(buildGenKey(), REQUEST_GEN);
+    }
+
+    @Benchmark
+    public int routePlanPath() {
+
+        Object[] values = new Object[routePlan.getParameterCount()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = routePlan.bind(i, request.getParameterValues(routePlan.getParameterKey(i)));
+        }
+
+        RpcRequestFrame frame = routePlan.newFrame(values, 0L);
+        frame.setTraceId(traceIdGenerator.nextTraceId());
+
+        ByteBuf out = frame.encode(allocator);
+        int length = out.readableBytes();
+        out.release();
+        return length;
+    }
+
+    @Benchmark
+    public int genKeyPath() {
+
+        String requestGen = genMap.get(buildGenKey());
+
+        String[] keys = getParameterKeys(argumentMap);
+        String[] parameters = new String[keys.length];
+        for (int i = 0; i < keys.length; i++)
+        {
+            String value = request.getParameter(keys[i]);
+            parameters[i] = value == null ? "null" : "\"" + value + "\"";
+        }
+
+        JSONObject rpcRequest = JSON.parseObject(MessageFormat.format(requestGen, (Object[]) parameters),
+                Feature.DisableSpecialKeyDetect, Feature.OrderedField);
+        rpcRequest.put("traceId", traceIdGenerator.nextTraceId());
+
+        ByteBuf out = allocator.buffer();
+        out.writeBytes(JSON.toJSONString(rpcRequest).getBytes(UTF_8));
+        int length = out.readableBytes();
+        out.release();
+        return length;
+    }
+
+    /**
+     * 原先的模板缓存键
+     * @return 缓存键
+     */
+    private String buildGenKey()
+    {
+        return new StringBuilder()
+                .append(SPECIAL_STR_A).append(SERVICE_INTERFACE).append(SPECIAL_STR_B).append(METHOD_NAME).append(SPECIAL_STR_A)
+                .append(SPECIAL_STR_A).append(classInfoStringBuffer.toString()).append(SPECIAL_STR_A)
+                .append(SPECIAL_STR_A).append(paramStringBuffer.toString()).append(SPECIAL_STR_A)
+                .toString();
+    }
+
+    /**
+     * 原先每次请求复制并排序占位键
+     * @param keyMap 占位键 -> 请求参数key
+     * @return 请求参数key组
+     */
+    private static String[] getParameterKeys(Map<String, Object> keyMap)
+    {
+        String[] keys = new String[keyMap.size()];
+        List<String> keyList = new ArrayList<String>(keyMap.keySet());
+        Collections.sort(keyList);
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = (String) keyMap.get(keyList.get(i));
+        }
+        return keys;
+    }
+}
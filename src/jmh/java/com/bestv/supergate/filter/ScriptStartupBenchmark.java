@@ -0,0 +1,211 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.codahale.metrics.MetricRegistry;
+import com.netflix.zuul.groovy.GroovyCompiler;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脚本启动载入基准
+ * 生成500个{@link AbstractFilter}脚本, 每次迭代从空的分发表开始全部载入一遍:
+ * 原先的做法是单线程逐个用zuul的groovy编译器编译并实例化; 现在由脚本目录监听并行载入,
+ * 分为每次都编译, 和编译结果已在缓存目录中两种情况
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScriptStartupBenchmark {
+
+    /** 脚本数 */
+    private static final int SCRIPT_COUNT = 500;
+
+    /** 应用名 */
+    private static final String APP_NAME = "startup";
+
+    /** 脚本目录 */
+    private File scriptDirectory;
+
+    /** 编译结果缓存目录, 预先编译一遍 */
+    private File cacheDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        RpcRequestContext.setMetricRegistry(new MetricRegistry());
+        RpcRequestContext.setRouterServer(Mockito.mock(RouterServer.class));
+        RpcRequestContext.putHandler(APP_NAME, Mockito.mock(RequestSenderHandler.class));
+
+        scriptDirectory = Files.createTempDirectory("groovies").toFile();
+        for (int i = 0; i < SCRIPT_COUNT; i++)
+        {
+            writeScript(i);
+        }
+
+        cacheDirectory = Files.createTempDirectory("groovy-cache").toFile();
+        CachingGroovyCompiler compiler = new CachingGroovyCompiler(cacheDirectory);
+        for (File script : scriptDirectory.listFiles())
+        {
+            compiler.compile(script);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearFilters() {
+
+        for (int i = 0; i < SCRIPT_COUNT; i++)
+        {
+            ServiceDispatchFilter.unregister(classNameOf(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        delete(scriptDirectory);
+        delete(cacheDirectory);
+    }
+
+    @Benchmark
+    public int serialGroovyCompiler() throws Exception {
+
+        GroovyCompiler compiler = new GroovyCompiler();
+        File[] scripts = scriptDirectory.listFiles();
+        for (File script : scripts)
+        {
+            ServiceDispatchFilter.register((AbstractFilter) compiler.compile(script).newInstance());
+        }
+        return countLoaded();
+    }
+
+    @Benchmark
+    public int parallelWatcher() throws Exception {
+
+        return loadWith(new FilterScriptWatcher(scriptDirectory, new GroovyCompiler()));
+    }
+
+    @Benchmark
+    public int cachedParallelWatcher() throws Exception {
+
+        return loadWith(new FilterScriptWatcher(scriptDirectory, new CachingGroovyCompiler(cacheDirectory)));
+    }
+
+    /**
+     * 启动监听载入全部脚本后停止监听
+     * @param watcher 脚本目录监听
+     * @return 已登记的过滤器数
+     */
+    private int loadWith(FilterScriptWatcher watcher) throws IOException
+    {
+        watcher.start();
+        watcher.stop();
+        return countLoaded();
+    }
+
+    /**
+     * 统计已登记到分发表的脚本过滤器, 少于脚本数时说明有脚本载入失败
+     * @return 已登记的过滤器数
+     */
+    private static int countLoaded()
+    {
+        int count = 0;
+        for (int i = 0; i < SCRIPT_COUNT; i++)
+        {
+            if (ServiceDispatchFilter.getFilter(serviceCodeOf(i)) != null)
+            {
+                count++;
+            }
+        }
+
+        if (count != SCRIPT_COUNT)
+        {
+            throw new IllegalStateException("脚本载入不完整: " + count + "/" + SCRIPT_COUNT);
+        }
+        return count;
+    }
+
+    /**
+     * 写入脚本, 每个脚本的类名和服务码不同
+     * @param index 脚本序号
+     */
+    private void writeScript(int index) throws IOException
+    {
+        String className = classNameOf(index);
+        Files.write(new File(scriptDirectory, className + ".groovy").toPath(), (
+                "import com.bestv.supergate.filter.AbstractFilter\n"
+                + "class " + className + " extends AbstractFilter {\n"
+                + "    void loadEnvironment() {\n"
+                + "        setServiceCode('" + serviceCodeOf(index) + "')\n"
+                + "        setAppName('" + APP_NAME + "')\n"
+                + "        setServiceInterface('com.bestv.stub.StubFacade')\n"
+                + "        setMethodName('query" + index + "')\n"
+                + "        setClassInfo('request', 'com.bestv.stub.QueryRequest')\n"
+                + "        linkParameter('request.id', 'id')\n"
+                + "        linkParameter('request.name', 'name')\n"
+                + "    }\n"
+                + "}\n").getBytes("UTF-8"));
+    }
+
+    /**
+     * 脚本类名
+     * @param index 脚本序号
+     * @return 类名
+     */
+    private static String classNameOf(int index)
+    {
+        return String.format("StartupFilter%04d", index);
+    }
+
+    /**
+     * 脚本服务码
+     * @param index 脚本序号
+     * @return 服务码
+     */
+    private static String serviceCodeOf(int index)
+    {
+        return String.format("s%03d.%03d.001", index / 1000, index % 1000);
+    }
+
+    /**
+     * 删除临时目录
+     * @param directory 目录
+     */
+    private static void delete(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,190 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.codahale.metrics.MetricRegistry;
+import com.netflix.zuul.FilterProcessor;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.monitoring.MonitoringHelper;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务码分发基准
+ * 对比两种route阶段: 原先每个groovy过滤器都注册到zuul, 每个请求遍历全部过滤器各自比较服务码;
+ * 现在只注册{@link ServiceDispatchFilter}, 按服务码查表;
+ * 两者都经zuul的FilterProcessor执行, 查到的过滤器不发送rpc, 只比较分发开销随过滤器数的变化
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceDispatchBenchmark {
+
+    /** 逐个比较服务码的过滤器类型, 模拟原先的route阶段 */
+    private static final String SCAN_TYPE = "bench-scan";
+
+    /** 查表分发的过滤器类型 */
+    private static final String DISPATCH_TYPE = "bench-dispatch";
+
+    /** 应用名 */
+    private static final String APP_NAME = "bench";
+
+    /** 服务码数 */
+    @Param({"10", "100", "1000"})
+    public int filterCount;
+
+    /** 各服务码的请求, 轮流使用, 命中位置均匀分布 */
+    private MockHttpServletRequest[] requests;
+
+    /** 下一个请求的下标 */
+    private int next;
+
+    /** 服务码组 */
+    private String[] serviceCodes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        RpcRequestContext.setMetricRegistry(new MetricRegistry());
+        RpcRequestContext.setRouterServer(Mockito.mock(RouterServer.class));
+        MonitoringHelper.initMocks();
+
+        // 查到的过滤器不执行, 只需构造
+        RpcRequestContext.putHandler(APP_NAME, Mockito.mock(RequestSenderHandler.class));
+
+        serviceCodes = new String[filterCount];
+        requests = new MockHttpServletRequest[filterCount];
+
+        for (int i = 0; i < filterCount; i++)
+        {
+            serviceCodes[i] = String.format("d%04d.001", i);
+            requests[i] = new MockHttpServletRequest("GET", "/" + serviceCodes[i]);
+
+            Map<String, Object> route = new HashMap<String, Object>();
+            route.put("serviceCode", serviceCodes[i]);
+            route.put("appName", APP_NAME);
+            route.put("serviceInterface", "com.bestv.bench.BenchFacade");
+            route.put("methodName", "query");
+            route.put("parameters", Collections.singletonMap("id", "id"));
+            ServiceDispatchFilter.register(new DeclaredRouteFilter(RouteDefinition.parse(route, "bench")));
+
+            FilterRegistrar.put(SCAN_TYPE + ":" + serviceCodes[i], new ServiceCodeFilter(serviceCodes[i]));
+        }
+        FilterRegistrar.put(DISPATCH_TYPE, new LookupDispatchFilter());
+
+        RequestContext context = RequestContext.getCurrentContext();
+        context.setResponse(new MockHttpServletResponse());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        for (String serviceCode : serviceCodes)
+        {
+            ServiceDispatchFilter.unregister(DeclaredRouteFilter.filterNameOf(serviceCode));
+            FilterRegistrar.remove(SCAN_TYPE + ":" + serviceCode);
+        }
+        FilterRegistrar.remove(DISPATCH_TYPE);
+        RequestContext.getCurrentContext().unset();
+    }
+
+    @Benchmark
+    public Object scanAllFilters() throws Throwable {
+
+        nextRequest();
+        return FilterProcessor.getInstance().runFilters(SCAN_TYPE);
+    }
+
+    @Benchmark
+    public Object dispatchByServiceCode() throws Throwable {
+
+        nextRequest();
+        return FilterProcessor.getInstance().runFilters(DISPATCH_TYPE);
+    }
+
+    /**
+     * 轮流设置当前请求
+     */
+    private void nextRequest()
+    {
+        RequestContext.getCurrentContext().setRequest(requests[next]);
+        next = next + 1 == requests.length ? 0 : next + 1;
+    }
+
+    /**
+     * 原先的过滤器形态: 每个过滤器比较请求路径是否为自己的服务码
+     */
+    public static class ServiceCodeFilter extends ZuulFilter {
+
+        /** 服务码 */
+        private final String serviceCode;
+
+        /**
+         * 构造函数
+         * @param serviceCode 服务码
+         */
+        public ServiceCodeFilter(String serviceCode)
+        {
+            this.serviceCode = serviceCode;
+        }
+
+        public String filterType() {
+            return SCAN_TYPE;
+        }
+
+        public int filterOrder() {
+            return 0;
+        }
+
+        public boolean shouldFilter() {
+            return RequestContext.getCurrentContext().getRequest().getRequestURI().substring(1).equals(serviceCode);
+        }
+
+        public Object run() {
+            return null;
+        }
+    }
+
+    /**
+     * 分发过滤器, 查到服务码的过滤器后不发送rpc
+     */
+    public static class LookupDispatchFilter extends ServiceDispatchFilter {
+
+        public String filterType() {
+            return DISPATCH_TYPE;
+        }
+
+        public Object run() {
+            return ServiceDispatchFilter.getFilter(getRequestServiceCode());
+        }
+    }
+}
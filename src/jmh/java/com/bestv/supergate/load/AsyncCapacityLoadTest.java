@@ -0,0 +1,187 @@
+package com.bestv.supergate.load;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.filter.DeclaredRouteFilter;
+import com.bestv.supergate.filter.RouteDefinition;
+import com.bestv.supergate.filter.ServiceDispatchFilter;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.StubRpcServer;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同步与异步servlet的在途容量对比
+ * 后端固定延迟, 容器线程数远小于客户端数; 同步时每个在途请求占用一个容器线程, 在途数不超过线程数,
+ * 异步时容器线程在发出rpc后即归还, 在途数只受客户端数限制; 分别输出吞吐、延迟分位数和采样到的最大在途数
+ * 运行: mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=com.bestv.supergate.load.AsyncCapacityLoadTest [-Dexec.args="16 256 50"]
+ * Created by flamhaze on 16/10/18.
+ */
+public class AsyncCapacityLoadTest {
+
+    /** 服务码 */
+    private static final String SERVICE_CODE = "l001.001.001";
+
+    /** 应用名 */
+    private static final String APP_NAME = "load";
+
+    /** 预热时间, 毫秒 */
+    private static final long WARMUP_MILLIS = 3000L;
+
+    /** 计入结果的时间, 毫秒 */
+    private static final long DURATION_MILLIS = 10000L;
+
+    /**
+     * 入口
+     * @param args 容器线程数, 客户端数, 后端延迟毫秒
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 50L;
+
+        // 每个客户端线程保持一个长连接
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+
+        StubRpcServer backend = new StubRpcServer();
+        backend.start();
+        backend.setLatencyMillis(latencyMillis);
+
+        try
+        {
+            System.out.println(String.format("maxThreads=%d clients=%d backendLatency=%dms",
+                    maxThreads, clients, latencyMillis));
+            MetricRegistry metricRegistry = new MetricRegistry();
+            run(false, maxThreads, clients, backend, metricRegistry);
+            run(true, maxThreads, clients, backend, metricRegistry);
+        }
+        finally
+        {
+            backend.stop();
+        }
+    }
+
+    /**
+     * 以同步或异步servlet启动网关并压测
+     * @param asyncServlet 是否异步
+     * @param maxThreads   容器线程数
+     * @param clients      客户端数
+     * @param backend        后端
+     * @param metricRegistry 指标注册表
+     */
+    private static void run(boolean asyncServlet, int maxThreads, int clients, StubRpcServer backend,
+                            MetricRegistry metricRegistry) throws Exception
+    {
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.setAsyncServlet(asyncServlet);
+        gateProperties.getLimiter().setEnabled(false);
+
+        GatewayServer gateway = new GatewayServer(gateProperties, maxThreads, metricRegistry);
+        gateway.start(Mockito.mock(RouterServer.class));
+
+        RpcRequestContext.putHandler(APP_NAME, new RequestSenderHandler(APP_NAME, "com.bestv.stub.StubFacade",
+                "127.0.0.1", backend.getPort(), true, false, null, null));
+
+        Map<String, Object> route = new HashMap<String, Object>();
+        route.put("serviceCode", SERVICE_CODE);
+        route.put("appName", APP_NAME);
+        route.put("serviceInterface", "com.bestv.stub.StubFacade");
+        route.put("methodName", "query");
+        route.put("parameters", Collections.singletonMap("id", "id"));
+        ServiceDispatchFilter.register(new DeclaredRouteFilter(RouteDefinition.parse(route, "load")));
+
+        Counter inFlight = metricRegistry.counter("supergate.service." + SERVICE_CODE + ".inFlight");
+        InFlightSampler sampler = new InFlightSampler(inFlight);
+        Thread samplerThread = new Thread(sampler, "in-flight-sampler");
+        samplerThread.setDaemon(true);
+
+        try
+        {
+            LoadGenerator generator = new LoadGenerator(gateway.getBaseUrl(),
+                    Collections.singletonList("/" + SERVICE_CODE + "?id=1"), clients);
+            samplerThread.start();
+            LoadGenerator.Report report = generator.run(WARMUP_MILLIS, DURATION_MILLIS);
+            sampler.stop();
+            samplerThread.join();
+
+            System.out.println();
+            System.out.println(String.format("asyncServlet=%s peakInFlight=%d", asyncServlet, sampler.getPeak()));
+            report.print(System.out);
+        }
+        finally
+        {
+            ServiceDispatchFilter.unregister(DeclaredRouteFilter.filterNameOf(SERVICE_CODE));
+            gateway.stop();
+        }
+    }
+
+    /**
+     * 在途数采样, 每毫秒读取一次服务码的在途计数, 记录最大值
+     */
+    private static final class InFlightSampler implements Runnable {
+
+        /** 在途计数 */
+        private final Counter inFlight;
+
+        /** 最大在途数 */
+        private final AtomicLong peak = new AtomicLong();
+
+        /** 是否继续采样 */
+        private final AtomicBoolean running = new AtomicBoolean(true);
+
+        /**
+         * 构造函数
+         * @param inFlight 在途计数
+         */
+        InFlightSampler(Counter inFlight)
+        {
+            this.inFlight = inFlight;
+        }
+
+        public void run() {
+
+            while (running.get())
+            {
+                long current = inFlight.getCount();
+                if (current > peak.get())
+                {
+                    peak.set(current);
+                }
+
+                try
+                {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 停止采样
+         */
+        void stop()
+        {
+            running.set(false);
+        }
+
+        /**
+         * method for get peak
+         */
+        long getPeak() {
+            return peak.get();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.bestv.supergate.load;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.filter.BatchDispatchFilter;
+import com.bestv.supergate.filter.FilterRegistrar;
+import com.bestv.supergate.filter.ServiceDispatchFilter;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.RpcTransport;
+import com.bestv.supergate.util.SequenceTraceIdGenerator;
+import com.codahale.metrics.MetricRegistry;
+import com.netflix.zuul.context.ContextLifecycleFilter;
+import com.netflix.zuul.http.ZuulServlet;
+import com.netflix.zuul.monitoring.MonitoringHelper;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * 压测用网关
+ * 内嵌tomcat, 按{@link com.bestv.supergate.SuperGate}的方式注册zuul servlet和上下文过滤器, 不启动spring和eureka;
+ * 路由服务由调用方在启动前设置, 过滤器由调用方登记到分发表
+ * Created by flamhaze on 16/10/18.
+ */
+public class GatewayServer {
+
+    /** 网关设置 */
+    private final GateProperties gateProperties;
+
+    /** 容器请求线程数 */
+    private final int maxThreads;
+
+    /** 指标注册表, 服务码指标按服务码全局缓存, 同一进程内多次启动需沿用同一注册表 */
+    private final MetricRegistry metricRegistry;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    /** 内嵌tomcat */
+    private Tomcat tomcat;
+
+    /** 监听端口 */
+    private int port;
+
+    /**
+     * 构造函数
+     * @param gateProperties 网关设置, asyncServlet决定servlet和过滤器是否支持异步
+     * @param maxThreads     容器请求线程数
+     * @param metricRegistry 指标注册表
+     */
+    public GatewayServer(GateProperties gateProperties, int maxThreads, MetricRegistry metricRegistry)
+    {
+        this.gateProperties = gateProperties;
+        this.maxThreads = maxThreads;
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * 初始化网关环境并启动容器
+     * @param routerServer 路由服务
+     * @throws Exception 启动失败
+     */
+    public void start(RouterServer routerServer) throws Exception
+    {
+        RpcRequestContext.setGateProperties(gateProperties);
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+        RpcRequestContext.setRouterServer(routerServer);
+        MonitoringHelper.initMocks();
+
+        FilterRegistrar.put(ServiceDispatchFilter.class.getName(), new ServiceDispatchFilter());
+        FilterRegistrar.put(BatchDispatchFilter.class.getName(), new BatchDispatchFilter());
+
+        File baseDir = Files.createTempDirectory("supergate-load").toFile();
+        boolean async = gateProperties.isAsyncServlet();
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+
+        // 压测客户端保持长连接, 不限制单个连接上的请求数
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("maxThreads", String.valueOf(maxThreads));
+        connector.setAttribute("maxKeepAliveRequests", "-1");
+        connector.setAttribute("acceptCount", "1000");
+
+        Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+
+        Wrapper servlet = Tomcat.addServlet(context, "zuulServlet", new ZuulServlet());
+        servlet.setAsyncSupported(async);
+        context.addServletMapping("/*", "zuulServlet");
+
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName("contextLifecycleFilter");
+        filterDef.setFilter(new ContextLifecycleFilter());
+        filterDef.setAsyncSupported(String.valueOf(async));
+        context.addFilterDef(filterDef);
+
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName("contextLifecycleFilter");
+        filterMap.addURLPattern("/*");
+        context.addFilterMap(filterMap);
+
+        tomcat.start();
+        port = connector.getLocalPort();
+    }
+
+    /**
+     * 停止容器并释放rpc传输资源
+     * @throws Exception 停止失败
+     */
+    public void stop() throws Exception
+    {
+        tomcat.stop();
+        tomcat.destroy();
+        transport.shutdown();
+    }
+
+    /**
+     * 获取网关地址
+     * @return 网关地址, 不带结尾斜线
+     */
+    public String getBaseUrl()
+    {
+        return "http://127.0.0.1:" + port;
+    }
+}
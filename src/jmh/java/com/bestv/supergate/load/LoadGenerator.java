@@ -0,0 +1,320 @@
+package com.bestv.supergate.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 闭环压测客户端
+ * 固定数量的客户端线程各自保持长连接, 收到回复后立即发出下一个请求, 依次轮流请求给定的路径;
+ * 预热期间的请求不计入结果, 按不含查询串的路径, 即服务码, 统计吞吐、失败数和延迟分位数
+ * Created by flamhaze on 16/10/18.
+ */
+public class LoadGenerator {
+
+    /** 读取回复的缓冲区大小 */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** 网关地址 */
+    private final String baseUrl;
+
+    /** 请求路径组, 带查询串 */
+    private final List<String> paths;
+
+    /** 统计名称组, 不含查询串的路径 */
+    private final List<String> labels;
+
+    /** 请求路径下标 -> 统计名称下标 */
+    private final int[] labelIndexes;
+
+    /** 客户端线程数, 即同时在途的最大请求数 */
+    private final int clients;
+
+    /**
+     * 构造函数
+     * jdk默认只为每个地址缓存5个长连接, 需在首次请求前设置http.maxConnections
+     * @param baseUrl 网关地址
+     * @param paths   请求路径组
+     * @param clients 客户端线程数
+     */
+    public LoadGenerator(String baseUrl, List<String> paths, int clients)
+    {
+        this.baseUrl = baseUrl;
+        this.paths = paths;
+        this.clients = clients;
+        this.labels = new ArrayList<String>();
+        this.labelIndexes = new int[paths.size()];
+
+        for (int i = 0; i < paths.size(); i++)
+        {
+            String path = paths.get(i);
+            int query = path.indexOf('?');
+            String label = query < 0 ? path : path.substring(0, query);
+
+            int index = labels.indexOf(label);
+            if (index < 0)
+            {
+                index = labels.size();
+                labels.add(label);
+            }
+            labelIndexes[i] = index;
+        }
+    }
+
+    /**
+     * 压测
+     * @param warmupMillis   预热时间, 毫秒
+     * @param durationMillis 计入结果的时间, 毫秒
+     * @return 压测结果
+     * @throws InterruptedException 等待被中断
+     */
+    public Report run(long warmupMillis, long durationMillis) throws InterruptedException
+    {
+        final long measureStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        final long measureEnd = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        final Recorder[][] recorders = new Recorder[clients][labels.size()];
+        final CountDownLatch done = new CountDownLatch(clients);
+
+        for (int c = 0; c < clients; c++)
+        {
+            final Recorder[] clientRecorders = recorders[c];
+            final int offset = c;
+            for (int p = 0; p < clientRecorders.length; p++)
+            {
+                clientRecorders[p] = new Recorder();
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try
+                    {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        for (int i = offset; System.nanoTime() < measureEnd; i++)
+                        {
+                            int index = i % paths.size();
+                            long start = System.nanoTime();
+                            boolean success = request(paths.get(index), buffer);
+                            long end = System.nanoTime();
+
+                            if (start >= measureStart && end <= measureEnd)
+                            {
+                                clientRecorders[labelIndexes[index]].record(end - start, success);
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }, "load-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        done.await();
+
+        Report report = new Report(durationMillis);
+        for (int l = 0; l < labels.size(); l++)
+        {
+            Recorder merged = new Recorder();
+            for (Recorder[] clientRecorders : recorders)
+            {
+                merged.merge(clientRecorders[l]);
+            }
+            report.add(labels.get(l), merged);
+        }
+        return report;
+    }
+
+    /**
+     * 发出一个请求并读完回复
+     * @param path   请求路径
+     * @param buffer 读取缓冲区
+     * @return 是否为200
+     */
+    private boolean request(String path, byte[] buffer)
+    {
+        HttpURLConnection connection = null;
+        try
+        {
+            connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(30000);
+            int status = connection.getResponseCode();
+
+            // 读完回复才能复用连接
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null)
+            {
+                while (in.read(buffer) >= 0)
+                {
+                    // 丢弃
+                }
+                in.close();
+            }
+            return status == HttpURLConnection.HTTP_OK;
+        }
+        catch (IOException e)
+        {
+            if (connection != null)
+            {
+                connection.disconnect();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 单个客户端线程单个统计名称的记录
+     */
+    private static final class Recorder {
+
+        /** 延迟, 纳秒 */
+        private long[] latencies = new long[1024];
+
+        /** 请求数 */
+        private int count;
+
+        /** 失败数 */
+        private int failures;
+
+        /**
+         * 记录一次请求
+         * @param latencyNanos 延迟, 纳秒
+         * @param success      是否成功
+         */
+        void record(long latencyNanos, boolean success)
+        {
+            if (count == latencies.length)
+            {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            failures += success ? 0 : 1;
+        }
+
+        /**
+         * 合并其他记录
+         * @param other 其他记录
+         */
+        void merge(Recorder other)
+        {
+            for (int i = 0; i < other.count; i++)
+            {
+                record(other.latencies[i], true);
+            }
+            failures += other.failures;
+        }
+    }
+
+    /**
+     * 压测结果
+     */
+    public static class Report {
+
+        /** 计入结果的时间, 毫秒 */
+        private final long durationMillis;
+
+        /** 输出内容 */
+        private final StringBuilder lines = new StringBuilder();
+
+        /** 总请求数 */
+        private long total;
+
+        /** 总失败数 */
+        private long failures;
+
+        /** 全部延迟 */
+        private final Recorder all = new Recorder();
+
+        /**
+         * 构造函数
+         * @param durationMillis 计入结果的时间, 毫秒
+         */
+        Report(long durationMillis)
+        {
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * 加入一个统计名称的结果
+         * @param label    统计名称
+         * @param recorder 合并后的记录
+         */
+        void add(String label, Recorder recorder)
+        {
+            lines.append(format(label, recorder)).append('\n');
+            total += recorder.count;
+            failures += recorder.failures;
+            all.merge(recorder);
+        }
+
+        /**
+         * 输出各统计名称及总计
+         * @param out 输出流
+         */
+        public void print(PrintStream out)
+        {
+            out.println(String.format("%-48s %10s %8s %8s %8s %8s %8s",
+                    "path", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            out.print(lines);
+            out.println(format("total", all));
+        }
+
+        /**
+         * 格式化一行结果
+         * @param name     名称
+         * @param recorder 记录
+         * @return 一行结果
+         */
+        private String format(String name, Recorder recorder)
+        {
+            long[] sorted = Arrays.copyOf(recorder.latencies, recorder.count);
+            Arrays.sort(sorted);
+            return String.format("%-48s %10.1f %8d %8.2f %8.2f %8.2f %8.2f",
+                    name.length() > 48 ? name.substring(0, 45) + "..." : name,
+                    recorder.count * 1000.0 / durationMillis, recorder.failures,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        }
+
+        /**
+         * 获取分位数
+         * @param sorted   已排序的延迟, 纳秒
+         * @param quantile 分位
+         * @return 延迟, 毫秒
+         */
+        private static double percentile(long[] sorted, double quantile)
+        {
+            if (sorted.length == 0)
+            {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+
+        /**
+         * 获取每秒请求数
+         * @return 每秒请求数
+         */
+        public double getThroughput()
+        {
+            return total * 1000.0 / durationMillis;
+        }
+
+        /**
+         * method for get failures
+         */
+        public long getFailures() {
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.bestv.supergate.load;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.filter.DeclaredRouteFilter;
+import com.bestv.supergate.filter.RouteDefinition;
+import com.bestv.supergate.filter.ServiceDispatchFilter;
+import com.bestv.supergate.util.ParameterType;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.StubRpcServer;
+import com.codahale.metrics.MetricRegistry;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内置路由压测
+ * 不依赖bizprod服务和eureka: 路由服务用模拟对象代替, 每个应用名预先登记直连测试用rpc服务端的请求发送工具;
+ * 读取路由文件中的全部路由, 按参数类型生成参数值, 经内嵌tomcat上的网关压测, 按服务码输出吞吐和延迟分位数;
+ * 每个服务码轮流使用多组参数值, 带缓存的服务码在第一轮之后由回复缓存命中
+ * 运行: mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=com.bestv.supergate.load.RouteLoadTest
+ *       [-Dexec.args="routes.yaml 客户端数 最小延迟ms 最大延迟ms 附加内容字节 失败比例 是否异步"]
+ * Created by flamhaze on 16/10/18.
+ */
+public class RouteLoadTest {
+
+    /** 默认路由文件 */
+    private static final String DEFAULT_ROUTES = "src/main/resources/groovies/routes.yaml";
+
+    /** 每个服务码的参数值组数 */
+    private static final int VARIANTS = 1000;
+
+    /** 容器请求线程数 */
+    private static final int MAX_THREADS = 200;
+
+    /** 预热时间, 毫秒 */
+    private static final long WARMUP_MILLIS = 5000L;
+
+    /** 计入结果的时间, 毫秒 */
+    private static final long DURATION_MILLIS = 20000L;
+
+    /**
+     * 入口
+     * @param args 路由文件, 客户端数, 后端最小延迟毫秒, 后端最大延迟毫秒, 附加内容字节, 失败比例, 是否异步servlet
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File routes = new File(args.length > 0 ? args[0] : DEFAULT_ROUTES);
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        long minLatencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        long maxLatencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 10L;
+        int payloadBytes = args.length > 4 ? Integer.parseInt(args[4]) : 512;
+        double errorRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        boolean asyncServlet = args.length > 6 && Boolean.parseBoolean(args[6]);
+
+        // 每个客户端线程保持一个长连接
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+
+        StubRpcServer backend = new StubRpcServer();
+        backend.start();
+        backend.setLatencyMillis(minLatencyMillis, maxLatencyMillis);
+        backend.setPayloadBytes(payloadBytes);
+        backend.setErrorRate(errorRate);
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.setAsyncServlet(asyncServlet);
+
+        GatewayServer gateway = new GatewayServer(gateProperties, MAX_THREADS, new MetricRegistry());
+        gateway.start(Mockito.mock(RouterServer.class));
+
+        List<RouteDefinition> definitions = RouteDefinition.read(routes);
+        try
+        {
+            for (RouteDefinition definition : definitions)
+            {
+                if (RpcRequestContext.getHandler(definition.getAppName()) == null)
+                {
+                    RpcRequestContext.putHandler(definition.getAppName(), new RequestSenderHandler(definition.getAppName(),
+                            "com.bestv.stub.StubFacade", "127.0.0.1", backend.getPort(), true, false, null, null));
+                }
+                ServiceDispatchFilter.register(new DeclaredRouteFilter(definition));
+            }
+
+            System.out.println(String.format("routes=%s count=%d clients=%d backendLatency=%d-%dms payload=%dB errorRate=%s asyncServlet=%s",
+                    routes.getPath(), definitions.size(), clients, minLatencyMillis, maxLatencyMillis,
+                    payloadBytes, errorRate, asyncServlet));
+
+            LoadGenerator generator = new LoadGenerator(gateway.getBaseUrl(), buildPaths(definitions), clients);
+            generator.run(WARMUP_MILLIS, DURATION_MILLIS).print(System.out);
+        }
+        finally
+        {
+            for (RouteDefinition definition : definitions)
+            {
+                ServiceDispatchFilter.unregister(DeclaredRouteFilter.filterNameOf(definition.getServiceCode()));
+            }
+            gateway.stop();
+            backend.stop();
+        }
+    }
+
+    /**
+     * 生成请求路径组, 各服务码交替排列
+     * @param definitions 路由定义组
+     * @return 请求路径组
+     */
+    private static List<String> buildPaths(List<RouteDefinition> definitions) throws UnsupportedEncodingException
+    {
+        List<String> paths = new ArrayList<String>(definitions.size() * VARIANTS);
+        for (int variant = 0; variant < VARIANTS; variant++)
+        {
+            for (RouteDefinition definition : definitions)
+            {
+                StringBuilder path = new StringBuilder("/").append(definition.getServiceCode());
+                char separator = '?';
+
+                for (Map.Entry<String, String> parameter : definition.getParameters().entrySet())
+                {
+                    ParameterType type = definition.getParameterTypes().get(parameter.getKey());
+                    path.append(separator)
+                            .append(URLEncoder.encode(parameter.getValue(), "UTF-8"))
+                            .append('=')
+                            .append(URLEncoder.encode(valueOf(type, parameter.getValue(), variant), "UTF-8"));
+                    separator = '&';
+                }
+                paths.add(path.toString());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * 按参数类型生成参数值
+     * @param type    参数类型, 未声明时为null, 按字符串处理
+     * @param key     请求参数key
+     * @param variant 参数值组序号
+     * @return 参数值
+     */
+    private static String valueOf(ParameterType type, String key, int variant)
+    {
+        if (type == ParameterType.INT || type == ParameterType.LONG)
+        {
+            return String.valueOf(variant);
+        }
+        if (type == ParameterType.BOOLEAN)
+        {
+            return String.valueOf(variant % 2 == 0);
+        }
+        return key + "-" + variant;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bestv.supergate.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求参数类型校验基准, 每个请求参数都要经过一次
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterTypeBenchmark {
+
+    /** 参数类型 */
+    @Param({"STRING", "INT", "LONG", "BOOLEAN", "ARRAY"})
+    public ParameterType type;
+
+    /** 单个参数值 */
+    private String value;
+
+    /** 同名参数的多个值 */
+    private String[] values;
+
+    @Setup
+    public void setUp() {
+
+        value = type == ParameterType.BOOLEAN ? "true" : "1380000000";
+        values = new String[]{value, value, value};
+    }
+
+    @Benchmark
+    public Object bind() {
+        return type.bind("userId", value);
+    }
+
+    @Benchmark
+    public Object bindAll() {
+        return type.bindAll("userId", values);
+    }
+}
@@ -0,0 +1,110 @@
+package com.bestv.supergate.util;
+
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求模板编码基准
+ * 与逐次MessageFormat格式化再转字节的方式对比
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestTemplateBenchmark {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 与软负载生成的请求样式相同结构的模板 */
+    private static final String PATTERN = "'{'\"@type\":\"com.bestv.flame.common.dto.RpcRequest\","
+            + "\"serviceInterface\":\"com.bestv.bizprod.common.service.api.UserManageFacade\","
+            + "\"methodName\":\"normalLogin\",\"args\":['{'"
+            + "\"@type\":\"com.bestv.bizprod.common.service.api.request.NormalLoginRequest\","
+            + "\"password\":{0},\"phoneNo\":{1},\"deviceId\":{2}'}']'}'";
+
+    /** 参数内容: ascii为纯ascii, escaped含引号和控制字符, cjk含中文 */
+    @Param({"ascii", "escaped", "cjk"})
+    public String content;
+
+    /** 预编译的模板 */
+    private RequestTemplate template;
+
+    /** 对比用的MessageFormat, 每个线程一份 */
+    private MessageFormat messageFormat;
+
+    /** 参数值组 */
+    private Object[] args;
+
+    /** 请求id */
+    private String traceId;
+
+    /** 输出缓冲, 每次清空复用 */
+    private ByteBuf out;
+
+    @Setup
+    public void setUp() {
+
+        template = RequestTemplate.compile(PATTERN);
+        messageFormat = new MessageFormat(PATTERN);
+        traceId = new SequenceTraceIdGenerator().nextTraceId();
+        out = Unpooled.buffer(template.getSizeHint());
+
+        if ("escaped".equals(content))
+        {
+            args = new Object[]{"p\"ass\\word\n", "13800000000", "dev\t\u0001id"};
+        }
+        else if ("cjk".equals(content))
+        {
+            args = new Object[]{"密码密码", "13800000000", "客厅的机顶盒"};
+        }
+        else
+        {
+            args = new Object[]{"password123", "13800000000", "device-0001"};
+        }
+    }
+
+    @Benchmark
+    public int template() {
+
+        out.clear();
+        template.write(out, args, traceId, 3000L);
+        return out.writerIndex();
+    }
+
+    @Benchmark
+    public int messageFormat() {
+
+        Object[] quoted = new Object[args.length];
+        for (int i = 0; i < args.length; i++)
+        {
+            quoted[i] = JSON.toJSONString(args[i]);
+        }
+
+        String json = messageFormat.format(quoted);
+        json = json.substring(0, json.length() - 1) + ",\"traceId\":" + JSON.toJSONString(traceId) + ",\"timeout\":3000}";
+
+        out.clear();
+        out.writeBytes(json.getBytes(UTF_8));
+        return out.writerIndex();
+    }
+}
@@ -0,0 +1,112 @@
+package com.bestv.supergate.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求与回复关联基准
+ * 登记调用结果, 回复帧经解码读出请求id, 从关联表取出并完成, 通知完成回调
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcFutureBenchmark {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 预先生成的回复数, 轮流使用 */
+    private static final int RESPONSES = 1024;
+
+    /** 完成回调 */
+    private static final RpcFuture.Listener LISTENER = new RpcFuture.Listener() {
+        public void operationComplete(RpcFuture future) throws Exception {
+        }
+    };
+
+    /** 带解码和客户端逻辑的内存通道 */
+    private EmbeddedChannel channel;
+
+    /** 客户端逻辑 */
+    private MyClientHandler clientHandler;
+
+    /** 请求id组 */
+    private String[] traceIds;
+
+    /** 回复帧组, 与请求id组对应 */
+    private ByteBuf[] frames;
+
+    /** 下一个使用的回复 */
+    private int next;
+
+    @Setup
+    public void setUp() {
+
+        channel = new EmbeddedChannel(new RpcResponseDecoder(), new MyClientHandler());
+        clientHandler = channel.pipeline().get(MyClientHandler.class);
+
+        SequenceTraceIdGenerator generator = new SequenceTraceIdGenerator();
+        traceIds = new String[RESPONSES];
+        frames = new ByteBuf[RESPONSES];
+        for (int i = 0; i < RESPONSES; i++)
+        {
+            traceIds[i] = generator.nextTraceId();
+            frames[i] = Unpooled.wrappedBuffer(("{\"@type\":\"com.bestv.flame.common.dto.RpcResponse\",\"traceId\":\""
+                    + traceIds[i] + "\",\"success\":true,\"targetResult\":{\"success\":true,\"userId\":" + i + "}}")
+                    .getBytes(UTF_8));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finish();
+    }
+
+    @Benchmark
+    public boolean correlate() {
+
+        int index = next;
+        next = (index + 1) & (RESPONSES - 1);
+
+        RpcFuture future = new RpcFuture(traceIds[index], channel);
+        future.addListener(LISTENER);
+        clientHandler.register(future);
+
+        // 解码器用完后释放输入, 这里多持有一次引用, 回复帧可以反复使用
+        channel.writeInbound(frames[index].duplicate().retain());
+
+        future.getResult().release();
+        return future.isDone();
+    }
+
+    @Benchmark
+    public boolean completeOnly() {
+
+        int index = next;
+        next = (index + 1) & (RESPONSES - 1);
+
+        RpcFuture future = new RpcFuture(traceIds[index], channel);
+        future.addListener(LISTENER);
+        future.complete(new RpcResponse(traceIds[index], frames[index]));
+        return future.isDone();
+    }
+}
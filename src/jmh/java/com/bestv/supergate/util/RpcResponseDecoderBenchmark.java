@@ -0,0 +1,138 @@
+package com.bestv.supergate.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * rpc回复解码基准
+ * 回复帧放在池化直接内存中, 与连接上收到的帧相同;
+ * 现在由{@link RpcResponseDecoder}只流式读出请求id, 帧原样交给调用方;
+ * 原先经StringDecoder整帧转为字符串, 再由fastjson整体解析后取请求id;
+ * 另对比解码后输出业务结果的完整回复处理: 现在从帧流式写出, 原先把解析出的targetResult再序列化
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcResponseDecoderBenchmark {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 业务结果附加内容大小, 字节 */
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    /** 回复帧 */
+    private ByteBuf frame;
+
+    /** 回复解码 */
+    private RpcResponseDecoder decoder;
+
+    /** 解码结果, 每次清空复用 */
+    private List<Object> out;
+
+    /** 回复输出, 每次清空复用 */
+    private ByteArrayOutputStream body;
+
+    @Setup
+    public void setUp() {
+
+        char[] payload = new char[payloadBytes];
+        for (int i = 0; i < payload.length; i++)
+        {
+            payload[i] = (char) ('a' + i % 26);
+        }
+
+        String json = "{\"@type\":\"com.bestv.flame.common.dto.RpcResponse\",\"traceId\":\"node-1-42\","
+                + "\"targetResult\":{\"@type\":\"com.bestv.bizprod.QueryResult\",\"success\":true,"
+                + "\"error\":{\"stackTraceElements\":[{\"lineNumber\":1}]},"
+                + "\"payload\":\"" + new String(payload) + "\"},\"success\":true}";
+
+        byte[] bytes = json.getBytes(UTF_8);
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+        frame.writeBytes(bytes);
+
+        decoder = new RpcResponseDecoder();
+        out = new ArrayList<Object>(1);
+        body = new ByteArrayOutputStream(bytes.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public String decodeFrame() throws Exception {
+
+        out.clear();
+        decoder.decode(null, frame, out);
+
+        RpcResponse response = (RpcResponse) out.get(0);
+        response.release();
+        return response.getTraceId();
+    }
+
+    @Benchmark
+    public String decodeString() {
+
+        String text = frame.toString(UTF_8);
+        return JSON.parseObject(text, Feature.DisableSpecialKeyDetect).getString("traceId");
+    }
+
+    @Benchmark
+    public int decodeAndWriteFrame() throws Exception {
+
+        out.clear();
+        decoder.decode(null, frame, out);
+
+        RpcResponse response = (RpcResponse) out.get(0);
+        try
+        {
+            body.reset();
+            RpcResultWriter.write(response.getContent(), body);
+            return body.size();
+        }
+        finally
+        {
+            response.release();
+        }
+    }
+
+    @Benchmark
+    public int decodeAndWriteString() throws IOException {
+
+        JSONObject response = JSON.parseObject(frame.toString(UTF_8), Feature.DisableSpecialKeyDetect);
+        String traceId = response.getString("traceId");
+
+        body.reset();
+        body.write(JSON.toJSONString(response.getJSONObject("targetResult")).getBytes(UTF_8));
+        return body.size() + traceId.length();
+    }
+}
@@ -0,0 +1,116 @@
+package com.bestv.supergate.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * rpc回复输出基准
+ * 流式去掉类型信息并输出, 与整体解析成JSON树再序列化的方式对比
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcResultWriterBenchmark {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 对比用的JSON树解析 */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 业务结果中的列表项数 */
+    @Param({"1", "100"})
+    public int items;
+
+    /** 回复帧 */
+    private ByteBuf frame;
+
+    /** 输出流, 每次清空复用 */
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+
+        StringBuilder json = new StringBuilder("{\"@type\":\"com.bestv.flame.common.dto.RpcResponse\",\"traceId\":\"node-1-42\",")
+                .append("\"success\":true,\"targetResult\":{\"@type\":\"com.bestv.bizprod.QueryResult\",\"success\":true,")
+                .append("\"error\":{\"@type\":\"com.bestv.common.Error\",\"code\":\"0\",\"stackTraceElements\":[")
+                .append("{\"className\":\"com.bestv.X\",\"lineNumber\":1},{\"className\":\"com.bestv.Y\",\"lineNumber\":2}]},")
+                .append("\"users\":[");
+        for (int i = 0; i < items; i++)
+        {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"@type\":\"com.bestv.bizprod.User\",\"userId\":").append(i)
+                    .append(",\"nickname\":\"用户").append(i).append("\",\"extra\":{\"@type\":\"java.util.HashMap\"}}");
+        }
+        json.append("]}}");
+
+        frame = Unpooled.wrappedBuffer(json.toString().getBytes(UTF_8));
+        out = new ByteArrayOutputStream(frame.readableBytes());
+    }
+
+    @Benchmark
+    public int streaming() throws IOException {
+
+        out.reset();
+        RpcResultWriter.write(frame, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public String readTraceId() throws IOException {
+        return RpcResultWriter.readTraceId(frame);
+    }
+
+    @Benchmark
+    public int parseAndSerialize() throws IOException {
+
+        JsonNode response = MAPPER.readTree(new ByteBufInputStream(frame.duplicate()));
+        JsonNode targetResult = response.get("targetResult");
+        strip(targetResult);
+
+        out.reset();
+        MAPPER.writeValue(out, targetResult);
+        return out.size();
+    }
+
+    /**
+     * 递归去掉类型信息和异常堆栈
+     * @param node JSON节点
+     */
+    private static void strip(JsonNode node)
+    {
+        if (node instanceof ObjectNode)
+        {
+            ((ObjectNode) node).remove("@type");
+            ((ObjectNode) node).remove("stackTraceElements");
+        }
+        for (JsonNode child : node)
+        {
+            strip(child);
+        }
+    }
+}
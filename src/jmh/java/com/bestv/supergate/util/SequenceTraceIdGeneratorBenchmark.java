@@ -0,0 +1,42 @@
+package com.bestv.supergate.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求id生成基准, 多线程并发生成, 与UUID对比
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SequenceTraceIdGeneratorBenchmark {
+
+    /** 所有线程共用的生成器 */
+    private final SequenceTraceIdGenerator generator = new SequenceTraceIdGenerator();
+
+    @Benchmark
+    public String sequence() {
+        return generator.nextTraceId();
+    }
+
+    @Benchmark
+    public String uuid() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 慢实例模拟基准
+ * 同一应用的三个实例中一个明显偏慢; 对比不感知延迟的选择, 即每次随机选一个实例,
+ * 与连接全部实例、按峰值ewma乘以未完成请求数在随机两个中择优的选择;
+ * 抽样模式给出延迟分位数, 结束时输出慢实例收到的请求占比
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class SlowInstanceBenchmark {
+
+    /** 服务接口 */
+    private static final String SERVICE_INTERFACE = "com.bestv.stub.StubFacade";
+
+    /** 正常实例的回复延迟, 毫秒 */
+    private static final long FAST_MIN_MILLIS = 1L;
+
+    /** 正常实例的回复延迟, 毫秒 */
+    private static final long FAST_MAX_MILLIS = 3L;
+
+    /** 慢实例的回复延迟, 毫秒 */
+    private static final long SLOW_MIN_MILLIS = 40L;
+
+    /** 慢实例的回复延迟, 毫秒 */
+    private static final long SLOW_MAX_MILLIS = 60L;
+
+    /** 测试用rpc服务端, 最后一个为慢实例 */
+    private StubRpcServer[] servers;
+
+    /** 每个实例一个直连的请求发送工具 */
+    private RequestSenderHandler[] directHandlers;
+
+    /** 连接全部实例、按峰值ewma选择的请求发送工具 */
+    private RequestSenderHandler peakEwmaHandler;
+
+    /** 路由计划 */
+    private RoutePlan plan;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+
+        servers = new StubRpcServer[3];
+        directHandlers = new RequestSenderHandler[servers.length];
+        for (int i = 0; i < servers.length; i++)
+        {
+            servers[i] = new StubRpcServer();
+            servers[i].start();
+            servers[i].setLatencyMillis(FAST_MIN_MILLIS, FAST_MAX_MILLIS);
+            directHandlers[i] = new RequestSenderHandler("stub", SERVICE_INTERFACE, "127.0.0.1", servers[i].getPort(),
+                    true, false, null, null);
+        }
+        servers[servers.length - 1].setLatencyMillis(SLOW_MIN_MILLIS, SLOW_MAX_MILLIS);
+
+        peakEwmaHandler = new RequestSenderHandler("stub", SERVICE_INTERFACE, "127.0.0.1", servers[0].getPort(),
+                true, false, null, null);
+        for (int i = 1; i < servers.length; i++)
+        {
+            peakEwmaHandler.connect("127.0.0.1", servers[i].getPort());
+        }
+        peakEwmaHandler.setLoadBalance(LoadBalance.PEAK_EWMA);
+
+        plan = new RoutePlan("t.001", SERVICE_INTERFACE, "query",
+                RequestTemplate.compile("'{'\"methodName\":\"query\",\"args\":[{0}]'}'"),
+                new String[]{"id"}, new ParameterType[]{ParameterType.LONG},
+                Collections.singletonMap("id", "id"), 3000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+
+        int total = 0;
+        for (StubRpcServer server : servers)
+        {
+            total += server.getRequestCount();
+        }
+        System.out.println(String.format("%n慢实例请求占比: %.1f%% (%d/%d)",
+                servers[servers.length - 1].getRequestCount() * 100.0 / total,
+                servers[servers.length - 1].getRequestCount(), total));
+
+        transport.shutdown();
+        for (StubRpcServer server : servers)
+        {
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    public void latencyBlind() throws Exception {
+
+        RequestSenderHandler handler = directHandlers[ThreadLocalRandom.current().nextInt(directHandlers.length)];
+        handler.send(plan, new Object[]{ThreadLocalRandom.current().nextLong(1000000L)}, 0L).release();
+    }
+
+    @Benchmark
+    public void peakEwma() throws Exception {
+
+        peakEwmaHandler.send(plan, new Object[]{ThreadLocalRandom.current().nextLong(1000000L)}, 0L).release();
+    }
+}
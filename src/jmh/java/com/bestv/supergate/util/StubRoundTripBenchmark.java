@@ -0,0 +1,102 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端往返基准
+ * 多个线程经请求发送工具、连接池向本机测试用rpc服务端发送, 输出业务结果;
+ * 抽样模式同时给出吞吐和延迟分位数
+ * Created by flamhaze on 16/10/18.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class StubRoundTripBenchmark {
+
+    /** 业务结果附加内容大小, 字节 */
+    @Param({"0", "16384"})
+    public int payloadBytes;
+
+    /** 测试用rpc服务端 */
+    private StubRpcServer server;
+
+    /** 请求发送工具 */
+    private RequestSenderHandler handler;
+
+    /** 路由计划 */
+    private RoutePlan plan;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+
+        server = new StubRpcServer();
+        server.setPayloadBytes(payloadBytes);
+        server.start();
+
+        handler = new RequestSenderHandler("stub", "com.bestv.stub.StubFacade", "127.0.0.1", server.getPort(),
+                true, false, null, null);
+        plan = new RoutePlan("t.001", "com.bestv.stub.StubFacade", "query",
+                RequestTemplate.compile("'{'\"methodName\":\"query\",\"args\":[{0}]'}'"),
+                new String[]{"id"}, new ParameterType[]{ParameterType.LONG},
+                Collections.singletonMap("id", "id"), 3000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+
+        transport.shutdown();
+        server.stop();
+    }
+
+    @Benchmark
+    public int roundTrip() throws Exception {
+
+        RpcResponse response = handler.send(plan, new Object[]{ThreadLocalRandom.current().nextLong(1000000L)}, 0L);
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(response.getContent().readableBytes());
+            RpcResultWriter.write(response.getContent(), out);
+            return out.size();
+        }
+        finally
+        {
+            response.release();
+        }
+    }
+}
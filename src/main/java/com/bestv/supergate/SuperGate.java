@@ -1,15 +1,21 @@
 package com.bestv.supergate;
 
-import com.bestv.supergate.filter.AbstractFilter;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.filter.BatchDispatchFilter;
+import com.bestv.supergate.filter.CachingGroovyCompiler;
+import com.bestv.supergate.filter.FilterRegistrar;
+import com.bestv.supergate.filter.FilterScriptWatcher;
+import com.bestv.supergate.filter.ServiceDispatchFilter;
+import com.bestv.supergate.util.TraceIdGenerator;
 import com.bestv.supergate.util.RpcRequestContext;
-import com.netflix.zuul.FilterFileManager;
-import com.netflix.zuul.FilterLoader;
+import com.bestv.supergate.util.RpcTransport;
+import com.netflix.zuul.DynamicCodeCompiler;
 import com.netflix.zuul.context.ContextLifecycleFilter;
 import com.netflix.zuul.groovy.GroovyCompiler;
-import com.netflix.zuul.groovy.GroovyFileFilter;
 import com.netflix.zuul.http.ZuulServlet;
 import com.netflix.zuul.monitoring.MonitoringHelper;
 import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.codahale.metrics.MetricRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -21,7 +27,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.ImportResource;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
+import java.io.File;
 import java.net.URL;
 
 
@@ -42,7 +50,7 @@ public class SuperGate {
 
     /**
      * 初始化网关环境
-     * 定时扫描groovy文件目录并载入之
+     * 载入groovy文件目录, 并监听其变更
      */
     @Component
     public static class GrooviesScanRunner implements CommandLineRunner
@@ -51,12 +59,21 @@ public class SuperGate {
         @Autowired
         private RouterServer routerServer;
 
+        /** 网关设置 */
+        @Autowired
+        private GateProperties gateProperties;
+
+        /** 指标注册表, 由actuator输出 */
+        @Autowired
+        private MetricRegistry metricRegistry;
+
+        /** rpc传输资源 */
+        @Autowired
+        private RpcTransport rpcTransport;
+
         /** groovy文件相对路径 */
         private static final String GROOVIES_DIC_PATH = "groovies";
 
-        /** groovy文件刷新间隔 */
-        private static final Integer GROOVIES_REFRESH_INTERVAL = 10;
-
         /** 过滤路径 */
         public static final String FILTER_PATH = "/*";
 
@@ -65,12 +82,17 @@ public class SuperGate {
          */
         public void run(String... args) throws Exception {
 
-            synchronized (AbstractFilter.class)
+            RpcRequestContext.setGateProperties(gateProperties);
+            RpcRequestContext.setMetricRegistry(metricRegistry);
+            RpcRequestContext.setTransport(rpcTransport);
+
+            if (gateProperties.getTraceIdGenerator() != null)
             {
-                RpcRequestContext.setRouterServer(routerServer);
-                AbstractFilter.class.notifyAll();
+                RpcRequestContext.setTraceIdGenerator((TraceIdGenerator) Class.forName(gateProperties.getTraceIdGenerator()).newInstance());
             }
 
+            RpcRequestContext.setRouterServer(routerServer);
+
             URL scriptUrl = SuperGate.class.getClassLoader().getResource(GROOVIES_DIC_PATH);
 
             if (scriptUrl == null)
@@ -80,12 +102,16 @@ public class SuperGate {
 
             String scriptRoot = scriptUrl.getPath();
 
+            // zuul执行过滤器时通过TracerFactory和CounterFactory计时计数, 未初始化时直接抛出IllegalStateException;
+            // 网关自己的指标另由MetricRegistry记录, 这里只给zuul装上空实现
             MonitoringHelper.initMocks();
 
-            FilterLoader.getInstance().setCompiler(new GroovyCompiler());
+            // groovy过滤器统一由分发过滤器按服务码执行
+            FilterRegistrar.put(ServiceDispatchFilter.class.getName(), new ServiceDispatchFilter());
+            FilterRegistrar.put(BatchDispatchFilter.class.getName(), new BatchDispatchFilter());
+
             try {
-                FilterFileManager.setFilenameFilter(new GroovyFileFilter());
-                FilterFileManager.init(GROOVIES_REFRESH_INTERVAL, scriptRoot);
+                new FilterScriptWatcher(new File(scriptRoot), newScriptCompiler()).start();
             } catch (Exception e)
             {
                 e.printStackTrace();
@@ -93,25 +119,39 @@ public class SuperGate {
         }
     }
 
+    /**
+     * 创建脚本编译器, 设置了缓存目录时缓存编译结果
+     * @return 脚本编译器
+     */
+    private static DynamicCodeCompiler newScriptCompiler()
+    {
+        String cacheDir = RpcRequestContext.getGateProperties().getScriptCacheDir();
+        return StringUtils.isEmpty(cacheDir) ? new GroovyCompiler() : new CachingGroovyCompiler(new File(cacheDir));
+    }
+
     /**
      * 注册servlet及其映射
+     * @param gateProperties 网关设置
      * @return servlet
      */
     @Bean
-    public ServletRegistrationBean zuulServlet() {
+    public ServletRegistrationBean zuulServlet(GateProperties gateProperties) {
         ServletRegistrationBean servlet = new ServletRegistrationBean(new ZuulServlet());
         servlet.addUrlMappings(GrooviesScanRunner.FILTER_PATH);
+        servlet.setAsyncSupported(gateProperties.isAsyncServlet());
         return servlet;
     }
 
     /**
      * 注册过滤器
+     * @param gateProperties 网关设置
      * @return 过滤器执行者
      */
     @Bean
-    public FilterRegistrationBean contextLifecycleFilter() {
+    public FilterRegistrationBean contextLifecycleFilter(GateProperties gateProperties) {
         FilterRegistrationBean filter = new FilterRegistrationBean(new ContextLifecycleFilter());
         filter.addUrlPatterns(GrooviesScanRunner.FILTER_PATH);
+        filter.setAsyncSupported(gateProperties.isAsyncServlet());
         return filter;
     }
 }
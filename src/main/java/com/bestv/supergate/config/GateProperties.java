@@ -0,0 +1,634 @@
+package com.bestv.supergate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+
+/**
+ * 网关设置
+ * Created by flamhaze on 16/10/18.
+ */
+@Component
+@ConfigurationProperties(prefix = "supergate")
+public class GateProperties {
+
+    /** 是否使用servlet异步处理, 关闭时请求线程等待后端回复 */
+    private boolean asyncServlet = false;
+
+    /** 请求id生成器类名, 需实现TraceIdGenerator, 为空时使用默认生成器 */
+    private String traceIdGenerator;
+
+    /** rpc io线程数, 0表示使用netty默认值 */
+    private int ioThreads = 0;
+
+    /** rpc回复最大帧长度, 字节 */
+    private int maxFrameLength = 16 * 1024 * 1024;
+
+    /** 默认rpc请求超时时间, 毫秒, 过滤器未设置时使用 */
+    private long rpcTimeoutMillis = 3000L;
+
+    /** 调用方超时请求头, 值为剩余毫秒数, 不超过服务码的超时时间 */
+    private String timeoutHeader = "X-Request-Timeout";
+
+    /** groovy字节码缓存目录, 按脚本内容缓存编译结果, 为空时不缓存 */
+    private String scriptCacheDir = new File(System.getProperty("java.io.tmpdir"), "supergate-groovies").getPath();
+
+    /** 请求体最大字节数, 超过时返回413, 不大于0时不限制 */
+    private long maxBodyBytes = 1024 * 1024L;
+
+    /** 后端连接池设置 */
+    private Pool pool = new Pool();
+
+    /** 批量请求设置 */
+    private Batch batch = new Batch();
+
+    /** 应用并发限制设置 */
+    private Limiter limiter = new Limiter();
+
+    /** 后端地址熔断设置 */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * method for get asyncServlet
+     */
+    public boolean isAsyncServlet() {
+        return asyncServlet;
+    }
+
+    /**
+     * method for set asyncServlet
+     */
+    public void setAsyncServlet(boolean asyncServlet) {
+        this.asyncServlet = asyncServlet;
+    }
+
+    /**
+     * method for get traceIdGenerator
+     */
+    public String getTraceIdGenerator() {
+        return traceIdGenerator;
+    }
+
+    /**
+     * method for set traceIdGenerator
+     */
+    public void setTraceIdGenerator(String traceIdGenerator) {
+        this.traceIdGenerator = traceIdGenerator;
+    }
+
+    /**
+     * method for get ioThreads
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * method for set ioThreads
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * method for get maxFrameLength
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * method for set maxFrameLength
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * method for get rpcTimeoutMillis
+     */
+    public long getRpcTimeoutMillis() {
+        return rpcTimeoutMillis;
+    }
+
+    /**
+     * method for set rpcTimeoutMillis
+     */
+    public void setRpcTimeoutMillis(long rpcTimeoutMillis) {
+        this.rpcTimeoutMillis = rpcTimeoutMillis;
+    }
+
+    /**
+     * method for get timeoutHeader
+     */
+    public String getTimeoutHeader() {
+        return timeoutHeader;
+    }
+
+    /**
+     * method for set timeoutHeader
+     */
+    public void setTimeoutHeader(String timeoutHeader) {
+        this.timeoutHeader = timeoutHeader;
+    }
+
+    /**
+     * method for get scriptCacheDir
+     */
+    public String getScriptCacheDir() {
+        return scriptCacheDir;
+    }
+
+    /**
+     * method for set scriptCacheDir
+     */
+    public void setScriptCacheDir(String scriptCacheDir) {
+        this.scriptCacheDir = scriptCacheDir;
+    }
+
+    /**
+     * method for get maxBodyBytes
+     */
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * method for set maxBodyBytes
+     */
+    public void setMaxBodyBytes(long maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * method for get pool
+     */
+    public Pool getPool() {
+        return pool;
+    }
+
+    /**
+     * method for set pool
+     */
+    public void setPool(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * method for get batch
+     */
+    public Batch getBatch() {
+        return batch;
+    }
+
+    /**
+     * method for set batch
+     */
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * method for get limiter
+     */
+    public Limiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * method for set limiter
+     */
+    public void setLimiter(Limiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * method for get circuitBreaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * method for set circuitBreaker
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 后端连接池设置, 每个后端地址一个连接池
+     */
+    public static class Pool {
+
+        /** 最小连接数 */
+        private int minConnections = 1;
+
+        /** 最大连接数 */
+        private int maxConnections = 4;
+
+        /** 单个连接最大未完成请求数 */
+        private int maxInFlightPerConnection = 256;
+
+        /** 空闲连接回收时间, 毫秒 */
+        private long idleTimeoutMillis = 60000L;
+
+        /** 健康检查间隔, 毫秒 */
+        private long healthCheckIntervalMillis = 5000L;
+
+        /** 建立连接超时时间, 毫秒 */
+        private int connectTimeoutMillis = 1000;
+
+        /**
+         * method for get minConnections
+         */
+        public int getMinConnections() {
+            return minConnections;
+        }
+
+        /**
+         * method for set minConnections
+         */
+        public void setMinConnections(int minConnections) {
+            this.minConnections = minConnections;
+        }
+
+        /**
+         * method for get maxConnections
+         */
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        /**
+         * method for set maxConnections
+         */
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        /**
+         * method for get maxInFlightPerConnection
+         */
+        public int getMaxInFlightPerConnection() {
+            return maxInFlightPerConnection;
+        }
+
+        /**
+         * method for set maxInFlightPerConnection
+         */
+        public void setMaxInFlightPerConnection(int maxInFlightPerConnection) {
+            this.maxInFlightPerConnection = maxInFlightPerConnection;
+        }
+
+        /**
+         * method for get idleTimeoutMillis
+         */
+        public long getIdleTimeoutMillis() {
+            return idleTimeoutMillis;
+        }
+
+        /**
+         * method for set idleTimeoutMillis
+         */
+        public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+        }
+
+        /**
+         * method for get healthCheckIntervalMillis
+         */
+        public long getHealthCheckIntervalMillis() {
+            return healthCheckIntervalMillis;
+        }
+
+        /**
+         * method for set healthCheckIntervalMillis
+         */
+        public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+            this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+        }
+
+        /**
+         * method for get connectTimeoutMillis
+         */
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        /**
+         * method for set connectTimeoutMillis
+         */
+        public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+        }
+    }
+
+    /**
+     * 批量请求设置, 一次http请求执行多个服务码
+     */
+    public static class Batch {
+
+        /** 批量请求路径 */
+        private String path = "/batch";
+
+        /** 单次最大服务码数 */
+        private int maxItems = 20;
+
+        /** 单项超时时间, 毫秒, 请求中指定的超时时间不能超过该值 */
+        private long itemTimeoutMillis = 3000L;
+
+        /**
+         * method for get path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * method for set path
+         */
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        /**
+         * method for get maxItems
+         */
+        public int getMaxItems() {
+            return maxItems;
+        }
+
+        /**
+         * method for set maxItems
+         */
+        public void setMaxItems(int maxItems) {
+            this.maxItems = maxItems;
+        }
+
+        /**
+         * method for get itemTimeoutMillis
+         */
+        public long getItemTimeoutMillis() {
+            return itemTimeoutMillis;
+        }
+
+        /**
+         * method for set itemTimeoutMillis
+         */
+        public void setItemTimeoutMillis(long itemTimeoutMillis) {
+            this.itemTimeoutMillis = itemTimeoutMillis;
+        }
+    }
+
+    /**
+     * 应用并发限制设置, 每个应用独立按rtt自适应调整并发上限
+     */
+    public static class Limiter {
+
+        /** 是否开启 */
+        private boolean enabled = true;
+
+        /** 初始并发上限 */
+        private int initialLimit = 20;
+
+        /** 最小并发上限 */
+        private int minLimit = 4;
+
+        /** 最大并发上限 */
+        private int maxLimit = 1000;
+
+        /** rtt容忍倍数, 短期rtt超过长期rtt的该倍数时收缩上限 */
+        private double rttTolerance = 2.0;
+
+        /** 上限调整平滑系数, 0到1之间 */
+        private double smoothing = 0.2;
+
+        /**
+         * method for get enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * method for set enabled
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * method for get initialLimit
+         */
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        /**
+         * method for set initialLimit
+         */
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        /**
+         * method for get minLimit
+         */
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        /**
+         * method for set minLimit
+         */
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        /**
+         * method for get maxLimit
+         */
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        /**
+         * method for set maxLimit
+         */
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        /**
+         * method for get rttTolerance
+         */
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        /**
+         * method for set rttTolerance
+         */
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+
+        /**
+         * method for get smoothing
+         */
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        /**
+         * method for set smoothing
+         */
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+    }
+
+    /**
+     * 后端地址熔断设置, 按最近的调用结果统计失败率和慢调用率
+     */
+    public static class CircuitBreaker {
+
+        /** 是否开启 */
+        private boolean enabled = true;
+
+        /** 统计的最近调用数 */
+        private int windowSize = 50;
+
+        /** 开始判断前的最少调用数 */
+        private int minimumCalls = 20;
+
+        /** 失败率阈值, 百分比 */
+        private int failureRateThreshold = 50;
+
+        /** 慢调用耗时, 毫秒 */
+        private long slowCallDurationMillis = 1000L;
+
+        /** 慢调用率阈值, 百分比 */
+        private int slowCallRateThreshold = 80;
+
+        /** 熔断持续时间, 毫秒, 之后放行少量探测请求 */
+        private long openDurationMillis = 5000L;
+
+        /** 半开状态的探测请求数 */
+        private int halfOpenProbes = 3;
+
+        /**
+         * method for get enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * method for set enabled
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * method for get windowSize
+         */
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        /**
+         * method for set windowSize
+         */
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        /**
+         * method for get minimumCalls
+         */
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        /**
+         * method for set minimumCalls
+         */
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        /**
+         * method for get failureRateThreshold
+         */
+        public int getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        /**
+         * method for set failureRateThreshold
+         */
+        public void setFailureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        /**
+         * method for get slowCallDurationMillis
+         */
+        public long getSlowCallDurationMillis() {
+            return slowCallDurationMillis;
+        }
+
+        /**
+         * method for set slowCallDurationMillis
+         */
+        public void setSlowCallDurationMillis(long slowCallDurationMillis) {
+            this.slowCallDurationMillis = slowCallDurationMillis;
+        }
+
+        /**
+         * method for get slowCallRateThreshold
+         */
+        public int getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        /**
+         * method for set slowCallRateThreshold
+         */
+        public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        /**
+         * method for get openDurationMillis
+         */
+        public long getOpenDurationMillis() {
+            return openDurationMillis;
+        }
+
+        /**
+         * method for set openDurationMillis
+         */
+        public void setOpenDurationMillis(long openDurationMillis) {
+            this.openDurationMillis = openDurationMillis;
+        }
+
+        /**
+         * method for get halfOpenProbes
+         */
+        public int getHalfOpenProbes() {
+            return halfOpenProbes;
+        }
+
+        /**
+         * method for set halfOpenProbes
+         */
+        public void setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.bestv.supergate.config;
+
+import com.bestv.supergate.filter.ResponseCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 返回结果缓存指标
+ * 通过actuator的/metrics输出每个服务码缓存的命中、未命中、加载失败和淘汰次数
+ * Created by flamhaze on 16/10/18.
+ */
+@Component
+public class ResponseCacheMetrics implements PublicMetrics {
+
+    /** 指标名前缀 */
+    private static final String METRIC_PREFIX = "supergate.cache.";
+
+    /**
+     * @see PublicMetrics#metrics()
+     */
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        for (ResponseCache responseCache : ResponseCache.getCacheMap().values())
+        {
+            String prefix = METRIC_PREFIX + responseCache.getServiceCode() + ".";
+            CacheStats stats = responseCache.stats();
+
+            metrics.add(new Metric<Long>(prefix + "hit", stats.hitCount()));
+            metrics.add(new Metric<Long>(prefix + "miss", stats.missCount()));
+            metrics.add(new Metric<Long>(prefix + "load.failure", stats.loadFailureCount()));
+            metrics.add(new Metric<Long>(prefix + "eviction", stats.evictionCount()));
+        }
+        return metrics;
+    }
+}
@@ -2,6 +2,8 @@ package com.bestv.supergate.config;
 
 import com.bestv.flame.client.handler.softrouter.EurekaRouterServer;
 import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.util.RpcTransport;
+import com.codahale.metrics.MetricRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -17,4 +19,16 @@ public class ServiceConfig {
     {
         return new EurekaRouterServer();
     }
+
+    /**
+     * rpc传输资源, 按网关设置创建, 容器关闭时释放连接和线程
+     * @param gateProperties 网关设置
+     * @param metricRegistry 指标注册表
+     * @return rpc传输资源
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RpcTransport rpcTransport(GateProperties gateProperties, MetricRegistry metricRegistry)
+    {
+        return new RpcTransport(gateProperties, metricRegistry);
+    }
 }
@@ -1,31 +1,55 @@
 package com.bestv.supergate.filter;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.parser.Feature;
 import com.bestv.flame.common.dto.RpcRequest;
+import com.bestv.supergate.util.GateException;
+import com.bestv.supergate.util.JsonBodyReader;
+import com.bestv.supergate.util.LoadBalance;
+import com.bestv.supergate.util.ParameterType;
 import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RequestTemplate;
+import com.bestv.supergate.util.RoutePlan;
+import com.bestv.supergate.util.ServiceMetrics;
+import com.bestv.supergate.util.RpcFuture;
 import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.RpcResponse;
+import com.bestv.supergate.util.RpcResultStatus;
+import com.bestv.supergate.util.RpcResultWriter;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.context.RequestContext;
-import com.bestv.common.dto.ErrorContext;
-import com.bestv.common.dto.ErrorInfo;
 import com.bestv.common.dto.Node;
 import com.bestv.common.dto.NodeTree;
 import com.bestv.common.util.CommonUtil;
 import com.bestv.common.util.StringUtil;
 import com.bestv.flame.client.handler.softrouter.RouterServer;
 import com.bestv.flame.client.handler.softrouter.strategy.WholeConnectStrategy;
-
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * 过滤器基类
@@ -33,6 +57,9 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public abstract class AbstractFilter extends ZuulFilter {
 
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractFilter.class);
+
     /** 路由服务 */
     private RouterServer routerServer;
 
@@ -48,11 +75,17 @@ public abstract class AbstractFilter extends ZuulFilter {
     /** 方法名 */
     private String methodName;
 
-    /** 参数组字符串缓冲器 */
-    private StringBuilder paramStringBuffer;
+    /** 参数链接, 代码参数路径 -> 请求参数key, 保持声明顺序 */
+    private Map<String, String> parameterLinkMap;
+
+    /** 类信息, 参数路径 -> 类名, 保持声明顺序 */
+    private Map<String, String> classInfoMap;
 
-    /** 类信息字符串缓冲器 */
-    private StringBuilder classInfoStringBuffer;
+    /** 参数类型, 请求参数key -> 类型, 未声明时为字符串 */
+    private Map<String, ParameterType> parameterTypeMap;
+
+    /** 数组路径, 链接了参数的路径按数组参数处理, 其他路径的节点设为数组 */
+    private Set<String> arrayPaths;
 
     /** 参数结构 */
     private NodeTree argumentTree;
@@ -72,37 +105,131 @@ public abstract class AbstractFilter extends ZuulFilter {
     /** RPC请求类名 */
     private static final String RPC_REQUEST_CLASS_NAME = RpcRequest.class.getName();
 
-    /** 特殊字符串A */
-    private static final String SPECIAL_STR_A = "★☆";
-
-    /** 特殊字符串B */
-    private static final String SPECIAL_STR_B= "☆★";
-
     /** 路径分隔符 */
     private static final String SEPARATOR = ".";
 
-    /** 全局的映射关系, 缓存各种配置 */
-    private static final Map<String, String> GEN_MAP = new ConcurrentHashMap<String, String>();
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** rpc调用失败提示 */
+    private static final byte[] RPC_FAILED_BYTES = "RPC调用失败".getBytes(UTF_8);
+
+    /** rpc请求超时提示 */
+    private static final String TIMEOUT_MESSAGE = "RPC请求超时";
+
+    /** 网关内部错误 */
+    private static final int INTERNAL_SERVER_ERROR = 500;
+
+    /** 网关超时 */
+    private static final int GATEWAY_TIMEOUT = 504;
+
+    /** JSON请求体类型, 可以带charset等参数 */
+    private static final String JSON_CONTENT_TYPE = "application/json";
 
-    /** 空对象 */
-    private static final JSONObject NULL_OBJECT = JSONObject.parseObject("{\"value\":null}");
+    /**
+     * 占位键顺序: 前缀相同时按末尾序号的数值比较, p2排在p10之前;
+     * 按字符串比较时p10会排到p2之前, 第11个参数起参数值与模板占位符错位
+     */
+    private static final Comparator<String> PLACEHOLDER_ORDER = new Comparator<String>() {
+        public int compare(String left, String right) {
+
+            int leftDigits = digitStart(left);
+            int rightDigits = digitStart(right);
+
+            int result = left.substring(0, leftDigits).compareTo(right.substring(0, rightDigits));
+            if (result != 0)
+            {
+                return result;
+            }
+
+            // 去掉前导零后先比位数再逐位比较, 不受数值范围限制
+            String leftNumber = stripLeadingZeros(left.substring(leftDigits));
+            String rightNumber = stripLeadingZeros(right.substring(rightDigits));
+            if (leftNumber.length() != rightNumber.length())
+            {
+                return leftNumber.length() - rightNumber.length();
+            }
+
+            result = leftNumber.compareTo(rightNumber);
+            return result != 0 ? result : left.compareTo(right);
+        }
+    };
 
     /** 业务执行器 */
     private RequestSenderHandler handler;
 
+    /** 路由计划, 载入时编译, 之后只读 */
+    private RoutePlan routePlan;
+
+    /** 返回结果缓存过期时间, 毫秒, 不大于0时不缓存 */
+    private long cacheTtlMillis;
+
+    /** 返回结果缓存最大条目数, 为0时为默认值 */
+    private long cacheMaxSize;
+
+    /** 返回结果缓存, 未开启时为null */
+    private ResponseCache responseCache;
+
+    /** 调用成功后需要清空缓存的服务码组 */
+    private String[] invalidateServiceCodes;
+
+    /** rpc请求超时时间, 毫秒, 不大于0时使用网关默认值 */
+    private long timeoutMillis;
+
+    /** 应用的后端地址选择方式, 为null时不改变处理器的设置 */
+    private LoadBalance loadBalance;
+
+    /** 服务码指标 */
+    private ServiceMetrics metrics;
+
+    /** 过滤器类型, zuul不会直接执行该类型的过滤器 */
+    private static final String SERVICE_FILTER_TYPE = "service";
+
     /** 路由服务器等待超时时间, 毫秒 */
     private static final Long ROUTER_SERVER_WAIT_TIMEOUT = 60000L;
 
+    /** 处理器创建锁, 脚本并行载入时同一应用只创建一个处理器 */
+    private static final Object HANDLER_LOCK = new Object();
+
     /**
      * 构造函数, 一些初始设定
      */
     public AbstractFilter() throws InterruptedException
     {
-        classInfoStringBuffer = new StringBuilder();
-        paramStringBuffer = new StringBuilder();
-        loadEnvironment();
+        this(null);
+    }
+
+    /**
+     * 构造函数, 按路由定义设定, 不调用{@link #loadEnvironment()}
+     * @param definition 路由定义, 为null时由脚本的loadEnvironment设定
+     */
+    protected AbstractFilter(RouteDefinition definition) throws InterruptedException
+    {
+        classInfoMap = new LinkedHashMap<String, String>();
+        parameterLinkMap = new LinkedHashMap<String, String>();
+        parameterTypeMap = new HashMap<String, ParameterType>();
+        arrayPaths = new LinkedHashSet<String>();
+        if (definition == null)
+        {
+            loadEnvironment();
+        }
+        else
+        {
+            definition.applyTo(this);
+        }
+        routePlan = buildRoutePlan();
+        metrics = ServiceMetrics.of(serviceCode);
 
         loadHandlerByAppName(appName);
+
+        if (cacheTtlMillis > 0)
+        {
+            responseCache = new ResponseCache(serviceCode, cacheTtlMillis, cacheMaxSize, new ResponseCache.Loader() {
+                public CompletableFuture<ResponseCache.CachedResult> load(Object[] parameters, Executor executor) {
+                    return loadCachedResult(parameters, 0L, executor);
+                }
+            });
+        }
     }
 
     /**
@@ -117,8 +244,9 @@ public abstract class AbstractFilter extends ZuulFilter {
 
         if (handler == null)
         {
-            synchronized (this)
+            synchronized (HANDLER_LOCK)
             {
+                handler = RpcRequestContext.getHandler(appNameForHandler);
                 if (handler == null)
                 {
                     handler = new RequestSenderHandler(appName, serviceInterface, null, 1, true, true, routerServer, new WholeConnectStrategy());
@@ -126,6 +254,11 @@ public abstract class AbstractFilter extends ZuulFilter {
                 }
             }
         }
+
+        if (loadBalance != null)
+        {
+            handler.setLoadBalance(loadBalance);
+        }
     }
 
     /**
@@ -134,19 +267,11 @@ public abstract class AbstractFilter extends ZuulFilter {
      */
     private void waitRouterServer() throws InterruptedException
     {
-        synchronized (AbstractFilter.class)
-        {
-            if (RpcRequestContext.getRouterServer() == null)
-            {
-                AbstractFilter.class.wait(ROUTER_SERVER_WAIT_TIMEOUT);
-            }
+        routerServer = RpcRequestContext.awaitRouterServer(ROUTER_SERVER_WAIT_TIMEOUT);
 
-            if (RpcRequestContext.getRouterServer() == null)
-            {
-                throw new RuntimeException("路由服务器无法载入, 无法启动处理器.");
-            }
-
-            routerServer = RpcRequestContext.getRouterServer();
+        if (routerServer == null)
+        {
+            throw new RuntimeException("路由服务器无法载入, 无法启动处理器.");
         }
     }
 
@@ -155,62 +280,443 @@ public abstract class AbstractFilter extends ZuulFilter {
      */
     public Object run() {
 
-        if (isServiceCodeMatch())
+        RequestContext context = RequestContext.getCurrentContext();
+        HttpServletResponse servletResponse = context.getResponse();
+        servletResponse.addHeader("Access-Control-Allow-Origin", "*");
+        context.setSendZuulResponse(false);
+
+        long startNanos = metrics.begin();
+
+        if (responseCache != null)
         {
-            RequestContext.getCurrentContext().getResponse().addHeader("Access-Control-Allow-Origin", "*");
+            runCached(context.getRequest(), servletResponse, startNanos);
+            return null;
+        }
 
-            try {
-                JSONObject response = getResponse();
+        if (RpcRequestContext.getGateProperties().isAsyncServlet())
+        {
+            runAsync(context.getRequest(), startNanos);
+            return null;
+        }
 
-                removeJsonType(response);
+        try {
+            RpcResultStatus status = writeResponse(servletResponse, getResponse());
+            metrics.end(startNanos, status);
+            afterResponse(status);
+        } catch (Exception e) {
 
-                if (response == null)
-                {
-                    response = NULL_OBJECT;
-                }
+            metrics.fail(startNanos, e);
+            writeError(servletResponse, e);
+        }
+        return null;
+    }
 
-                boolean success = response.getBoolean("success");
+    /**
+     * 异步处理请求, 请求线程发出rpc请求后立即返回, 收到回复后由容器线程输出结果
+     * @param servletRequest 请求
+     * @param startNanos     开始时间, 纳秒
+     */
+    private void runAsync(HttpServletRequest servletRequest, final long startNanos)
+    {
+        final AsyncContext asyncContext = servletRequest.startAsync();
 
-                if (success)
-                {
-                    JSONObject baseResult = response.getJSONObject("targetResult");
+        try
+        {
+            getResponseAsync().addListener(new RpcFuture.Listener() {
+                public void operationComplete(final RpcFuture future) throws Exception {
 
-                    if (baseResult == null)
+                    // 回调在io线程执行, 输出交给容器线程
+                    try
                     {
-                        throw new RuntimeException("结果为空");
+                        startOutput(asyncContext, future, startNanos);
                     }
-
-                    if(!baseResult.getBoolean("success"))
+                    catch (RuntimeException e)
                     {
-                        ErrorContext errorContext = baseResult.getObject("errorContext", ErrorContext.class);
-                        for (ErrorInfo errorInfo : errorContext.getErrorInfos())
+                        if (future.getResult() != null)
                         {
-                            errorInfo.setStackTraceElements(null);
+                            future.getResult().release();
                         }
-                        baseResult.put("errorContext", errorContext);
+                        metrics.fail(startNanos, e);
+                        asyncContext.complete();
+                        throw e;
+                    }
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            metrics.fail(startNanos, e);
+            writeError((HttpServletResponse) asyncContext.getResponse(), e);
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * 在容器线程输出异步请求结果
+     * @param asyncContext 异步上下文
+     * @param future       调用结果
+     * @param startNanos   开始时间, 纳秒
+     */
+    private void startOutput(final AsyncContext asyncContext, final RpcFuture future, final long startNanos)
+    {
+        asyncContext.start(new Runnable() {
+            public void run() {
+                try
+                {
+                    if (future.getCause() != null)
+                    {
+                        throw new RuntimeException("rpc请求失败, traceId: " + future.getTraceId(), future.getCause());
                     }
+                    RpcResultStatus status = writeResponse((HttpServletResponse) asyncContext.getResponse(), future.getResult());
+                    metrics.end(startNanos, status);
+                    afterResponse(status);
+                }
+                catch (Exception e)
+                {
+                    metrics.fail(startNanos, e);
+                    writeError((HttpServletResponse) asyncContext.getResponse(), e);
+                }
+                finally
+                {
+                    asyncContext.complete();
+                }
+            }
+        });
+    }
+
+    /**
+     * 通过返回结果缓存处理请求
+     * 命中或同一参数已有请求在途时不再发出rpc请求; 异步模式下只有需要等待时才转入异步;
+     * 缓存加载按服务码的超时时间发送, 调用方只等待自己给出的超时时间, 到期返回504, 不影响其他等待方
+     * @param servletRequest  请求
+     * @param servletResponse 响应
+     * @param startNanos      开始时间, 纳秒
+     */
+    private void runCached(HttpServletRequest servletRequest, HttpServletResponse servletResponse, final long startNanos)
+    {
+        CompletableFuture<ResponseCache.CachedResult> future;
+
+        try
+        {
+            long waitMillis = routePlan.capTimeout(getRequestedTimeout());
+            future = withTimeout(responseCache.get(getParameterValues()), waitMillis);
+        }
+        catch (Exception e)
+        {
+            metrics.fail(startNanos, e);
+            writeError(servletResponse, e);
+            return;
+        }
+
+        if (future.isDone() || !RpcRequestContext.getGateProperties().isAsyncServlet())
+        {
+            try
+            {
+                ResponseCache.CachedResult result = future.get();
+                writeCachedResult(servletResponse, result);
+                metrics.end(startNanos, result.getStatus());
+            }
+            catch (Exception e)
+            {
+                metrics.fail(startNanos, e);
+                writeError(servletResponse, e);
+            }
+            return;
+        }
+
+        final AsyncContext asyncContext = servletRequest.startAsync();
+
+        future.whenComplete(new BiConsumer<ResponseCache.CachedResult, Throwable>() {
+            public void accept(final ResponseCache.CachedResult result, final Throwable cause) {
+                try
+                {
+                    asyncContext.start(new Runnable() {
+                        public void run() {
+                            try
+                            {
+                                if (cause != null)
+                                {
+                                    throw new RuntimeException("rpc请求失败", cause);
+                                }
+                                writeCachedResult((HttpServletResponse) asyncContext.getResponse(), result);
+                                metrics.end(startNanos, result.getStatus());
+                            }
+                            catch (Exception e)
+                            {
+                                metrics.fail(startNanos, e);
+                                writeError((HttpServletResponse) asyncContext.getResponse(), e);
+                            }
+                            finally
+                            {
+                                asyncContext.complete();
+                            }
+                        }
+                    });
+                }
+                catch (RuntimeException e)
+                {
+                    metrics.fail(startNanos, e);
+                    writeError((HttpServletResponse) asyncContext.getResponse(), e);
+                    asyncContext.complete();
+                }
+            }
+        });
+    }
+
+    /**
+     * 限制等待时间
+     * 缓存加载由多个调用方共用, 不能直接让其超时失败, 每个调用方单独等待
+     * @param future        缓存加载结果
+     * @param timeoutMillis 等待时间, 毫秒
+     * @return 调用方的结果, 到期未完成时以504失败
+     */
+    private CompletableFuture<ResponseCache.CachedResult> withTimeout(CompletableFuture<ResponseCache.CachedResult> future,
+                                                                      long timeoutMillis)
+    {
+        if (future.isDone())
+        {
+            return future;
+        }
 
-                    response = JSON.parseObject(JSON.toJSONString(baseResult), Feature.DisableSpecialKeyDetect);
+        final CompletableFuture<ResponseCache.CachedResult> result = new CompletableFuture<ResponseCache.CachedResult>();
+        final Timeout timeout = RpcRequestContext.getTransport().getTimeoutTimer().newTimeout(new TimerTask() {
+            public void run(Timeout timeout) throws Exception {
+                result.completeExceptionally(new GateException(GATEWAY_TIMEOUT, TIMEOUT_MESSAGE));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        future.whenComplete(new BiConsumer<ResponseCache.CachedResult, Throwable>() {
+            public void accept(ResponseCache.CachedResult cachedResult, Throwable cause) {
+                timeout.cancel();
+                if (cause != null)
+                {
+                    result.completeExceptionally(cause);
                 }
                 else
                 {
-                    outputResponse("RPC调用失败".getBytes("UTF-8"));
-                    RequestContext.getCurrentContext().setSendZuulResponse(false);
-                    return null;
+                    result.complete(cachedResult);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 按给定参数执行, 不读取当前http请求, 用于批量请求
+     * 开启缓存时走缓存, 缓存加载由多个调用方共用, 按服务码的超时时间发送; 调用成功后清空声明的服务码缓存
+     * @param params        请求参数key -> 参数值, 字符串或字符串数组
+     * @param timeoutMillis 调用方给出的超时时间, 毫秒, 不超过服务码的超时时间
+     * @return 返回结果
+     * @throws GateException 参数值无效, 400
+     */
+    public CompletableFuture<ResponseCache.CachedResult> execute(Map<String, Object> params, long timeoutMillis)
+    {
+        Object[] parameters = new Object[routePlan.getParameterCount()];
+        for (int i = 0; i < parameters.length; i++)
+        {
+            Object value = params.get(routePlan.getParameterKey(i));
+            parameters[i] = value instanceof String[]
+                    ? routePlan.bind(i, (String[]) value)
+                    : routePlan.bind(i, (String) value);
+        }
+
+        final long startNanos = metrics.begin();
+        final boolean cached = responseCache != null;
+        CompletableFuture<ResponseCache.CachedResult> future = cached
+                ? responseCache.get(parameters)
+                : loadCachedResult(parameters, timeoutMillis, ForkJoinPool.commonPool());
+
+        future.whenComplete(new BiConsumer<ResponseCache.CachedResult, Throwable>() {
+            public void accept(ResponseCache.CachedResult result, Throwable cause) {
+                if (cause != null)
+                {
+                    metrics.fail(startNanos, cause);
+                    return;
                 }
 
+                metrics.end(startNanos, result.getStatus());
+                if (!cached)
+                {
+                    afterResponse(result.getStatus());
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 发出rpc请求, 收到回复后在指定线程池中转换为输出内容
+     * @param parameters    参数组
+     * @param timeoutMillis 调用方给出的超时时间, 毫秒, 不大于0时按服务码的超时时间
+     * @param executor      转换输出使用的线程池
+     * @return 返回结果
+     */
+    private CompletableFuture<ResponseCache.CachedResult> loadCachedResult(Object[] parameters, long timeoutMillis,
+                                                                           final Executor executor)
+    {
+        final CompletableFuture<ResponseCache.CachedResult> result = new CompletableFuture<ResponseCache.CachedResult>();
+
+        try
+        {
+            sendAsync(parameters, timeoutMillis).addListener(new RpcFuture.Listener() {
+                public void operationComplete(final RpcFuture future) throws Exception {
 
+                    if (future.getCause() != null)
+                    {
+                        result.completeExceptionally(future.getCause());
+                        return;
+                    }
 
-                RequestContext.getCurrentContext().getResponse().setContentType("text/html;charset=utf-8");
-                outputResponse(response.toJSONString().getBytes("UTF-8"));
-                RequestContext.getCurrentContext().setSendZuulResponse(false);
+                    try
+                    {
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                try
+                                {
+                                    result.complete(toCachedResult(future.getResult()));
+                                }
+                                catch (Exception e)
+                                {
+                                    result.completeExceptionally(e);
+                                }
+                            }
+                        });
+                    }
+                    catch (RuntimeException e)
+                    {
+                        future.getResult().release();
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 
-            } catch (Exception e) {
+    /**
+     * 转换rpc请求结果为缓存的输出内容, 转换后释放回复帧
+     * @param response rpc请求结果
+     * @return 返回结果, rpc调用失败时不可缓存
+     */
+    private ResponseCache.CachedResult toCachedResult(RpcResponse response) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(response.getContent().readableBytes());
 
-                e.printStackTrace();
+            RpcResultStatus status = RpcResultWriter.write(response.getContent(), outputStream);
+            if (status == RpcResultStatus.RPC_FAILURE)
+            {
+                return new ResponseCache.CachedResult(RPC_FAILED_BYTES, status);
             }
+            return new ResponseCache.CachedResult(outputStream.toByteArray(), status);
+        }
+        finally
+        {
+            response.release();
+        }
+    }
+
+    /**
+     * 输出缓存的返回结果
+     * @param servletResponse 响应
+     * @param result          返回结果
+     * @throws IOException    没有取到输出流
+     */
+    private void writeCachedResult(HttpServletResponse servletResponse, ResponseCache.CachedResult result) throws IOException
+    {
+        servletResponse.setContentType("text/html;charset=utf-8");
+        outputResponse(servletResponse, result.getBody());
+    }
+
+    /**
+     * 调用完成后处理, 调用成功时清空声明的服务码的返回结果缓存
+     * @param status 回复状态
+     */
+    private void afterResponse(RpcResultStatus status)
+    {
+        if (status == RpcResultStatus.SUCCESS && invalidateServiceCodes != null)
+        {
+            ResponseCache.invalidate(invalidateServiceCodes);
+        }
+    }
+
+    /**
+     * 输出失败原因
+     * 网关异常按其状态码和提示返回; rpc超时返回504, 其他异常记录后返回500
+     * @param servletResponse 响应
+     * @param cause           失败原因
+     */
+    private void writeError(HttpServletResponse servletResponse, Throwable cause)
+    {
+        GateException gateException = GateException.find(cause);
+        int status;
+        byte[] body;
+
+        if (gateException != null)
+        {
+            status = gateException.getStatus();
+            body = gateException.getMessage().getBytes(UTF_8);
+        }
+        else if (ServiceMetrics.isTimeout(cause))
+        {
+            status = GATEWAY_TIMEOUT;
+            body = TIMEOUT_MESSAGE.getBytes(UTF_8);
+        }
+        else
+        {
+            LOGGER.error("服务码 " + serviceCode + " 调用失败", cause);
+            status = INTERNAL_SERVER_ERROR;
+            body = RPC_FAILED_BYTES;
+        }
+
+        try
+        {
+            if (!servletResponse.isCommitted())
+            {
+                servletResponse.setStatus(status);
+                servletResponse.setContentType("text/html;charset=utf-8");
+                outputResponse(servletResponse, body);
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("服务码 " + serviceCode + " 输出失败原因失败", e);
+        }
+    }
+
+    /**
+     * 输出rpc请求结果, 输出后释放回复帧
+     * @param servletResponse 响应
+     * @param response        rpc请求结果
+     * @return 回复状态
+     * @throws IOException    没有取到输出流
+     */
+    private RpcResultStatus writeResponse(HttpServletResponse servletResponse, RpcResponse response) throws IOException
+    {
+        try
+        {
+            servletResponse.setContentType("text/html;charset=utf-8");
+            OutputStream outputStream = servletResponse.getOutputStream();
+
+            RpcResultStatus status = RpcResultWriter.write(response.getContent(), outputStream);
+            if (status == RpcResultStatus.RPC_FAILURE)
+            {
+                outputStream.write(RPC_FAILED_BYTES);
+            }
+
+            outputStream.flush();
+            outputStream.close();
+            return status;
+        }
+        finally
+        {
+            response.release();
         }
-        return null;
     }
 
     /**
@@ -226,92 +732,124 @@ public abstract class AbstractFilter extends ZuulFilter {
     public abstract void loadEnvironment();
 
     /**
-     * 判断请求的服务码是否对应
-     * @return 服务码是否对应
+     * 发送rpc请求并等待回复
+     * @return rpc回复, 由调用方释放
      */
-    private boolean isServiceCodeMatch()
-    {
-        return StringUtil.equals(serviceCode, getRequestServiceCode());
+    public RpcResponse getResponse() throws Exception {
+
+        return handler.send(routePlan, getParameterValues(), getRequestedTimeout());
     }
 
-    public JSONObject getResponse() throws Exception {
+    /**
+     * 发送rpc请求, 不等待回复
+     * @return 调用结果
+     */
+    public RpcFuture getResponseAsync() throws Exception {
 
-        String requestGen = buildGen();
+        return sendAsync(getParameterValues(), getRequestedTimeout());
+    }
 
-        // 经常变的部分时常更新
-        handler.setRequestGen(requestGen);
+    /**
+     * 按参数组发送rpc请求, 不等待回复
+     * @param parameters    参数组
+     * @param timeoutMillis 调用方给出的超时时间, 毫秒, 不大于0时按服务码的超时时间
+     * @return 调用结果
+     */
+    private RpcFuture sendAsync(Object[] parameters, long timeoutMillis) throws Exception {
 
-        return (JSONObject) handler.doAction(null, getParameterByKeys(getParameterKeys(argumentMap)));
+        return handler.sendAsync(routePlan, parameters, timeoutMillis);
     }
 
     /**
-     * 去除JSON中的type信息
-     * @param jsonObject JSON对象
+     * 读取调用方给出的超时时间, 由路由计划按服务码的超时时间限制
+     * @return 超时时间, 毫秒, 没有时为0
+     * @throws GateException 超时请求头不是有效的毫秒数, 400
      */
-    private void removeJsonType(JSONObject jsonObject)
+    private long getRequestedTimeout()
     {
-        List<String> needDelList = new ArrayList<String>();
-        for (String key : jsonObject.keySet())
-        {
-            if (jsonObject.get(key) instanceof JSONObject)
-            {
-                JSONObject childJsonObject = (JSONObject) jsonObject.get(key);
+        String header = RpcRequestContext.getGateProperties().getTimeoutHeader();
+        String value = RequestContext.getCurrentContext().getRequest().getHeader(header);
 
-                if (childJsonObject.size() == 1 && childJsonObject.containsKey("@type"))
-                {
-                    needDelList.add(key);
-                    continue;
-                }
+        if (StringUtil.isBlank(value))
+        {
+            return 0L;
+        }
 
-                removeJsonType(childJsonObject);
+        try
+        {
+            long timeout = Long.parseLong(value.trim());
+            if (timeout > 0)
+            {
+                return timeout;
             }
         }
-
-        for (String needDelKey : needDelList)
+        catch (NumberFormatException e)
         {
-            jsonObject.remove(needDelKey);
+            // 按无效值处理
         }
-
-        jsonObject.remove("@type");
+        throw new GateException(400, "请求头 " + header + " 不是有效的毫秒数: " + value);
     }
 
     /**
-     * 根据参数key组获取参数组
-     * @param keys 参数key组
-     * @return 参数组
+     * 按路由计划的参数key顺序获取参数组, 按声明的类型校验并转换
+     * 在发出rpc请求前调用, 参数无效的请求不占用并发名额和连接;
+     * JSON请求体按代码参数路径流式取值, 请求体中没有的参数按参数key从查询串取值
+     * @return 参数组, 转换后的值, 由请求模板按类型写为JSON
+     * @throws GateException 参数值无效或请求体格式错误, 400; 请求体过大, 413
+     * @throws IOException   请求体读取失败
      */
-    private String[] getParameterByKeys(String[] keys)
+    private Object[] getParameterValues() throws IOException
     {
-        String[] parameters = new String[keys.length];
-        for (int i = 0; i < keys.length; i++)
-        {
-            parameters[i] = getParameter(keys[i]);
+        HttpServletRequest servletRequest = RequestContext.getCurrentContext().getRequest();
+        long maxBodyBytes = RpcRequestContext.getGateProperties().getMaxBodyBytes();
 
-            if (parameters[i] != null)
-            {
-                parameters[i] = "\"" + parameters[i] + "\"";
-            }
+        // 在容器解析表单前按声明的长度拒绝
+        JsonBodyReader.checkLength(servletRequest.getContentLengthLong(), maxBodyBytes);
+
+        String[][] bodyValues = null;
+        if (isJsonBody(servletRequest))
+        {
+            InputStream in = JsonBodyReader.limit(servletRequest.getInputStream(), servletRequest.getContentLengthLong(), maxBodyBytes);
+            bodyValues = JsonBodyReader.read(in, routePlan);
+        }
 
-            else
+        Object[] parameters = new Object[routePlan.getParameterCount()];
+        for (int i = 0; i < parameters.length; i++)
+        {
+            String[] values = bodyValues == null ? null : bodyValues[i];
+            if (values == null)
             {
-                parameters[i] = "null";
+                values = servletRequest.getParameterValues(routePlan.getParameterKey(i));
             }
+            parameters[i] = routePlan.bind(i, values);
         }
         return parameters;
     }
 
+    /**
+     * 是否为JSON请求体
+     * @param servletRequest 请求
+     * @return Content-Type是否为application/json
+     */
+    private static boolean isJsonBody(HttpServletRequest servletRequest)
+    {
+        String contentType = servletRequest.getContentType();
+        return contentType != null && contentType.regionMatches(true, 0, JSON_CONTENT_TYPE, 0, JSON_CONTENT_TYPE.length());
+    }
+
     /**
      * 获取参数键值组
-     * @param keyMap 参数键值映射
+     * 按占位键末尾的序号排列, 与模板占位符的下标一致
+     * @param keyMap 占位键 -> 请求参数key 映射
      * @return 参数键值组
      */
-    private String[] getParameterKeys(Map<String, Object> keyMap)
+    static String[] getParameterKeys(Map<String, Object> keyMap)
     {
         int keySize = keyMap.size();
 
         String[] keys = new String[keySize];
         List<String> keyList = new ArrayList<String>(keyMap.keySet());
-        Collections.sort(keyList);
+        Collections.sort(keyList, PLACEHOLDER_ORDER);
 
         for (int i = 0; i < keySize; i++)
         {
@@ -322,10 +860,11 @@ public abstract class AbstractFilter extends ZuulFilter {
     }
 
     /**
+     * 由{@link ServiceDispatchFilter}按服务码分发执行, 不参与zuul的route阶段遍历
      * @see ZuulFilter#filterType()
      */
     public String filterType() {
-        return "route";
+        return SERVICE_FILTER_TYPE;
     }
 
     /**
@@ -343,44 +882,35 @@ public abstract class AbstractFilter extends ZuulFilter {
         return true;
     }
 
-    /**
-     * 获取当前请求服务码
-     * @return 服务码
-     */
-    protected String getRequestServiceCode()
-    {
-        return RequestContext.getCurrentContext().getRequest().getRequestURI().substring(1);
-    }
-
     /**
      * 填充返回结果
-     * @param response      返回结果
-     * @throws IOException  没有取到输出流
+     * @param servletResponse 响应
+     * @param response        返回结果
+     * @throws IOException    没有取到输出流
      */
-    protected void outputResponse(byte[] response) throws IOException {
+    protected void outputResponse(HttpServletResponse servletResponse, byte[] response) throws IOException {
 
-        OutputStream outputStream = RequestContext.getCurrentContext().getResponse().getOutputStream();
+        OutputStream outputStream = servletResponse.getOutputStream();
         outputStream.write(response);
         outputStream.flush();
         outputStream.close();
     }
 
     /**
-     * 获取参数
-     * @param paramKey 参数key
-     * @return 参数
+     * 将参数路径设置为数组
+     * 链接了请求参数的路径按数组参数处理, 同名参数的多个值写为字符串数组; 其他路径的节点设为数组
+     * @param path 参数路径
      */
-    protected String getParameter(String paramKey)
+    protected void setArray(String path)
     {
-        return RequestContext.getCurrentContext().getRequest().getParameter(paramKey);
+        arrayPaths.add(path);
     }
 
-
     /**
-     * 将节点设置为数组类型
+     * 将参数结构中的节点设置为数组类型
      * @param path 节点路径
      */
-    protected void setArray(String path)
+    private void setArrayNode(String path)
     {
         Node node = argumentTree.getNode(path);
         if (node == null)
@@ -399,12 +929,50 @@ public abstract class AbstractFilter extends ZuulFilter {
      */
     protected void setClassInfo(String path, String className)
     {
-        classInfoStringBuffer
-                .append(SPECIAL_STR_A)
-                .append(path)
-                .append(SPECIAL_STR_B)
-                .append(className)
-                .append(SPECIAL_STR_A);
+        classInfoMap.put(path, className);
+    }
+
+    /**
+     * 开启返回结果缓存, 只用于只读服务码
+     * 按服务码和排序后的参数值缓存, 同一参数的并发请求只发出一次rpc请求
+     * @param ttlMillis 过期时间, 毫秒, 为0时不缓存
+     * @param maxSize   最大条目数, 为0时为{@link ResponseCache#DEFAULT_MAX_SIZE}
+     */
+    protected void setResponseCache(long ttlMillis, long maxSize)
+    {
+        if (ttlMillis < 0 || maxSize < 0)
+        {
+            throw new IllegalArgumentException("缓存过期时间和最大条目数不能为负数: " + ttlMillis + ", " + maxSize);
+        }
+        this.cacheTtlMillis = ttlMillis;
+        this.cacheMaxSize = maxSize;
+    }
+
+    /**
+     * 设置rpc请求超时时间, 调用方通过请求头给出的超时时间不能超过该值
+     * @param timeoutMillis 超时时间, 毫秒
+     */
+    protected void setTimeoutMillis(long timeoutMillis)
+    {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 设置应用的后端地址选择方式, 处理器按应用共用, 同一应用的脚本应设置一致
+     * @param loadBalance 地址选择方式
+     */
+    protected void setLoadBalance(LoadBalance loadBalance)
+    {
+        this.loadBalance = loadBalance;
+    }
+
+    /**
+     * 设置调用成功后需要清空缓存的服务码
+     * @param serviceCodes 服务码组
+     */
+    protected void setInvalidateServiceCodes(String... serviceCodes)
+    {
+        this.invalidateServiceCodes = serviceCodes;
     }
 
     /**
@@ -420,143 +988,147 @@ public abstract class AbstractFilter extends ZuulFilter {
      * 设置接口信息
      * @param serviceInterface 接口名
      */
+    /**
+     * 获取末尾连续数字的起始位置
+     * @param key 占位键
+     * @return 起始位置, 没有末尾数字时为长度
+     */
+    private static int digitStart(String key)
+    {
+        int start = key.length();
+        while (start > 0 && Character.isDigit(key.charAt(start - 1)))
+        {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * 去掉前导零
+     * @param digits 数字串
+     * @return 去掉前导零的数字串, 全为零时为空串
+     */
+    private static String stripLeadingZeros(String digits)
+    {
+        int start = 0;
+        while (start < digits.length() && digits.charAt(start) == '0')
+        {
+            start++;
+        }
+        return digits.substring(start);
+    }
+
     protected void setServiceInterface(String serviceInterface)
     {
         this.serviceInterface = serviceInterface;
     }
 
     /**
-     * 链接参数
+     * 链接字符串参数
      * @param path          代码参数路径
      * @param parameterKey  请求参数key
      */
     protected void linkParameter(String path, String parameterKey)
     {
-        paramStringBuffer
-                .append(SPECIAL_STR_A)
-                .append(path)
-                .append(SPECIAL_STR_B)
-                .append(parameterKey)
-                .append(SPECIAL_STR_A);
+        linkParameter(path, parameterKey, ParameterType.STRING);
+    }
+
+    /**
+     * 链接参数
+     * @param path          代码参数路径
+     * @param parameterKey  请求参数key
+     * @param type          参数类型, 请求时按类型校验, 无效时返回400
+     */
+    protected void linkParameter(String path, String parameterKey, ParameterType type)
+    {
+        parameterLinkMap.put(path, parameterKey);
+        parameterTypeMap.put(parameterKey, type);
     }
 
     /**
-     * 构建请求字符串生成模板
-     * @return 请求字符串生成模板
+     * 构建路由计划
+     * @return 路由计划
      */
-    private String buildGen()
+    private RoutePlan buildRoutePlan()
     {
-        if (StringUtil.isBlank(serviceInterface))
+        RequestTemplate requestTemplate = buildGen();
+        String[] parameterKeys = getParameterKeys(argumentMap);
+
+        // 数组路径链接的参数按数组处理
+        for (String arrayPath : arrayPaths)
         {
-            throw new RuntimeException("没有设置接口名!");
+            String parameterKey = parameterLinkMap.get(arrayPath);
+            if (parameterKey != null)
+            {
+                parameterTypeMap.put(parameterKey, ParameterType.ARRAY);
+            }
         }
 
-        if (StringUtil.isBlank(methodName))
+        ParameterType[] parameterTypes = new ParameterType[parameterKeys.length];
+        for (int i = 0; i < parameterKeys.length; i++)
         {
-            throw new RuntimeException("没有设置方法名!");
+            ParameterType type = parameterTypeMap.get(parameterKeys[i]);
+            parameterTypes[i] = type == null ? ParameterType.STRING : type;
         }
 
-        String genKey = buildGenKey();
-        String requestGen = GEN_MAP.get(genKey);
+        long planTimeout = timeoutMillis > 0 ? timeoutMillis : RpcRequestContext.getGateProperties().getRpcTimeoutMillis();
+        return new RoutePlan(serviceCode, serviceInterface, methodName, requestTemplate, parameterKeys, parameterTypes,
+                parameterLinkMap, planTimeout);
+    }
 
-        // 没有缓存到请求字符串生成模板
-        if (StringUtil.isBlank(requestGen))
+    /**
+     * 构建请求模板
+     * @return 编译好的请求模板
+     */
+    private RequestTemplate buildGen()
+    {
+        if (StringUtil.isBlank(serviceInterface))
         {
-            synchronized (this)
-            {
-                if (StringUtil.isBlank(requestGen))
-                {
-                    // 构建新树
-                    argumentTree = new NodeTree();
-                    argumentMap = new HashMap<String, Object>();
-                    argumentTree.getHeadNode().setValue(RPC_REQUEST_CLASS_NAME);
-                    setArray(ARGS_PATH_PREFIX);
-
-                    // 载入接口名信息
-                    addFixedNode(SERVICE_INTERFACE_PATH, serviceInterface);
-
-                    // 载入方法名信息
-                    addFixedNode(METHOD_NAME_PATH, methodName);
-
-                    // 载入类信息
-                    String classMapInfo = classInfoStringBuffer.toString();
-                    String[] classInfoStrings = classMapInfo.split(SPECIAL_STR_A);
-
-                    for (String classInfoString : classInfoStrings)
-                    {
-                        if (StringUtil.isBlank(classInfoString))
-                        {
-                            continue;
-                        }
-
-                        String[] classInfo = classInfoString.split(SPECIAL_STR_B);
-                        String path = classInfo[0];
-                        String className = classInfo[1];
-                        addFixedNode(ARGS_PATH_PREFIX + SEPARATOR + path, className);
-                    }
-
+            throw new RuntimeException("没有设置接口名!");
+        }
 
-                    // 载入参数映射信息
-                    String paramMapInfo = paramStringBuffer.toString();
-                    String[] paramInfoStrings = paramMapInfo.split(SPECIAL_STR_A);
+        if (StringUtil.isBlank(methodName))
+        {
+            throw new RuntimeException("没有设置方法名!");
+        }
 
-                    for (String paramInfoString : paramInfoStrings)
-                    {
-                        if (StringUtil.isBlank(paramInfoString))
-                        {
-                            continue;
-                        }
+        // 构建新树
+        argumentTree = new NodeTree();
+        argumentMap = new HashMap<String, Object>();
+        argumentTree.getHeadNode().setValue(RPC_REQUEST_CLASS_NAME);
+        setArrayNode(ARGS_PATH_PREFIX);
 
-                        String[] paramInfo = paramInfoString.split(SPECIAL_STR_B);
-                        String path = paramInfo[0];
-                        String paramKey = paramInfo[1];
+        // 载入接口名信息
+        addFixedNode(SERVICE_INTERFACE_PATH, serviceInterface);
 
-                        Node paramNode = new Node();
-                        paramNode.setNodeName(ARGS_PATH_PREFIX + SEPARATOR + path);
-                        paramNode.setValue(paramKey);
-                        argumentTree.addNode(paramNode);
-                    }
+        // 载入方法名信息
+        addFixedNode(METHOD_NAME_PATH, methodName);
 
-                    requestGen = structToJsonString();
-                    GEN_MAP.put(genKey, requestGen);
-                }
-            }
+        // 载入类信息
+        for (Map.Entry<String, String> classInfo : classInfoMap.entrySet())
+        {
+            addFixedNode(ARGS_PATH_PREFIX + SEPARATOR + classInfo.getKey(), classInfo.getValue());
         }
 
-        return requestGen;
-    }
-
-    /**
-     * 构造gen的键值
-     * @return gen的键值
-     */
-    private String buildGenKey()
-    {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder
-                .append(SPECIAL_STR_A)
-                .append(serviceInterface)
-                .append(SPECIAL_STR_B)
-                .append(methodName)
-                .append(SPECIAL_STR_A);
-
-        if (classInfoStringBuffer != null)
+        // 载入数组信息, 数组参数由参数类型处理
+        for (String arrayPath : arrayPaths)
         {
-            stringBuilder
-                    .append(SPECIAL_STR_A)
-                    .append(classInfoStringBuffer.toString())
-                    .append(SPECIAL_STR_A);
+            if (!parameterLinkMap.containsKey(arrayPath))
+            {
+                setArrayNode(ARGS_PATH_PREFIX + SEPARATOR + arrayPath);
+            }
         }
 
-        if (paramStringBuffer != null)
+        // 载入参数映射信息
+        for (Map.Entry<String, String> parameterLink : parameterLinkMap.entrySet())
         {
-            stringBuilder
-                    .append(SPECIAL_STR_A)
-                    .append(paramStringBuffer.toString())
-                    .append(SPECIAL_STR_A);
+            Node paramNode = new Node();
+            paramNode.setNodeName(ARGS_PATH_PREFIX + SEPARATOR + parameterLink.getKey());
+            paramNode.setValue(parameterLink.getValue());
+            argumentTree.addNode(paramNode);
         }
 
-        return stringBuilder.toString();
+        return RequestTemplate.compile(structToJsonString());
     }
 
     public String structToJsonString()
@@ -579,6 +1151,21 @@ public abstract class AbstractFilter extends ZuulFilter {
         argumentTree.addNode(node);
     }
 
+    /**
+     * 获取过滤器名, 分发表按此识别同一来源的新旧实例
+     * @return 过滤器名, 脚本为类名
+     */
+    public String getFilterName() {
+        return getClass().getName();
+    }
+
+    /**
+     * method for get serviceCode
+     */
+    public String getServiceCode() {
+        return serviceCode;
+    }
+
     /**
      * method for set serviceCode
      */
@@ -593,4 +1180,18 @@ public abstract class AbstractFilter extends ZuulFilter {
         this.appName = appName;
     }
 
+    /**
+     * method for get responseCache
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * method for get routePlan
+     */
+    RoutePlan getRoutePlan() {
+        return routePlan;
+    }
+
 }
@@ -0,0 +1,360 @@
+package com.bestv.supergate.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.BatchItem;
+import com.bestv.supergate.util.GateException;
+import com.bestv.supergate.util.JsonBodyReader;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.RpcResultStatus;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * 批量请求过滤器
+ * 一次http请求携带多个服务码, 并行发出rpc请求, 按请求顺序返回结果,
+ * 单项失败或超时只影响该项; 请求体逐项流式读取, 不构建整个JSON数组
+ * Created by flamhaze on 16/10/18.
+ */
+public class BatchDispatchFilter extends ZuulFilter {
+
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchDispatchFilter.class);
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** rpc调用失败提示 */
+    private static final String RPC_FAILED_MESSAGE = "RPC调用失败";
+
+    /** 单项超时提示 */
+    private static final String TIMEOUT_MESSAGE = "请求超时";
+
+    /**
+     * @see ZuulFilter#run()
+     */
+    public Object run() {
+
+        RequestContext context = RequestContext.getCurrentContext();
+        HttpServletRequest servletRequest = context.getRequest();
+        final HttpServletResponse servletResponse = context.getResponse();
+        servletResponse.addHeader("Access-Control-Allow-Origin", "*");
+        context.setSendZuulResponse(false);
+
+        GateProperties.Batch config = RpcRequestContext.getGateProperties().getBatch();
+
+        final String[] serviceCodes;
+        final List<CompletableFuture<ResponseCache.CachedResult>> futures;
+
+        try
+        {
+            InputStream in = JsonBodyReader.limit(servletRequest.getInputStream(), servletRequest.getContentLengthLong(),
+                    RpcRequestContext.getGateProperties().getMaxBodyBytes());
+            // 读完并校验全部请求项后再分发, 被拒绝的批量请求不会发出任何rpc
+            List<BatchItem> items = JsonBodyReader.readBatch(in, config.getMaxItems());
+
+            serviceCodes = new String[items.size()];
+            futures = new ArrayList<CompletableFuture<ResponseCache.CachedResult>>(items.size());
+
+            for (int i = 0; i < serviceCodes.length; i++)
+            {
+                BatchItem item = items.get(i);
+                serviceCodes[i] = item.getServiceCode();
+                futures.add(dispatch(item, config));
+            }
+        }
+        catch (Exception e)
+        {
+            GateException gateException = GateException.find(e);
+            if (gateException != null)
+            {
+                writeError(servletResponse, gateException.getStatus(), gateException.getMessage());
+                return null;
+            }
+
+            LOGGER.warn("批量请求格式错误", e);
+            writeError(servletResponse, "批量请求格式错误");
+            return null;
+        }
+
+        // 每项都有超时, 全部完成的时间不超过最长的单项超时
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+
+        if (all.isDone() || !RpcRequestContext.getGateProperties().isAsyncServlet())
+        {
+            try
+            {
+                awaitQuietly(all);
+                writeResults(servletResponse, serviceCodes, futures);
+            }
+            catch (Exception e)
+            {
+                LOGGER.error("批量请求结果输出失败", e);
+            }
+            return null;
+        }
+
+        final AsyncContext asyncContext = servletRequest.startAsync();
+
+        all.whenComplete(new BiConsumer<Void, Throwable>() {
+            public void accept(Void ignored, Throwable cause) {
+                try
+                {
+                    asyncContext.start(new Runnable() {
+                        public void run() {
+                            try
+                            {
+                                writeResults((HttpServletResponse) asyncContext.getResponse(), serviceCodes, futures);
+                            }
+                            catch (Exception e)
+                            {
+                                LOGGER.error("批量请求结果输出失败", e);
+                            }
+                            finally
+                            {
+                                asyncContext.complete();
+                            }
+                        }
+                    });
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.error("批量请求结果输出任务提交失败", e);
+                    asyncContext.complete();
+                }
+            }
+        });
+        return null;
+    }
+
+    /**
+     * 分发单项请求
+     * 单项结果独立于过滤器返回的结果, 超时只结束该项的等待, 不影响合并到同一请求的其他调用方
+     * @param item   请求项
+     * @param config 批量请求设置
+     * @return 单项结果
+     */
+    private CompletableFuture<ResponseCache.CachedResult> dispatch(BatchItem item, GateProperties.Batch config)
+    {
+        final CompletableFuture<ResponseCache.CachedResult> result = new CompletableFuture<ResponseCache.CachedResult>();
+
+        String serviceCode = item.getServiceCode();
+        AbstractFilter filter = serviceCode == null ? null : ServiceDispatchFilter.getFilter(serviceCode);
+
+        if (filter == null)
+        {
+            result.completeExceptionally(new RuntimeException("服务码不存在: " + serviceCode));
+            return result;
+        }
+
+        long timeoutMillis = config.getItemTimeoutMillis();
+        Long requestedTimeout = item.getTimeoutMillis();
+        if (requestedTimeout != null && requestedTimeout > 0 && requestedTimeout < timeoutMillis)
+        {
+            timeoutMillis = requestedTimeout;
+        }
+
+        try
+        {
+            filter.execute(item.getParams(), timeoutMillis).whenComplete(new BiConsumer<ResponseCache.CachedResult, Throwable>() {
+                public void accept(ResponseCache.CachedResult cachedResult, Throwable cause) {
+                    if (cause != null)
+                    {
+                        result.completeExceptionally(cause);
+                    }
+                    else
+                    {
+                        result.complete(cachedResult);
+                    }
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        if (!result.isDone())
+        {
+            final Timeout timeout = RpcRequestContext.getTransport().getTimeoutTimer().newTimeout(new TimerTask() {
+                public void run(Timeout timeout) throws Exception {
+                    result.completeExceptionally(new TimeoutException(TIMEOUT_MESSAGE));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+            result.whenComplete(new BiConsumer<ResponseCache.CachedResult, Throwable>() {
+                public void accept(ResponseCache.CachedResult cachedResult, Throwable cause) {
+                    timeout.cancel();
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 等待全部完成, 忽略单项失败
+     * @param all 全部结果
+     */
+    private void awaitQuietly(CompletableFuture<Void> all) throws InterruptedException
+    {
+        try
+        {
+            all.get();
+        }
+        catch (ExecutionException e)
+        {
+            // 单项失败在输出时逐项报告
+        }
+    }
+
+    /**
+     * 按请求顺序输出结果
+     * [{"serviceCode": "...", "success": true, "result": ...}, {"serviceCode": "...", "success": false, "error": "..."}]
+     * @param servletResponse 响应
+     * @param serviceCodes    服务码组
+     * @param futures         单项结果组, 均已完成
+     * @throws IOException    没有取到输出流
+     */
+    private void writeResults(HttpServletResponse servletResponse, String[] serviceCodes,
+                              List<CompletableFuture<ResponseCache.CachedResult>> futures) throws IOException
+    {
+        servletResponse.setContentType("application/json;charset=utf-8");
+        OutputStream outputStream = servletResponse.getOutputStream();
+
+        outputStream.write('[');
+        for (int i = 0; i < serviceCodes.length; i++)
+        {
+            if (i > 0)
+            {
+                outputStream.write(',');
+            }
+
+            outputStream.write(("{\"serviceCode\":" + JSON.toJSONString(serviceCodes[i])).getBytes(UTF_8));
+
+            String error;
+            try
+            {
+                ResponseCache.CachedResult result = futures.get(i).join();
+                if (result.getStatus() != RpcResultStatus.RPC_FAILURE)
+                {
+                    outputStream.write(",\"success\":true,\"result\":".getBytes(UTF_8));
+                    outputStream.write(result.getBody());
+                    outputStream.write('}');
+                    continue;
+                }
+                error = RPC_FAILED_MESSAGE;
+            }
+            catch (CompletionException e)
+            {
+                error = errorMessage(e.getCause());
+            }
+
+            outputStream.write((",\"success\":false,\"error\":" + JSON.toJSONString(error) + "}").getBytes(UTF_8));
+        }
+        outputStream.write(']');
+
+        outputStream.flush();
+        outputStream.close();
+    }
+
+    /**
+     * 获取单项失败提示
+     * @param cause 失败原因
+     * @return 失败提示
+     */
+    private String errorMessage(Throwable cause)
+    {
+        if (cause instanceof TimeoutException)
+        {
+            return TIMEOUT_MESSAGE;
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * 输出请求错误
+     * @param servletResponse 响应
+     * @param error           错误提示
+     */
+    private void writeError(HttpServletResponse servletResponse, String error)
+    {
+        writeError(servletResponse, HttpServletResponse.SC_BAD_REQUEST, error);
+    }
+
+    /**
+     * 输出请求错误
+     * @param servletResponse 响应
+     * @param status          http状态码
+     * @param error           错误提示
+     */
+    private void writeError(HttpServletResponse servletResponse, int status, String error)
+    {
+        try
+        {
+            servletResponse.setStatus(status);
+            servletResponse.setContentType("application/json;charset=utf-8");
+
+            OutputStream outputStream = servletResponse.getOutputStream();
+            outputStream.write(("{\"success\":false,\"error\":" + JSON.toJSONString(error) + "}").getBytes(UTF_8));
+            outputStream.flush();
+            outputStream.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("批量请求失败原因输出失败", e);
+        }
+    }
+
+    /**
+     * @see ZuulFilter#filterType()
+     */
+    public String filterType() {
+        return "route";
+    }
+
+    /**
+     * @see ZuulFilter#filterOrder()
+     */
+    public int filterOrder() {
+        return 0;
+    }
+
+    /**
+     * 只处理批量请求路径
+     * @see ZuulFilter#shouldFilter()
+     */
+    public boolean shouldFilter() {
+        return isBatchRequest();
+    }
+
+    /**
+     * 当前请求是否为批量请求
+     * @return 是否为批量请求
+     */
+    static boolean isBatchRequest()
+    {
+        return RpcRequestContext.getGateProperties().getBatch().getPath()
+                .equals(RequestContext.getCurrentContext().getRequest().getRequestURI());
+    }
+}
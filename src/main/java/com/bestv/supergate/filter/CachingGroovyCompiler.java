@@ -0,0 +1,383 @@
+package com.bestv.supergate.filter;
+
+import com.netflix.zuul.DynamicCodeCompiler;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带字节码缓存的groovy编译器
+ * 编译结果按脚本内容、groovy版本和网关类指纹的sha-256保存到本地目录, 重启时内容未变的脚本直接定义类, 不再编译;
+ * 网关升级后旧缓存自然失效, 启动时清理长期未使用的缓存; 每次编译使用新的类加载器, 重载后旧类可以回收
+ * Created by flamhaze on 16/10/18.
+ */
+public class CachingGroovyCompiler implements DynamicCodeCompiler {
+
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingGroovyCompiler.class);
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 缓存文件后缀 */
+    private static final String CACHE_SUFFIX = ".classes";
+
+    /** 临时文件后缀 */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** 缓存保留时间, 超过该时间未使用的缓存在启动时删除 */
+    private static final long CACHE_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /** 十六进制字符 */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** 缓存目录 */
+    private final File cacheDirectory;
+
+    /** 网关类指纹, 脚本编译所依赖的基类变化后缓存失效 */
+    private final byte[] classpathFingerprint;
+
+    /**
+     * 构造函数
+     * @param cacheDirectory 缓存目录, 不存在时创建
+     */
+    public CachingGroovyCompiler(File cacheDirectory)
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.classpathFingerprint = fingerprint();
+        prune();
+    }
+
+    /**
+     * @see DynamicCodeCompiler#compile(String, String)
+     */
+    public Class compile(String sCode, String sName) throws Exception {
+
+        return load(sCode, sName);
+    }
+
+    /**
+     * @see DynamicCodeCompiler#compile(File)
+     */
+    public Class compile(File file) throws Exception {
+
+        return load(new String(Files.readAllBytes(file.toPath()), UTF_8), file.getName());
+    }
+
+    /**
+     * 优先从缓存定义类, 没有缓存时编译并写入缓存
+     * @param code 脚本内容
+     * @param name 脚本名
+     * @return 脚本主类
+     */
+    private Class load(String code, String name) throws Exception
+    {
+        File cacheFile = new File(cacheDirectory, hash(code) + CACHE_SUFFIX);
+
+        Map<String, byte[]> classes = null;
+        if (cacheFile.isFile())
+        {
+            try
+            {
+                classes = readCache(cacheFile);
+
+                // 记录使用时间, 清理时保留
+                cacheFile.setLastModified(System.currentTimeMillis());
+            }
+            catch (IOException e)
+            {
+                // 缓存损坏, 重新编译覆盖
+                LOGGER.warn("编译缓存读取失败, 重新编译: " + cacheFile, e);
+            }
+        }
+
+        if (classes == null)
+        {
+            classes = compileToBytes(code, name);
+            try
+            {
+                writeCache(cacheFile, classes);
+            }
+            catch (IOException e)
+            {
+                // 缓存写入失败不影响本次载入
+                LOGGER.warn("编译缓存写入失败: " + cacheFile, e);
+            }
+        }
+
+        String mainClassName = classes.keySet().iterator().next();
+        return new BytecodeClassLoader(CachingGroovyCompiler.class.getClassLoader(), classes).loadClass(mainClassName);
+    }
+
+    /**
+     * 编译脚本为字节码
+     * @param code 脚本内容
+     * @param name 脚本名
+     * @return 类名 -> 字节码, 主类在首位
+     * @throws IOException 编译用的类加载器关闭失败
+     */
+    private static Map<String, byte[]> compileToBytes(String code, String name) throws IOException
+    {
+        // 只用于解析依赖, 类由字节码类加载器定义, 编译完即关闭
+        GroovyClassLoader groovyClassLoader = new GroovyClassLoader(CachingGroovyCompiler.class.getClassLoader());
+        CompilationUnit unit;
+        SourceUnit sourceUnit;
+        try
+        {
+            unit = new CompilationUnit(CompilerConfiguration.DEFAULT, null, groovyClassLoader);
+            sourceUnit = unit.addSource(name, code);
+            unit.compile(Phases.CLASS_GENERATION);
+        }
+        finally
+        {
+            groovyClassLoader.close();
+        }
+
+        // 与GroovyClassLoader一致, 以脚本中的第一个类为主类
+        String mainClassName = sourceUnit.getAST().getClasses().get(0).getName();
+
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        @SuppressWarnings("unchecked")
+        List<GroovyClass> groovyClasses = unit.getClasses();
+        for (GroovyClass groovyClass : groovyClasses)
+        {
+            if (groovyClass.getName().equals(mainClassName))
+            {
+                classes.put(groovyClass.getName(), groovyClass.getBytes());
+            }
+        }
+        for (GroovyClass groovyClass : groovyClasses)
+        {
+            if (!classes.containsKey(groovyClass.getName()))
+            {
+                classes.put(groovyClass.getName(), groovyClass.getBytes());
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * 读取缓存
+     * @param cacheFile 缓存文件
+     * @return 类名 -> 字节码, 主类在首位
+     * @throws IOException 读取失败
+     */
+    private static Map<String, byte[]> readCache(File cacheFile) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(cacheFile));
+        try
+        {
+            int count = in.readInt();
+            Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+            for (int i = 0; i < count; i++)
+            {
+                String className = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(className, bytes);
+            }
+            if (classes.isEmpty())
+            {
+                throw new IOException("缓存为空: " + cacheFile);
+            }
+            return classes;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * 写入缓存, 先写临时文件再改名, 并行编译或中途退出都不会留下半个缓存
+     * @param cacheFile 缓存文件
+     * @param classes   类名 -> 字节码
+     * @throws IOException 写入失败
+     */
+    private void writeCache(File cacheFile, Map<String, byte[]> classes) throws IOException
+    {
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory())
+        {
+            throw new IOException("无法创建缓存目录: " + cacheDirectory);
+        }
+
+        File tempFile = File.createTempFile(cacheFile.getName(), TEMP_SUFFIX, cacheDirectory);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+            try
+            {
+                out.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            if (tempFile.exists() && !tempFile.delete())
+            {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 删除超过保留时间未使用的缓存和中途退出留下的临时文件
+     */
+    private void prune()
+    {
+        File[] files = cacheDirectory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        long expireBefore = System.currentTimeMillis() - CACHE_RETENTION_MILLIS;
+        for (File file : files)
+        {
+            String fileName = file.getName();
+            boolean expired = fileName.endsWith(CACHE_SUFFIX) && file.lastModified() < expireBefore;
+
+            // 临时文件只在写入期间存在, 一小时前的必然是残留
+            boolean abandoned = fileName.endsWith(TEMP_SUFFIX) && file.lastModified() < System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+            if ((expired || abandoned) && !file.delete())
+            {
+                LOGGER.warn("无法删除过期的脚本缓存: {}", file);
+            }
+        }
+    }
+
+    /**
+     * 计算网关类指纹
+     * 脚本继承{@link AbstractFilter}并调用其设置方法, 取其所在包的版本号和类文件内容;
+     * 取不到时为空, 只按脚本内容和groovy版本区分
+     * @return 指纹
+     */
+    private static byte[] fingerprint()
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            Package filterPackage = AbstractFilter.class.getPackage();
+            if (filterPackage != null && filterPackage.getImplementationVersion() != null)
+            {
+                digest.update(filterPackage.getImplementationVersion().getBytes(UTF_8));
+            }
+
+            InputStream in = AbstractFilter.class.getResourceAsStream(AbstractFilter.class.getSimpleName() + ".class");
+            if (in != null)
+            {
+                try
+                {
+                    byte[] buffer = new byte[8192];
+                    for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+                    {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            return digest.digest();
+        }
+        catch (Exception e)
+        {
+            LOGGER.warn("无法计算网关类指纹, 缓存只按脚本内容和groovy版本区分", e);
+            return new byte[0];
+        }
+    }
+
+    /**
+     * 计算缓存key, groovy升级或网关类变化后旧缓存自然失效
+     * @param code 脚本内容
+     * @return sha-256十六进制
+     */
+    private String hash(String code) throws NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(GroovySystem.getVersion().getBytes(UTF_8));
+        digest.update((byte) 0);
+        digest.update(classpathFingerprint);
+        digest.update((byte) 0);
+        byte[] bytes = digest.digest(code.getBytes(UTF_8));
+
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 字节码类加载器
+     * 只定义一个脚本编译出的类, 其他类交给父加载器
+     */
+    private static class BytecodeClassLoader extends ClassLoader {
+
+        /** 类名 -> 字节码 */
+        private final Map<String, byte[]> classes;
+
+        /**
+         * 构造函数
+         * @param parent  父加载器
+         * @param classes 类名 -> 字节码
+         */
+        BytecodeClassLoader(ClassLoader parent, Map<String, byte[]> classes)
+        {
+            super(parent);
+            this.classes = classes;
+        }
+
+        /**
+         * @see ClassLoader#findClass(String)
+         */
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+
+            byte[] bytes = classes.get(name);
+            if (bytes == null)
+            {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
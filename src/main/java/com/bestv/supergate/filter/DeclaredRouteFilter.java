@@ -0,0 +1,47 @@
+package com.bestv.supergate.filter;
+
+/**
+ * 声明式路由过滤器
+ * 由路由文件中的定义构造, 不加载groovy类, 请求处理与脚本过滤器完全相同
+ * Created by flamhaze on 16/10/18.
+ */
+public class DeclaredRouteFilter extends AbstractFilter {
+
+    /** 过滤器名前缀, 同一个类对应多个服务码, 按服务码区分 */
+    public static final String FILTER_NAME_PREFIX = "route:";
+
+    /**
+     * 构造函数
+     * @param definition 路由定义
+     */
+    public DeclaredRouteFilter(RouteDefinition definition) throws InterruptedException
+    {
+        super(definition);
+    }
+
+    /**
+     * 环境已由路由定义写入
+     * @see AbstractFilter#loadEnvironment()
+     */
+    public void loadEnvironment() {
+
+    }
+
+    /**
+     * @see AbstractFilter#getFilterName()
+     */
+    @Override
+    public String getFilterName() {
+        return filterNameOf(getServiceCode());
+    }
+
+    /**
+     * 获取服务码对应的过滤器名
+     * @param serviceCode 服务码
+     * @return 过滤器名
+     */
+    public static String filterNameOf(String serviceCode)
+    {
+        return FILTER_NAME_PREFIX + serviceCode;
+    }
+}
@@ -0,0 +1,114 @@
+package com.bestv.supergate.filter;
+
+import com.netflix.zuul.FilterLoader;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.filters.FilterRegistry;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * zuul过滤器登记
+ * FilterLoader按类型缓存过滤器列表, 只有putFilter(File)会清除缓存, 直接写FilterRegistry时缓存不会更新,
+ * 登记前已被查询过的类型会一直使用旧列表; 这里登记或移除后按注册表重建受影响类型的列表并覆盖缓存.
+ * 覆盖而不是清除: 请求线程可能正按旧注册表构建列表, 清除后它的putIfAbsent会把旧列表放回缓存
+ * Created by flamhaze on 16/10/18.
+ */
+public final class FilterRegistrar {
+
+    /** FilterLoader的类型缓存字段 */
+    private static final Field FILTERS_BY_TYPE_FIELD;
+
+    static
+    {
+        try
+        {
+            FILTERS_BY_TYPE_FIELD = FilterLoader.class.getDeclaredField("hashFiltersByType");
+            FILTERS_BY_TYPE_FIELD.setAccessible(true);
+        }
+        catch (NoSuchFieldException e)
+        {
+            throw new IllegalStateException("zuul版本不兼容, FilterLoader没有过滤器类型缓存", e);
+        }
+    }
+
+    private FilterRegistrar()
+    {
+    }
+
+    /**
+     * 登记过滤器, 同名过滤器替换旧实例
+     * FilterRegistry.put为putIfAbsent, 已有同名过滤器时不会替换, 需先移除
+     * @param name   过滤器名
+     * @param filter 过滤器
+     */
+    public static synchronized void put(String name, ZuulFilter filter)
+    {
+        FilterRegistry registry = FilterRegistry.instance();
+        ZuulFilter oldFilter = registry.remove(name);
+
+        registry.put(name, filter);
+
+        refresh(filter.filterType());
+        if (oldFilter != null && !oldFilter.filterType().equals(filter.filterType()))
+        {
+            refresh(oldFilter.filterType());
+        }
+    }
+
+    /**
+     * 移除过滤器
+     * @param name 过滤器名
+     * @return 移除的过滤器, 没有时为null
+     */
+    public static synchronized ZuulFilter remove(String name)
+    {
+        ZuulFilter filter = FilterRegistry.instance().remove(name);
+
+        if (filter != null)
+        {
+            refresh(filter.filterType());
+        }
+        return filter;
+    }
+
+    /**
+     * 按注册表重建类型的过滤器列表, 排序与FilterLoader一致
+     * @param filterType 过滤器类型
+     */
+    private static void refresh(String filterType)
+    {
+        List<ZuulFilter> filters = new ArrayList<ZuulFilter>();
+
+        for (ZuulFilter filter : FilterRegistry.instance().getAllFilters())
+        {
+            if (filterType.equals(filter.filterType()))
+            {
+                filters.add(filter);
+            }
+        }
+        Collections.sort(filters);
+
+        filtersByType().put(filterType, filters);
+    }
+
+    /**
+     * 获取FilterLoader的类型缓存
+     * @return 类型 -> 过滤器列表
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<ZuulFilter>> filtersByType()
+    {
+        try
+        {
+            return (Map<String, List<ZuulFilter>>) FILTERS_BY_TYPE_FIELD.get(FilterLoader.getInstance());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException("无法访问zuul过滤器类型缓存", e);
+        }
+    }
+}
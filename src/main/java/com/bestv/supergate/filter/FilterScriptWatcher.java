@@ -0,0 +1,421 @@
+package com.bestv.supergate.filter;
+
+import com.netflix.zuul.DynamicCodeCompiler;
+import com.netflix.zuul.ZuulFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * groovy过滤器脚本和路由文件监听器
+ * 替代FilterFileManager的定时扫描: 通过WatchService(Linux下为inotify)等待目录变更, 没有变更时不占用cpu;
+ * 脚本在监听线程编译并实例化, 过滤器构造完成、路由计划编译通过后才登记到分发表, 替换旧实例,
+ * 编译或构造失败时旧实例继续服务; 脚本删除时从分发表移除;
+ * 不是{@link AbstractFilter}的zuul过滤器经{@link FilterRegistrar}登记和移除, 同时刷新zuul按类型缓存的过滤器列表;
+ * YAML/JSON路由文件中的每项路由直接构造为{@link DeclaredRouteFilter}, 不经过groovy
+ * Created by flamhaze on 16/10/18.
+ */
+public class FilterScriptWatcher implements Runnable {
+
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterScriptWatcher.class);
+
+    /** 脚本后缀 */
+    private static final String SCRIPT_SUFFIX = ".groovy";
+
+    /** 路由文件后缀 */
+    private static final String[] ROUTE_FILE_SUFFIXES = {".yaml", ".yml", ".json"};
+
+    /** 合并连续变更的等待时间, 毫秒, 编辑器保存时通常产生多个事件 */
+    private static final long SETTLE_MILLIS = 50L;
+
+    /** 脚本目录 */
+    private final File scriptDirectory;
+
+    /** 脚本编译器 */
+    private final DynamicCodeCompiler compiler;
+
+    /** 文件路径 -> 已载入的过滤器名组, 脚本为一个类名, 路由文件为每项路由一个 */
+    private final ConcurrentMap<String, Set<String>> fileFilterMap = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * 文件路径 -> 已载入时的内容摘要, 用于忽略重复事件
+     * 不比较修改时间: 修改时间精度为秒或更粗的文件系统上, 同一秒内的第二次保存会被误判为重复事件
+     */
+    private final ConcurrentMap<String, byte[]> fileDigestMap = new ConcurrentHashMap<String, byte[]>();
+
+    /** 载入线程池, 启动和事件溢出时的全量载入共用, 空闲时工作线程自行退出 */
+    private final ForkJoinPool loadPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** 目录监听服务 */
+    private WatchService watchService;
+
+    /**
+     * 构造函数
+     * @param scriptDirectory 脚本目录
+     * @param compiler        脚本编译器
+     */
+    public FilterScriptWatcher(File scriptDirectory, DynamicCodeCompiler compiler)
+    {
+        this.scriptDirectory = scriptDirectory;
+        this.compiler = compiler;
+    }
+
+    /**
+     * 载入目录下的全部脚本, 并启动监听线程
+     * 先注册监听再载入, 载入期间的变更不会丢失
+     * @throws IOException 目录无法监听
+     */
+    public void start() throws IOException
+    {
+        watchService = FileSystems.getDefault().newWatchService();
+        scriptDirectory.toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        loadAll();
+
+        Thread thread = new Thread(this, "groovy-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止监听, 已载入的过滤器继续服务
+     * @throws IOException 关闭监听失败
+     */
+    public void stop() throws IOException
+    {
+        watchService.close();
+        loadPool.shutdown();
+    }
+
+    /**
+     * 等待目录变更, 合并一批事件后处理
+     * @see Runnable#run()
+     */
+    public void run() {
+
+        while (true)
+        {
+            try
+            {
+                WatchKey key = watchService.take();
+                Set<Path> changes = new LinkedHashSet<Path>();
+                boolean overflow = false;
+
+                // 等事件平息后再处理, 避免读到写了一半的脚本
+                while (key != null)
+                {
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        {
+                            overflow = true;
+                            continue;
+                        }
+
+                        changes.add(scriptDirectory.toPath().resolve((Path) event.context()));
+                    }
+                    key.reset();
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (overflow)
+                {
+                    loadAll();
+                    continue;
+                }
+
+                // 按文件的最终状态处理, 编辑器先删除再重命名保存时仍视为修改
+                for (Path change : changes)
+                {
+                    File file = change.toFile();
+                    if (!isSource(file))
+                    {
+                        continue;
+                    }
+
+                    if (file.exists())
+                    {
+                        load(file);
+                    }
+                    else
+                    {
+                        unload(file);
+                    }
+                }
+            }
+            catch (ClosedWatchServiceException e)
+            {
+                return;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.error("处理目录变更失败: " + scriptDirectory, e);
+            }
+        }
+    }
+
+    /**
+     * 并行载入目录下的全部脚本, 并移除已不存在的脚本
+     * 脚本之间没有依赖, 编译和构造都可以并行; 使用独立的线程池, 构造中的等待不占用公共线程池
+     */
+    private void loadAll()
+    {
+        File[] files = scriptDirectory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(files.length);
+
+        for (final File file : files)
+        {
+            if (isSource(file))
+            {
+                tasks.add(loadPool.submit(new Runnable() {
+                    public void run() {
+                        load(file);
+                    }
+                }));
+            }
+        }
+
+        for (ForkJoinTask<?> task : tasks)
+        {
+            task.join();
+        }
+
+        LOGGER.info("载入脚本和路由文件 {} 个, 耗时 {} ms", tasks.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+        for (String scriptPath : fileFilterMap.keySet())
+        {
+            File file = new File(scriptPath);
+            if (!file.exists())
+            {
+                unload(file);
+            }
+        }
+    }
+
+    /**
+     * 载入脚本或路由文件, 内容未变时忽略
+     * @param file 脚本或路由文件
+     */
+    private void load(File file)
+    {
+        String path = file.getAbsolutePath();
+        byte[] digest;
+        try
+        {
+            digest = digest(file);
+        }
+        catch (IOException e)
+        {
+            // 文件在事件之后被删除或正在替换, 由后续事件处理
+            LOGGER.warn("读取失败, 继续使用旧版本: " + path, e);
+            return;
+        }
+
+        // 同一次保存的重复事件
+        byte[] loadedDigest = fileDigestMap.get(path);
+        if (loadedDigest != null && Arrays.equals(loadedDigest, digest))
+        {
+            return;
+        }
+
+        Set<String> oldFilterNames = fileFilterMap.get(path);
+        if (oldFilterNames == null)
+        {
+            oldFilterNames = Collections.emptySet();
+        }
+
+        Set<String> filterNames;
+        try
+        {
+            filterNames = isScript(file) ? loadScript(file) : loadRoutes(file, oldFilterNames);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("载入失败, 继续使用旧版本: " + path, e);
+            return;
+        }
+
+        fileFilterMap.put(path, filterNames);
+        fileDigestMap.put(path, digest);
+
+        // 脚本改了类名或路由文件删除了路由, 不再由该文件处理
+        for (String oldFilterName : oldFilterNames)
+        {
+            if (!filterNames.contains(oldFilterName))
+            {
+                ServiceDispatchFilter.unregister(oldFilterName);
+            }
+        }
+    }
+
+    /**
+     * 编译并实例化脚本
+     * {@link AbstractFilter}构造完成后登记到分发表, 其他zuul过滤器登记到过滤器注册表;
+     * 脚本在两者之间改写时, 移除另一处的旧实例
+     * @param file 脚本
+     * @return 过滤器名组
+     */
+    private Set<String> loadScript(File file) throws Exception
+    {
+        Class<?> filterClass = compiler.compile(file);
+        Object filter = filterClass.newInstance();
+
+        if (filter instanceof AbstractFilter)
+        {
+            ServiceDispatchFilter.register((AbstractFilter) filter);
+            FilterRegistrar.remove(file.getAbsolutePath());
+        }
+        else if (filter instanceof ZuulFilter)
+        {
+            FilterRegistrar.put(file.getAbsolutePath(), (ZuulFilter) filter);
+            ServiceDispatchFilter.unregister(filterClass.getName());
+        }
+        return Collections.singleton(filterClass.getName());
+    }
+
+    /**
+     * 载入路由文件, 每项路由构造一个过滤器
+     * 文件无法解析时整体保留旧版本; 单项路由构造失败时该项保留旧实例
+     * @param file           路由文件
+     * @param oldFilterNames 该文件已载入的过滤器名组
+     * @return 过滤器名组
+     */
+    private Set<String> loadRoutes(File file, Set<String> oldFilterNames) throws Exception
+    {
+        Set<String> filterNames = new HashSet<String>();
+
+        for (RouteDefinition definition : RouteDefinition.read(file))
+        {
+            String filterName = DeclaredRouteFilter.filterNameOf(definition.getServiceCode());
+            try
+            {
+                ServiceDispatchFilter.register(new DeclaredRouteFilter(definition));
+                filterNames.add(filterName);
+            }
+            catch (Exception e)
+            {
+                LOGGER.error("路由载入失败: " + definition.getServiceCode() + ", " + file.getAbsolutePath(), e);
+                if (oldFilterNames.contains(filterName))
+                {
+                    filterNames.add(filterName);
+                }
+            }
+        }
+        return filterNames;
+    }
+
+    /**
+     * 移除已删除文件的过滤器
+     * @param file 脚本或路由文件
+     */
+    private void unload(File file)
+    {
+        String path = file.getAbsolutePath();
+        Set<String> filterNames = fileFilterMap.remove(path);
+        fileDigestMap.remove(path);
+
+        if (filterNames != null)
+        {
+            for (String filterName : filterNames)
+            {
+                ServiceDispatchFilter.unregister(filterName);
+            }
+            FilterRegistrar.remove(path);
+        }
+    }
+
+    /**
+     * 计算文件内容摘要
+     * @param file 文件
+     * @return 摘要
+     * @throws IOException 读取失败
+     */
+    private static byte[] digest(File file) throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 是否为脚本或路由文件
+     * @param file 文件
+     * @return 是否需要载入
+     */
+    private static boolean isSource(File file)
+    {
+        return isScript(file) || isRouteFile(file);
+    }
+
+    /**
+     * 是否为路由文件
+     * @param file 文件
+     * @return 是否为路由文件
+     */
+    private static boolean isRouteFile(File file)
+    {
+        for (String suffix : ROUTE_FILE_SUFFIXES)
+        {
+            if (file.getName().endsWith(suffix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否为groovy脚本
+     * @param file 文件
+     * @return 是否为groovy脚本
+     */
+    private static boolean isScript(File file)
+    {
+        return file.getName().endsWith(SCRIPT_SUFFIX);
+    }
+}
@@ -0,0 +1,201 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.supergate.util.RpcResultStatus;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 服务码返回结果缓存
+ * 只读服务码在loadEnvironment中开启, 按参数值缓存输出内容, W-TinyLFU淘汰,
+ * 同一参数并发未命中时只发出一次rpc请求
+ * Created by flamhaze on 16/10/18.
+ */
+public class ResponseCache {
+
+    /** 默认最大条目数, 未设置最大条目数时使用 */
+    public static final long DEFAULT_MAX_SIZE = 10000L;
+
+    /** 服务码 -> 缓存 */
+    private static final ConcurrentMap<String, ResponseCache> CACHE_MAP = new ConcurrentHashMap<String, ResponseCache>();
+
+    /** 服务码 */
+    private final String serviceCode;
+
+    /** 缓存, 参数值组 -> 输出内容 */
+    private final AsyncLoadingCache<List<Object>, CachedResult> cache;
+
+    /**
+     * 构造函数
+     * @param serviceCode 服务码
+     * @param ttlMillis   过期时间, 毫秒
+     * @param maxSize     最大条目数, 不大于0时为{@link #DEFAULT_MAX_SIZE}
+     * @param loader      未命中时的加载器
+     */
+    public ResponseCache(String serviceCode, long ttlMillis, long maxSize, final Loader loader)
+    {
+        this.serviceCode = serviceCode;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .buildAsync(new AsyncCacheLoader<List<Object>, CachedResult>() {
+                    public CompletableFuture<CachedResult> asyncLoad(List<Object> key, Executor executor) {
+                        return loader.load(key.toArray(), executor);
+                    }
+                });
+    }
+
+    /**
+     * 登记缓存, 替换同一服务码的旧缓存
+     * @param responseCache 缓存
+     */
+    public static void register(ResponseCache responseCache)
+    {
+        CACHE_MAP.put(responseCache.serviceCode, responseCache);
+    }
+
+    /**
+     * 移除缓存, 服务码已登记了新缓存时保留新缓存
+     * @param responseCache 缓存
+     */
+    public static void unregister(ResponseCache responseCache)
+    {
+        if (CACHE_MAP.remove(responseCache.serviceCode, responseCache))
+        {
+            responseCache.cache.synchronous().invalidateAll();
+        }
+    }
+
+    /**
+     * 清空服务码的缓存
+     * @param serviceCodes 服务码组
+     */
+    public static void invalidate(String[] serviceCodes)
+    {
+        for (String serviceCode : serviceCodes)
+        {
+            ResponseCache responseCache = CACHE_MAP.get(serviceCode);
+            if (responseCache != null)
+            {
+                responseCache.cache.synchronous().invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * 获取返回结果, 未命中时加载
+     * 不可缓存的结果会返回给当前所有等待方, 随后移出缓存
+     * @param parameters 参数值组, 按类型转换后的值, 数组参数为列表, 可以直接比较
+     * @return 返回结果
+     */
+    public CompletableFuture<CachedResult> get(Object[] parameters)
+    {
+        final List<Object> key = Arrays.asList(parameters);
+        CompletableFuture<CachedResult> future = cache.get(key);
+
+        future.thenAccept(new Consumer<CachedResult>() {
+            public void accept(CachedResult result) {
+                if (!result.isCacheable())
+                {
+                    cache.synchronous().invalidate(key);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 获取命中统计
+     * @return 命中统计
+     */
+    public CacheStats stats()
+    {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * 获取所有缓存
+     * @return 服务码 -> 缓存
+     */
+    public static ConcurrentMap<String, ResponseCache> getCacheMap()
+    {
+        return CACHE_MAP;
+    }
+
+    /**
+     * method for get serviceCode
+     */
+    public String getServiceCode() {
+        return serviceCode;
+    }
+
+    /**
+     * 缓存加载器
+     */
+    public interface Loader {
+
+        /**
+         * 发出rpc请求并转换为输出内容
+         * @param parameters 参数值组
+         * @param executor   转换输出使用的线程池
+         * @return 返回结果
+         */
+        CompletableFuture<CachedResult> load(Object[] parameters, Executor executor);
+    }
+
+    /**
+     * 缓存的返回结果
+     */
+    public static class CachedResult {
+
+        /** 输出内容 */
+        private final byte[] body;
+
+        /** 回复状态 */
+        private final RpcResultStatus status;
+
+        /**
+         * 构造函数
+         * @param body   输出内容
+         * @param status 回复状态
+         */
+        public CachedResult(byte[] body, RpcResultStatus status)
+        {
+            this.body = body;
+            this.status = status;
+        }
+
+        /**
+         * method for get body
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * method for get status
+         */
+        public RpcResultStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * 是否可缓存, 只缓存调用成功的结果
+         * @return 是否可缓存
+         */
+        public boolean isCacheable() {
+            return status == RpcResultStatus.SUCCESS;
+        }
+    }
+}
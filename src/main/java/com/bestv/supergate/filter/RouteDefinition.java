@@ -0,0 +1,415 @@
+package com.bestv.supergate.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.Feature;
+import com.bestv.supergate.util.LoadBalance;
+import com.bestv.supergate.util.ParameterType;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 声明式路由定义
+ * 对应只调用设置方法的groovy脚本, 由YAML/JSON路由文件解析而来, 编译为与脚本相同的路由计划
+ * Created by flamhaze on 16/10/18.
+ */
+public class RouteDefinition {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 路由列表字段 */
+    private static final String ROUTES_KEY = "routes";
+
+    /** 服务码 */
+    private String serviceCode;
+
+    /** 应用名 */
+    private String appName;
+
+    /** 接口名 */
+    private String serviceInterface;
+
+    /** 方法名 */
+    private String methodName;
+
+    /** 类信息, 参数路径 -> 类名 */
+    private Map<String, String> classInfo = Collections.emptyMap();
+
+    /** 参数链接, 代码参数路径 -> 请求参数key */
+    private Map<String, String> parameters = Collections.emptyMap();
+
+    /** 参数类型, 代码参数路径 -> 类型, 未声明时为字符串 */
+    private Map<String, ParameterType> parameterTypes = Collections.emptyMap();
+
+    /** 数组路径组 */
+    private List<String> arrays = Collections.emptyList();
+
+    /** 返回结果缓存过期时间, 毫秒, 不大于0时不缓存 */
+    private long cacheTtlMillis;
+
+    /** 返回结果缓存最大条目数 */
+    private long cacheMaxSize;
+
+    /** 调用成功后需要清空缓存的服务码组 */
+    private String[] invalidateServiceCodes;
+
+    /** rpc请求超时时间, 毫秒, 不大于0时使用网关默认值 */
+    private long timeoutMillis;
+
+    /** 应用的后端地址选择方式 */
+    private LoadBalance loadBalance;
+
+    /**
+     * 读取路由文件, .json按JSON解析, 其他按YAML解析, 都保持字段顺序
+     * 文件可以是路由列表, 也可以是带routes列表的对象; 任一项无效时整个文件无效
+     * @param file 路由文件
+     * @return 路由定义组
+     * @throws IOException 读取失败
+     */
+    @SuppressWarnings("unchecked")
+    public static List<RouteDefinition> read(File file) throws IOException
+    {
+        String content = new String(Files.readAllBytes(file.toPath()), UTF_8);
+        String source = file.getName();
+
+        Object root = source.endsWith(".json") ? JSON.parse(content, Feature.OrderedField) : new Yaml().load(content);
+        if (root instanceof Map)
+        {
+            root = ((Map<String, Object>) root).get(ROUTES_KEY);
+        }
+        if (root == null)
+        {
+            return Collections.emptyList();
+        }
+        if (!(root instanceof List))
+        {
+            throw new RuntimeException("路由文件应为路由列表: " + source);
+        }
+
+        List<RouteDefinition> definitions = new ArrayList<RouteDefinition>();
+        Set<String> serviceCodes = new HashSet<String>();
+        for (Object item : (List<Object>) root)
+        {
+            if (!(item instanceof Map))
+            {
+                throw new RuntimeException("路由定义应为对象: " + source);
+            }
+
+            RouteDefinition definition = parse((Map<String, Object>) item, source);
+            if (!serviceCodes.add(definition.getServiceCode()))
+            {
+                throw new RuntimeException("服务码重复: " + definition.getServiceCode() + ", " + source);
+            }
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+
+    /**
+     * 解析路由定义
+     * @param map    路由文件中的一项
+     * @param source 来源, 用于错误提示
+     * @return 路由定义
+     */
+    @SuppressWarnings("unchecked")
+    public static RouteDefinition parse(Map<String, Object> map, String source)
+    {
+        RouteDefinition definition = new RouteDefinition();
+
+        definition.serviceCode = requireString(map, "serviceCode", source);
+        definition.appName = requireString(map, "appName", source);
+        definition.serviceInterface = requireString(map, "serviceInterface", source);
+        definition.methodName = requireString(map, "methodName", source);
+        definition.classInfo = toStringMap(map.get("classInfo"), "classInfo", source);
+        parseParameters(definition, map.get("parameters"), source);
+        definition.timeoutMillis = toLong(map.get("timeoutMillis"), "timeoutMillis", source);
+
+        Object cache = map.get("cache");
+        if (cache instanceof Map)
+        {
+            Map<String, Object> cacheMap = (Map<String, Object>) cache;
+            definition.cacheTtlMillis = toNonNegativeLong(cacheMap.get("ttlMillis"), "cache.ttlMillis", source);
+            definition.cacheMaxSize = toNonNegativeLong(cacheMap.get("maxSize"), "cache.maxSize", source);
+        }
+        else if (cache != null)
+        {
+            throw invalid("cache", source);
+        }
+
+        Object arrays = map.get("arrays");
+        if (arrays instanceof List)
+        {
+            definition.arrays = new ArrayList<String>();
+            for (Object path : (List<Object>) arrays)
+            {
+                definition.arrays.add(String.valueOf(path));
+            }
+        }
+        else if (arrays != null)
+        {
+            throw invalid("arrays", source);
+        }
+
+        Object invalidate = map.get("invalidateServiceCodes");
+        if (invalidate instanceof List)
+        {
+            List<Object> codes = (List<Object>) invalidate;
+            definition.invalidateServiceCodes = new String[codes.size()];
+            for (int i = 0; i < codes.size(); i++)
+            {
+                definition.invalidateServiceCodes[i] = String.valueOf(codes.get(i));
+            }
+        }
+        else if (invalidate != null)
+        {
+            throw invalid("invalidateServiceCodes", source);
+        }
+
+        Object loadBalance = map.get("loadBalance");
+        if (loadBalance != null)
+        {
+            try
+            {
+                definition.loadBalance = LoadBalance.valueOf(String.valueOf(loadBalance));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw invalid("loadBalance", source);
+            }
+        }
+        return definition;
+    }
+
+    /**
+     * 将定义写入过滤器, 等同于脚本的loadEnvironment
+     * @param filter 过滤器
+     */
+    void applyTo(AbstractFilter filter)
+    {
+        filter.setServiceCode(serviceCode);
+        filter.setAppName(appName);
+        filter.setServiceInterface(serviceInterface);
+        filter.setMethodName(methodName);
+
+        for (Map.Entry<String, String> entry : classInfo.entrySet())
+        {
+            filter.setClassInfo(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : parameters.entrySet())
+        {
+            ParameterType type = parameterTypes.get(entry.getKey());
+            filter.linkParameter(entry.getKey(), entry.getValue(), type == null ? ParameterType.STRING : type);
+        }
+        for (String path : arrays)
+        {
+            filter.setArray(path);
+        }
+
+        if (cacheTtlMillis > 0)
+        {
+            filter.setResponseCache(cacheTtlMillis, cacheMaxSize);
+        }
+        if (invalidateServiceCodes != null)
+        {
+            filter.setInvalidateServiceCodes(invalidateServiceCodes);
+        }
+        if (timeoutMillis > 0)
+        {
+            filter.setTimeoutMillis(timeoutMillis);
+        }
+        if (loadBalance != null)
+        {
+            filter.setLoadBalance(loadBalance);
+        }
+    }
+
+    /**
+     * 解析参数链接, 值为请求参数key, 或带key和type的对象
+     * 例如 userId: {key: userId, type: LONG}, type为{@link ParameterType}的常量名, 不区分大小写
+     * @param definition 路由定义
+     * @param value      字段值
+     * @param source     来源
+     */
+    private static void parseParameters(RouteDefinition definition, Object value, String source)
+    {
+        if (value == null)
+        {
+            return;
+        }
+        if (!(value instanceof Map))
+        {
+            throw invalid("parameters", source);
+        }
+
+        definition.parameters = new LinkedHashMap<String, String>();
+        definition.parameterTypes = new HashMap<String, ParameterType>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+        {
+            String path = String.valueOf(entry.getKey());
+            if (!(entry.getValue() instanceof Map))
+            {
+                definition.parameters.put(path, String.valueOf(entry.getValue()));
+                continue;
+            }
+
+            Map<?, ?> link = (Map<?, ?>) entry.getValue();
+            if (link.get("key") == null)
+            {
+                throw invalid("parameters." + path + ".key", source);
+            }
+            definition.parameters.put(path, String.valueOf(link.get("key")));
+
+            Object type = link.get("type");
+            if (type != null)
+            {
+                try
+                {
+                    definition.parameterTypes.put(path, ParameterType.valueOf(String.valueOf(type).trim().toUpperCase()));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw invalid("parameters." + path + ".type", source);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取必填字符串
+     * @param map    路由项
+     * @param key    字段名
+     * @param source 来源
+     * @return 字段值
+     */
+    private static String requireString(Map<String, Object> map, String key, String source)
+    {
+        Object value = map.get(key);
+        if (value == null || String.valueOf(value).trim().isEmpty())
+        {
+            throw new RuntimeException("路由定义缺少 " + key + ": " + source);
+        }
+        return String.valueOf(value).trim();
+    }
+
+    /**
+     * 转换为保持顺序的字符串映射, 参数顺序决定请求模板的参数下标
+     * @param value  字段值
+     * @param key    字段名
+     * @param source 来源
+     * @return 字符串映射
+     */
+    private static Map<String, String> toStringMap(Object value, String key, String source)
+    {
+        if (value == null)
+        {
+            return Collections.emptyMap();
+        }
+        if (!(value instanceof Map))
+        {
+            throw invalid(key, source);
+        }
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+        {
+            result.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * 转换为整数
+     * @param value  字段值
+     * @param key    字段名
+     * @param source 来源
+     * @return 整数, 没有时为0
+     */
+    private static long toLong(Object value, String key, String source)
+    {
+        if (value == null)
+        {
+            return 0L;
+        }
+        if (value instanceof Number)
+        {
+            return ((Number) value).longValue();
+        }
+
+        try
+        {
+            return Long.parseLong(String.valueOf(value).trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw invalid(key, source);
+        }
+    }
+
+    /**
+     * 转换为非负整数
+     * @param value  字段值
+     * @param key    字段名
+     * @param source 来源
+     * @return 整数, 没有时为0
+     */
+    private static long toNonNegativeLong(Object value, String key, String source)
+    {
+        long result = toLong(value, key, source);
+        if (result < 0)
+        {
+            throw invalid(key, source);
+        }
+        return result;
+    }
+
+    /**
+     * 字段无效
+     * @param key    字段名
+     * @param source 来源
+     * @return 异常
+     */
+    private static RuntimeException invalid(String key, String source)
+    {
+        return new RuntimeException("路由定义的 " + key + " 无效: " + source);
+    }
+
+    /**
+     * method for get serviceCode
+     */
+    public String getServiceCode() {
+        return serviceCode;
+    }
+
+    /**
+     * method for get appName
+     */
+    public String getAppName() {
+        return appName;
+    }
+
+    /**
+     * method for get parameters
+     */
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * method for get parameterTypes
+     */
+    public Map<String, ParameterType> getParameterTypes() {
+        return parameterTypes;
+    }
+}
@@ -0,0 +1,326 @@
+package com.bestv.supergate.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * groovy脚本转换工具
+ * 将只调用设置方法的脚本转换为YAML路由定义; 含其他逻辑的脚本原样保留, 并列出
+ * 用法: java -cp supergate.jar com.bestv.supergate.filter.RouteScriptConverter 脚本目录 路由文件
+ * Created by flamhaze on 16/10/18.
+ */
+public class RouteScriptConverter {
+
+    /** 字符集 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 注释 */
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+
+    /** 脚本结构: 包名、导入、一个只有loadEnvironment方法的过滤器类 */
+    private static final Pattern SCRIPT = Pattern.compile(
+            "\\s*(package\\s+[\\w.]+;?\\s*)?(import\\s+[\\w.]+;?\\s*)*"
+                    + "class\\s+\\w+\\s+extends\\s+AbstractFilter\\s*\\{\\s*"
+                    + "(public\\s+)?void\\s+loadEnvironment\\s*\\(\\s*\\)\\s*\\{([^{}]*)\\}\\s*\\}\\s*");
+
+    /** 设置方法调用 */
+    private static final Pattern CALL = Pattern.compile("(\\w+)\\s*\\((.*)\\)");
+
+    /** 调用参数: 不带插值的字符串、整数、LoadBalance或ParameterType常量 */
+    private static final Pattern ARGUMENT = Pattern.compile("\\s*(\"([^\"\\\\$]*)\"|'([^'\\\\]*)'|(\\d+)L?|LoadBalance\\.(\\w+)|ParameterType\\.(\\w+))\\s*(,|$)");
+
+    /**
+     * 转换目录下的脚本
+     * @param args 脚本目录, 路由文件
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("用法: RouteScriptConverter 脚本目录 路由文件");
+            System.exit(1);
+        }
+
+        File[] scripts = new File(args[0]).listFiles();
+        if (scripts == null)
+        {
+            System.err.println("脚本目录无效: " + args[0]);
+            System.exit(1);
+        }
+
+        // 按文件名排序, 重复转换时输出稳定
+        Arrays.sort(scripts);
+
+        StringBuilder yaml = new StringBuilder("routes:\n");
+        for (File script : scripts)
+        {
+            if (!script.getName().endsWith(".groovy"))
+            {
+                continue;
+            }
+
+            String route = convert(new String(Files.readAllBytes(script.toPath()), UTF_8));
+            if (route == null)
+            {
+                System.out.println("保留脚本, 含设置方法以外的逻辑: " + script.getName());
+                continue;
+            }
+
+            yaml.append(route);
+            System.out.println("已转换, 确认无误后可删除: " + script.getName());
+        }
+
+        Files.write(new File(args[1]).toPath(), yaml.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * 转换单个脚本
+     * @param script 脚本内容
+     * @return YAML路由项, 无法转换时为null
+     */
+    public static String convert(String script)
+    {
+        Matcher scriptMatcher = SCRIPT.matcher(COMMENT.matcher(script).replaceAll(""));
+        if (!scriptMatcher.matches())
+        {
+            return null;
+        }
+
+        Map<String, Object> route = new LinkedHashMap<String, Object>();
+        Map<String, Object> classInfo = new LinkedHashMap<String, Object>();
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        List<String> arrays = new ArrayList<String>();
+        Map<String, Object> cache = new LinkedHashMap<String, Object>();
+
+        for (String statement : scriptMatcher.group(4).split("[;\\n]"))
+        {
+            if (statement.trim().isEmpty())
+            {
+                continue;
+            }
+
+            Matcher callMatcher = CALL.matcher(statement.trim());
+            if (!callMatcher.matches())
+            {
+                return null;
+            }
+
+            List<String> arguments = parseArguments(callMatcher.group(2));
+            if (arguments == null)
+            {
+                return null;
+            }
+
+            String method = callMatcher.group(1);
+            if ("setServiceCode".equals(method) && arguments.size() == 1)
+            {
+                route.put("serviceCode", arguments.get(0));
+            }
+            else if ("setAppName".equals(method) && arguments.size() == 1)
+            {
+                route.put("appName", arguments.get(0));
+            }
+            else if ("setServiceInterface".equals(method) && arguments.size() == 1)
+            {
+                route.put("serviceInterface", arguments.get(0));
+            }
+            else if ("setMethodName".equals(method) && arguments.size() == 1)
+            {
+                route.put("methodName", arguments.get(0));
+            }
+            else if ("setClassInfo".equals(method) && arguments.size() == 2)
+            {
+                classInfo.put(arguments.get(0), arguments.get(1));
+            }
+            else if ("linkParameter".equals(method) && arguments.size() == 2)
+            {
+                parameters.put(arguments.get(0), arguments.get(1));
+            }
+            else if ("linkParameter".equals(method) && arguments.size() == 3)
+            {
+                Map<String, Object> link = new LinkedHashMap<String, Object>();
+                link.put("key", arguments.get(1));
+                link.put("type", arguments.get(2));
+                parameters.put(arguments.get(0), link);
+            }
+            else if ("setArray".equals(method) && arguments.size() == 1)
+            {
+                arrays.add(arguments.get(0));
+            }
+            else if ("setResponseCache".equals(method) && arguments.size() == 2)
+            {
+                cache.put("ttlMillis", arguments.get(0));
+                cache.put("maxSize", arguments.get(1));
+            }
+            else if ("setTimeoutMillis".equals(method) && arguments.size() == 1)
+            {
+                route.put("timeoutMillis", arguments.get(0));
+            }
+            else if ("setLoadBalance".equals(method) && arguments.size() == 1)
+            {
+                route.put("loadBalance", arguments.get(0));
+            }
+            else if ("setInvalidateServiceCodes".equals(method))
+            {
+                route.put("invalidateServiceCodes", arguments);
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        route.put("classInfo", classInfo);
+        route.put("parameters", parameters);
+        if (!arrays.isEmpty())
+        {
+            route.put("arrays", arrays);
+        }
+        route.put("cache", cache);
+        return toYaml(route);
+    }
+
+    /**
+     * 解析调用参数
+     * @param text 参数文本
+     * @return 参数值组, 含常量以外的表达式时为null
+     */
+    private static List<String> parseArguments(String text)
+    {
+        List<String> arguments = new ArrayList<String>();
+        if (text.trim().isEmpty())
+        {
+            return arguments;
+        }
+
+        Matcher matcher = ARGUMENT.matcher(text);
+        int position = 0;
+        while (position < text.length())
+        {
+            if (!matcher.find(position) || matcher.start() != position)
+            {
+                return null;
+            }
+
+            for (int group = 2; group <= 6; group++)
+            {
+                if (matcher.group(group) != null)
+                {
+                    arguments.add(matcher.group(group));
+                    break;
+                }
+            }
+            position = matcher.end();
+        }
+        return arguments;
+    }
+
+    /**
+     * 输出YAML路由项, 空的映射省略
+     * @param route 路由项
+     * @return YAML文本
+     */
+    @SuppressWarnings("unchecked")
+    private static String toYaml(Map<String, Object> route)
+    {
+        StringBuilder yaml = new StringBuilder();
+        String indent = "  - ";
+
+        for (Map.Entry<String, Object> entry : route.entrySet())
+        {
+            Object value = entry.getValue();
+
+            if (value instanceof Map)
+            {
+                Map<String, Object> map = (Map<String, Object>) value;
+                if (map.isEmpty())
+                {
+                    continue;
+                }
+                yaml.append(indent).append(entry.getKey()).append(":\n");
+                for (Map.Entry<String, Object> item : map.entrySet())
+                {
+                    yaml.append("      ").append(key(item.getKey())).append(": ").append(flow(item.getValue())).append('\n');
+                }
+            }
+            else if (value instanceof List)
+            {
+                yaml.append(indent).append(entry.getKey()).append(":\n");
+                for (String item : (List<String>) value)
+                {
+                    yaml.append("      - ").append(scalar(item)).append('\n');
+                }
+            }
+            else
+            {
+                yaml.append(indent).append(entry.getKey()).append(": ").append(scalar((String) value)).append('\n');
+            }
+            indent = "    ";
+        }
+        return yaml.toString();
+    }
+
+    /**
+     * 输出映射的值, 嵌套映射写为单行的流式映射
+     * @param value 字符串或映射
+     * @return YAML值
+     */
+    @SuppressWarnings("unchecked")
+    private static String flow(Object value)
+    {
+        if (!(value instanceof Map))
+        {
+            return scalar((String) value);
+        }
+
+        StringBuilder yaml = new StringBuilder("{");
+        for (Map.Entry<String, String> item : ((Map<String, String>) value).entrySet())
+        {
+            if (yaml.length() > 1)
+            {
+                yaml.append(", ");
+            }
+            yaml.append(key(item.getKey())).append(": ").append(scalar(item.getValue()));
+        }
+        return yaml.append('}').toString();
+    }
+
+    /**
+     * 输出映射的key, 参数路径等简单key不加引号
+     * @param value key
+     * @return YAML key
+     */
+    private static String key(String value)
+    {
+        return value.matches("[A-Za-z_][\\w.]*") ? value : quote(value);
+    }
+
+    /**
+     * 输出标量, 数字原样输出, 其他按字符串加引号
+     * @param value 值
+     * @return YAML标量
+     */
+    private static String scalar(String value)
+    {
+        return value.matches("\\d+") ? value : quote(value);
+    }
+
+    /**
+     * 加双引号
+     * @param value 值
+     * @return 带引号的字符串
+     */
+    private static String quote(String value)
+    {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
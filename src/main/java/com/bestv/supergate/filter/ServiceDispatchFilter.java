@@ -0,0 +1,144 @@
+package com.bestv.supergate.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 服务码分发过滤器
+ * 唯一注册到zuul的route过滤器, 按服务码一次查表找到对应的groovy过滤器并执行,
+ * groovy过滤器本身不再参与zuul的route阶段遍历
+ * Created by flamhaze on 16/10/18.
+ */
+public class ServiceDispatchFilter extends ZuulFilter {
+
+    /** 服务码 -> 过滤器 分发表 */
+    private static final ConcurrentMap<String, AbstractFilter> DISPATCH_MAP = new ConcurrentHashMap<String, AbstractFilter>();
+
+    /** 过滤器名 -> 服务码, 脚本重载后服务码变更时用于清理旧的分发项 */
+    private static final ConcurrentMap<String, String> FILTER_CODE_MAP = new ConcurrentHashMap<String, String>();
+
+    /**
+     * 登记过滤器, 同一脚本重新载入后替换旧实例
+     * 由载入方在过滤器构造完成后调用, 开启了返回结果缓存时一并登记缓存, 新实例关闭了缓存时移除旧缓存
+     * @param filter 过滤器
+     */
+    public static void register(AbstractFilter filter)
+    {
+        String serviceCode = filter.getServiceCode();
+
+        if (serviceCode == null)
+        {
+            throw new RuntimeException("没有设置服务码!");
+        }
+
+        String filterName = filter.getFilterName();
+
+        if (filter.getResponseCache() != null)
+        {
+            ResponseCache.register(filter.getResponseCache());
+        }
+
+        AbstractFilter replaced = DISPATCH_MAP.put(serviceCode, filter);
+        if (replaced != null && replaced.getResponseCache() != null && filter.getResponseCache() == null)
+        {
+            ResponseCache.unregister(replaced.getResponseCache());
+        }
+
+        String oldServiceCode = FILTER_CODE_MAP.put(filterName, serviceCode);
+
+        // 脚本修改了服务码, 旧服务码不再由该脚本处理
+        if (oldServiceCode != null && !oldServiceCode.equals(serviceCode))
+        {
+            remove(oldServiceCode, filterName);
+        }
+    }
+
+    /**
+     * 移除过滤器, 用于脚本或路由删除、脚本改名
+     * 服务码已由其他来源接管时保留
+     * @param filterName 过滤器名
+     */
+    public static void unregister(String filterName)
+    {
+        String serviceCode = FILTER_CODE_MAP.remove(filterName);
+
+        if (serviceCode != null)
+        {
+            remove(serviceCode, filterName);
+        }
+    }
+
+    /**
+     * 移除服务码的过滤器及其返回结果缓存, 服务码已由其他过滤器接管时保留
+     * @param serviceCode 服务码
+     * @param filterName  过滤器名
+     */
+    private static void remove(String serviceCode, String filterName)
+    {
+        AbstractFilter filter = DISPATCH_MAP.get(serviceCode);
+
+        if (filter != null && filter.getFilterName().equals(filterName) && DISPATCH_MAP.remove(serviceCode, filter)
+                && filter.getResponseCache() != null)
+        {
+            ResponseCache.unregister(filter.getResponseCache());
+        }
+    }
+
+    /**
+     * 按服务码获取过滤器
+     * @param serviceCode 服务码
+     * @return 过滤器, 没有登记时为null
+     */
+    public static AbstractFilter getFilter(String serviceCode)
+    {
+        return DISPATCH_MAP.get(serviceCode);
+    }
+
+    /**
+     * @see ZuulFilter#run()
+     */
+    public Object run() {
+
+        AbstractFilter filter = DISPATCH_MAP.get(getRequestServiceCode());
+
+        if (filter != null)
+        {
+            filter.run();
+        }
+        return null;
+    }
+
+    /**
+     * @see ZuulFilter#filterType()
+     */
+    public String filterType() {
+        return "route";
+    }
+
+    /**
+     * @see ZuulFilter#filterOrder()
+     */
+    public int filterOrder() {
+        return 0;
+    }
+
+    /**
+     * 批量请求由{@link BatchDispatchFilter}处理
+     * @see ZuulFilter#shouldFilter()
+     */
+    public boolean shouldFilter() {
+        return !BatchDispatchFilter.isBatchRequest();
+    }
+
+    /**
+     * 获取当前请求服务码
+     * @return 服务码
+     */
+    protected String getRequestServiceCode()
+    {
+        return RequestContext.getCurrentContext().getRequest().getRequestURI().substring(1);
+    }
+}
@@ -0,0 +1,237 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 应用并发限制器
+ * 按rtt梯度自适应调整并发上限: 短期rtt接近长期rtt时按队列余量放大, 明显变慢时按比例收缩,
+ * 超时或失败时乘性退让, 每次退让之前发出的请求再失败不重复退让, 同一批超时只收缩一次;
+ * 达到上限的请求直接拒绝, 不再等待后端;
+ * 上限用CAS更新, 完成路径上不加锁, rtt同一时间只由一个线程采样, 并发完成的其他样本直接丢弃
+ * Created by flamhaze on 16/10/18.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** 指标名前缀 */
+    private static final String METRIC_PREFIX = "supergate.app";
+
+    /** 长期rtt平滑样本数 */
+    private static final int LONG_RTT_WINDOW = 600;
+
+    /** 短期rtt平滑样本数 */
+    private static final int SHORT_RTT_WINDOW = 10;
+
+    /** 超时或失败时的退让比例 */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /** 单次最大收缩比例 */
+    private static final double MIN_GRADIENT = 0.5;
+
+    /** 应用名 */
+    private final String appName;
+
+    /** 设置 */
+    private final GateProperties.Limiter config;
+
+    /** 未完成请求数 */
+    private final AtomicInteger inFlight;
+
+    /** 拒绝数 */
+    private final Counter rejected;
+
+    /** 估算的并发上限, double的位表示, 取整后为当前并发上限 */
+    private final AtomicLong estimatedLimitBits;
+
+    /** 上次退让的时间, 纳秒, 在此之前发出的请求失败时不再退让 */
+    private final AtomicLong lastBackoffNanos;
+
+    /** 是否有线程正在采样rtt */
+    private final AtomicBoolean sampling;
+
+    /** 长期rtt, 纳秒, 只由取得采样权的线程读写 */
+    private double longRtt;
+
+    /** 短期rtt, 纳秒, 只由取得采样权的线程读写 */
+    private double shortRtt;
+
+    /**
+     * 构造函数
+     * @param appName 应用名
+     * @param config  设置
+     */
+    public AdaptiveConcurrencyLimiter(String appName, GateProperties.Limiter config)
+    {
+        this.appName = appName;
+        this.config = config;
+        this.inFlight = new AtomicInteger();
+        this.estimatedLimitBits = new AtomicLong(Double.doubleToRawLongBits(config.getInitialLimit()));
+        this.lastBackoffNanos = new AtomicLong(System.nanoTime());
+        this.sampling = new AtomicBoolean();
+
+        MetricRegistry registry = RpcRequestContext.getMetricRegistry();
+        String prefix = MetricRegistry.name(METRIC_PREFIX, appName);
+
+        this.rejected = registry.counter(MetricRegistry.name(prefix, "rejected"));
+
+        registry.remove(MetricRegistry.name(prefix, "limit"));
+        registry.register(MetricRegistry.name(prefix, "limit"), new Gauge<Integer>() {
+            public Integer getValue() {
+                return getLimit();
+            }
+        });
+        registry.remove(MetricRegistry.name(prefix, "inFlight"));
+        registry.register(MetricRegistry.name(prefix, "inFlight"), new Gauge<Integer>() {
+            public Integer getValue() {
+                return inFlight.get();
+            }
+        });
+    }
+
+    /**
+     * 占用一个并发名额, 已达上限时拒绝
+     * @return 占用时的未完成请求数, 用于判断是否受限
+     * @throws GateException 已达上限, 503
+     */
+    public int acquire()
+    {
+        while (true)
+        {
+            int current = inFlight.get();
+
+            if (current >= getLimit())
+            {
+                rejected.inc();
+                throw new GateException(503, "应用 " + appName + " 并发已满, 请稍后重试");
+            }
+
+            if (inFlight.compareAndSet(current, current + 1))
+            {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * 释放并发名额并按本次rtt调整上限
+     * @param acquiredInFlight 占用时的未完成请求数
+     * @param rttNanos         本次rtt, 纳秒
+     * @param dropped          是否超时或失败
+     */
+    public void release(int acquiredInFlight, long rttNanos, boolean dropped)
+    {
+        inFlight.decrementAndGet();
+
+        if (dropped)
+        {
+            backoff(System.nanoTime() - rttNanos);
+            return;
+        }
+
+        // 其他线程正在采样, 本次样本丢弃; rtt是平滑值, 少量样本不影响结果
+        if (!sampling.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        try
+        {
+            sample(acquiredInFlight, rttNanos);
+        }
+        finally
+        {
+            sampling.set(false);
+        }
+    }
+
+    /**
+     * 释放并发名额, 不调整上限
+     * 用于请求没有发出的情况, 如熔断、连接并发已满、已超过截止时间
+     */
+    public void cancel()
+    {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 超时或失败时乘性退让
+     * 请求在上次退让之前发出时, 其失败已由上次退让反映, 不再收缩;
+     * 后端卡顿时同时超时的一批请求只收缩一次, 而不是按请求数连乘
+     * @param startNanos 请求发出的时间, 纳秒
+     */
+    private void backoff(long startNanos)
+    {
+        long last = lastBackoffNanos.get();
+
+        if (startNanos - last < 0 || !lastBackoffNanos.compareAndSet(last, System.nanoTime()))
+        {
+            return;
+        }
+
+        while (true)
+        {
+            long bits = estimatedLimitBits.get();
+            double newLimit = Math.max(config.getMinLimit(), Double.longBitsToDouble(bits) * BACKOFF_RATIO);
+
+            if (estimatedLimitBits.compareAndSet(bits, Double.doubleToRawLongBits(newLimit)))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 记录rtt样本并按梯度调整上限, 只由取得采样权的线程调用
+     * @param acquiredInFlight 占用时的未完成请求数
+     * @param rttNanos         本次rtt, 纳秒
+     */
+    private void sample(int acquiredInFlight, long rttNanos)
+    {
+        if (longRtt == 0)
+        {
+            longRtt = rttNanos;
+            shortRtt = rttNanos;
+            return;
+        }
+
+        shortRtt += (rttNanos - shortRtt) / SHORT_RTT_WINDOW;
+        longRtt += (rttNanos - longRtt) / LONG_RTT_WINDOW;
+
+        // 后端已恢复, 长期rtt尽快跟上
+        if (longRtt > shortRtt * 2)
+        {
+            longRtt *= 0.95;
+        }
+
+        long bits = estimatedLimitBits.get();
+        double estimatedLimit = Double.longBitsToDouble(bits);
+
+        // 并发远未用满时rtt不能说明上限是否合适, 不放大
+        if (acquiredInFlight < estimatedLimit / 2)
+        {
+            return;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, config.getRttTolerance() * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - config.getSmoothing()) + newLimit * config.getSmoothing();
+        newLimit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), newLimit));
+
+        // 期间有其他线程退让时以退让为准
+        estimatedLimitBits.compareAndSet(bits, Double.doubleToRawLongBits(newLimit));
+    }
+
+    /**
+     * 获取当前并发上限
+     * @return 并发上限
+     */
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(estimatedLimitBits.get());
+    }
+}
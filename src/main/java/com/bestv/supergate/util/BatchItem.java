@@ -0,0 +1,54 @@
+package com.bestv.supergate.util;
+
+import java.util.Map;
+
+/**
+ * 批量请求项
+ * 由{@link JsonBodyReader#readBatch}从请求体流式读出, 参数值统一为字符串或字符串数组
+ * Created by flamhaze on 16/10/18.
+ */
+public class BatchItem {
+
+    /** 服务码, 请求项中没有时为null */
+    private final String serviceCode;
+
+    /** 超时时间, 毫秒, 请求项中没有时为null */
+    private final Long timeoutMillis;
+
+    /** 请求参数, 值为字符串或字符串数组, 数组为同名参数的多个值 */
+    private final Map<String, Object> params;
+
+    /**
+     * 构造函数
+     * @param serviceCode   服务码
+     * @param timeoutMillis 超时时间, 毫秒
+     * @param params        请求参数
+     */
+    BatchItem(String serviceCode, Long timeoutMillis, Map<String, Object> params)
+    {
+        this.serviceCode = serviceCode;
+        this.timeoutMillis = timeoutMillis;
+        this.params = params;
+    }
+
+    /**
+     * method for get serviceCode
+     */
+    public String getServiceCode() {
+        return serviceCode;
+    }
+
+    /**
+     * method for get timeoutMillis
+     */
+    public Long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * method for get params
+     */
+    public Map<String, Object> getParams() {
+        return params;
+    }
+}
@@ -0,0 +1,258 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后端地址熔断器
+ * 关闭状态下统计最近固定次数调用的失败率和慢调用率, 超过阈值时打开;
+ * 打开期间不再选择该地址, 到期后进入半开状态, 放行少量探测请求,
+ * 探测全部成功则关闭, 任一失败或过慢则重新打开;
+ * 每次状态切换开始新的一代, 放行的请求带有放行时的代号, 结果只计入同一代,
+ * 上一代晚到的结果(如打开前发出的请求在半开时才返回)不会被当作探测结果
+ * Created by flamhaze on 16/10/18.
+ */
+public class CircuitBreaker {
+
+    /** 不放行 */
+    public static final long NOT_PERMITTED = -1L;
+
+    /**
+     * 熔断状态
+     */
+    public enum State {
+
+        /** 关闭, 正常放行 */
+        CLOSED,
+
+        /** 打开, 全部拒绝 */
+        OPEN,
+
+        /** 半开, 只放行探测请求 */
+        HALF_OPEN
+    }
+
+    /** 设置 */
+    private final GateProperties.CircuitBreaker config;
+
+    /** 慢调用耗时, 纳秒 */
+    private final long slowCallNanos;
+
+    /** 最近调用是否失败, 环形 */
+    private final boolean[] failures;
+
+    /** 最近调用是否过慢, 环形 */
+    private final boolean[] slowCalls;
+
+    /** 当前代号, 每次状态切换加一 */
+    private volatile long generation;
+
+    /** 当前状态 */
+    private volatile State state;
+
+    /** 当前阶段截止时间, 打开时为开始探测的时间, 半开时为探测超时的时间 */
+    private volatile long phaseDeadline;
+
+    /** 环形写入位置 */
+    private int index;
+
+    /** 已统计调用数 */
+    private int count;
+
+    /** 统计中的失败数 */
+    private int failureCount;
+
+    /** 统计中的慢调用数 */
+    private int slowCallCount;
+
+    /** 半开状态下成功的探测数 */
+    private int probeSuccesses;
+
+    /** 半开状态下剩余探测名额 */
+    private int probePermits;
+
+    /**
+     * 构造函数
+     * @param config 设置
+     */
+    public CircuitBreaker(GateProperties.CircuitBreaker config)
+    {
+        this.config = config;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallDurationMillis());
+        this.failures = new boolean[config.getWindowSize()];
+        this.slowCalls = new boolean[config.getWindowSize()];
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * 申请放行, 半开状态下放行会占用一个探测名额
+     * @return 放行时的代号, 记录结果时传回; 不放行时为{@link #NOT_PERMITTED}
+     */
+    public long acquirePermit()
+    {
+        // 先读代号再读状态, 读到关闭时代号不会晚于关闭
+        long current = generation;
+        if (!config.isEnabled() || state == State.CLOSED)
+        {
+            return current;
+        }
+
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now < phaseDeadline)
+        {
+            return NOT_PERMITTED;
+        }
+
+        synchronized (this)
+        {
+            // 打开到期, 或半开的探测迟迟没有结果, 开始新的一代并重新发放探测名额
+            if (state != State.CLOSED && now >= phaseDeadline)
+            {
+                transition(State.HALF_OPEN);
+                phaseDeadline = now + config.getOpenDurationMillis();
+                probePermits = config.getHalfOpenProbes();
+            }
+
+            if (state == State.CLOSED)
+            {
+                return generation;
+            }
+            if (state == State.OPEN || probePermits <= 0)
+            {
+                return NOT_PERMITTED;
+            }
+
+            probePermits--;
+            return generation;
+        }
+    }
+
+    /**
+     * 放行的请求没有发出, 不记录结果; 同一代的半开状态下归还探测名额
+     * @param permit 放行时的代号
+     */
+    public synchronized void cancel(long permit)
+    {
+        if (permit == generation && state == State.HALF_OPEN)
+        {
+            probePermits++;
+        }
+    }
+
+    /**
+     * 记录调用结果, 不是当前代放行的请求不再统计
+     * @param permit        放行时的代号
+     * @param durationNanos 耗时, 纳秒
+     * @param success       是否成功, 超时、连接失败等为失败
+     */
+    public void record(long permit, long durationNanos, boolean success)
+    {
+        if (!config.isEnabled() || permit == NOT_PERMITTED)
+        {
+            return;
+        }
+
+        boolean slow = durationNanos >= slowCallNanos;
+
+        synchronized (this)
+        {
+            // 上一代放行的请求晚到的结果, 如打开前发出、半开后才返回的请求
+            if (permit != generation)
+            {
+                return;
+            }
+
+            // 关闭前读到代号、随即打开的请求, 打开期间不统计
+            if (state == State.OPEN)
+            {
+                return;
+            }
+
+            if (state == State.HALF_OPEN)
+            {
+                if (!success || slow)
+                {
+                    open();
+                }
+                else if (++probeSuccesses >= config.getHalfOpenProbes())
+                {
+                    close();
+                }
+                return;
+            }
+
+            if (count == failures.length)
+            {
+                failureCount -= failures[index] ? 1 : 0;
+                slowCallCount -= slowCalls[index] ? 1 : 0;
+            }
+            else
+            {
+                count++;
+            }
+
+            failures[index] = !success;
+            slowCalls[index] = slow;
+            failureCount += success ? 0 : 1;
+            slowCallCount += slow ? 1 : 0;
+            index = (index + 1) % failures.length;
+
+            if (count >= config.getMinimumCalls()
+                    && (failureCount * 100 >= config.getFailureRateThreshold() * count
+                    || slowCallCount * 100 >= config.getSlowCallRateThreshold() * count))
+            {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 打开熔断, 清空统计
+     */
+    private void open()
+    {
+        transition(State.OPEN);
+        phaseDeadline = System.currentTimeMillis() + config.getOpenDurationMillis();
+        probePermits = 0;
+        reset();
+    }
+
+    /**
+     * 关闭熔断, 清空统计
+     */
+    private void close()
+    {
+        transition(State.CLOSED);
+        reset();
+    }
+
+    /**
+     * 切换状态并开始新的一代, 先加代号再改状态, 与{@link #acquirePermit()}的读取顺序相反
+     * @param newState 新状态
+     */
+    private void transition(State newState)
+    {
+        generation++;
+        state = newState;
+    }
+
+    /**
+     * 清空统计, 环形未写满前不会读取旧值, 无需清空数组
+     */
+    private void reset()
+    {
+        index = 0;
+        count = 0;
+        failureCount = 0;
+        slowCallCount = 0;
+        probeSuccesses = 0;
+    }
+
+    /**
+     * method for get state
+     */
+    public State getState() {
+        return state;
+    }
+}
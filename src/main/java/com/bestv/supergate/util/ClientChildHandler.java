@@ -0,0 +1,50 @@
+package com.bestv.supergate.util;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+
+/**
+ * 客户端执行总线
+ * 连接不再绑定处理器, 所有处理器共用
+ * Created by flamhaze on 16/6/29.
+ */
+class ClientChildHandler extends ChannelInitializer<SocketChannel> {
+
+    /** rpc回复最大帧长度, 字节 */
+    private final int maxFrameLength;
+
+    /**
+     * 构造函数
+     * @param maxFrameLength rpc回复最大帧长度, 字节
+     */
+    ClientChildHandler(int maxFrameLength)
+    {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * @see ChannelInitializer#initChannel(Channel)
+     */
+    @Override
+    protected void initChannel(SocketChannel e) throws Exception {
+
+        e.pipeline()
+
+                // 半粘包解决方案, 超长帧读到长度字段即失败
+                .addLast(new LengthFieldPrepender(4, false))
+
+                .addLast(new LengthFieldBasedFrameDecoder(maxFrameLength, 0, 4, 0, 4, true))
+
+                // 请求已直接编码为缓冲, 回复只取出请求id, 原样交给调用方
+                .addLast(new RpcResponseDecoder())
+
+                // 客户端主要逻辑
+                .addLast(new MyClientHandler())
+        ;
+    }
+
+
+}
@@ -0,0 +1,446 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 后端地址连接池
+ * 同一后端地址的少量长连接, 请求按未完成数最少的连接流水线复用发送,
+ * 由所有引用该地址的处理器共享; 同一时间最多一个正在建立的连接, 并发请求共用其结果
+ * Created by flamhaze on 16/10/18.
+ */
+public class EndpointChannelPool {
+
+    /** 连接器 */
+    private final Bootstrap bootstrap;
+
+    /** 主机名 */
+    private final String host;
+
+    /** 端口号 */
+    private final int port;
+
+    /** 远程地址, 与软负载登记的连接地址一致 */
+    private final String remoteAddress;
+
+    /** 连接池设置 */
+    private final GateProperties.Pool config;
+
+    /** 连接组 */
+    private final List<Channel> channels;
+
+    /** 正在建立的连接, 没有时为null */
+    private final AtomicReference<Promise<Channel>> pendingConnect;
+
+    /** 熔断器 */
+    private final CircuitBreaker circuitBreaker;
+
+    /** 峰值rtt, 用于按延迟选择地址 */
+    private final PeakEwma rtt;
+
+    /** 处理器引用数, 为0时关闭 */
+    private final AtomicInteger refCnt;
+
+    /** 是否已关闭 */
+    private volatile boolean closed;
+
+    /**
+     * 构造函数
+     * @param bootstrap 连接器
+     * @param host      主机名
+     * @param port      端口号
+     * @param config    连接池设置
+     * @param circuitBreakerConfig 熔断设置
+     */
+    public EndpointChannelPool(Bootstrap bootstrap, String host, int port, GateProperties.Pool config,
+                               GateProperties.CircuitBreaker circuitBreakerConfig)
+    {
+        this.bootstrap = bootstrap;
+        this.host = host;
+        this.port = port;
+        this.remoteAddress = new InetSocketAddress(host, port).toString();
+        this.config = config;
+        this.channels = new CopyOnWriteArrayList<Channel>();
+        this.pendingConnect = new AtomicReference<Promise<Channel>>();
+        this.circuitBreaker = new CircuitBreaker(circuitBreakerConfig);
+        this.rtt = new PeakEwma();
+        this.refCnt = new AtomicInteger();
+    }
+
+    /**
+     * 选择发送连接, 取未完成请求最少且未达到并发上限的可用连接
+     * 最空闲的连接也已过半时, 后台补充一个连接; 所有连接都满时快速失败;
+     * 没有可用连接时等待正在建立的连接, 最长为连接器的CONNECT_TIMEOUT_MILLIS
+     * @return 发送连接
+     * @throws PoolSaturatedException 所有连接都已达到并发上限
+     */
+    public Channel select()
+    {
+        Channel selected = null;
+        int selectedInFlight = Integer.MAX_VALUE;
+        int maxInFlight = config.getMaxInFlightPerConnection();
+        boolean hasActive = false;
+
+        for (Channel channel : channels)
+        {
+            MyClientHandler clientHandler = clientHandlerOf(channel);
+            if (!channel.isActive() || clientHandler == null)
+            {
+                // 失效连接不再占用连接数, 否则达到上限后无法重连
+                evict(channel);
+                continue;
+            }
+            hasActive = true;
+
+            int inFlight = clientHandler.getInFlightCount();
+            if (inFlight < selectedInFlight && inFlight < maxInFlight)
+            {
+                selected = channel;
+                selectedInFlight = inFlight;
+                if (inFlight == 0)
+                {
+                    break;
+                }
+            }
+        }
+
+        if (selected == null)
+        {
+            if (!hasActive)
+            {
+                return awaitConnect();
+            }
+
+            connectAsync();
+            throw new PoolSaturatedException("与 " + host + ":" + port + "的连接并发已满");
+        }
+
+        if (selectedInFlight >= maxInFlight / 2)
+        {
+            connectAsync();
+        }
+
+        return selected;
+    }
+
+    /**
+     * 获取连接数
+     * @return 连接数
+     */
+    public int getConnectionCount()
+    {
+        return channels.size();
+    }
+
+    /**
+     * 获取所有连接上未完成的请求数, 即关联表大小之和
+     * @return 未完成请求数
+     */
+    public int getInFlightCount()
+    {
+        int inFlight = 0;
+        for (Channel channel : channels)
+        {
+            MyClientHandler clientHandler = clientHandlerOf(channel);
+            if (clientHandler != null)
+            {
+                inFlight += clientHandler.getInFlightCount();
+            }
+        }
+        return inFlight;
+    }
+
+    /**
+     * 保证至少有一个可用连接
+     */
+    public void ensureConnected()
+    {
+        for (Channel channel : channels)
+        {
+            if (channel.isActive())
+            {
+                return;
+            }
+        }
+        awaitConnect();
+    }
+
+    /**
+     * 是否可用, 已关闭或没有可用连接时不可用
+     * @return 是否可用
+     */
+    public boolean isAlive()
+    {
+        if (closed)
+        {
+            return false;
+        }
+
+        for (Channel channel : channels)
+        {
+            if (channel.isActive())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 移除并关闭连接
+     * @param channel 连接
+     */
+    public void evict(Channel channel)
+    {
+        channels.remove(channel);
+        channel.close();
+    }
+
+    /**
+     * 健康检查
+     * 移除失效连接, 关闭超过最小连接数的空闲连接, 补足最小连接数
+     */
+    public void maintain()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        long idleDeadline = System.currentTimeMillis() - config.getIdleTimeoutMillis();
+
+        for (Channel channel : channels)
+        {
+            MyClientHandler clientHandler = clientHandlerOf(channel);
+
+            if (!channel.isActive() || clientHandler == null)
+            {
+                evict(channel);
+            }
+            else if (channels.size() > config.getMinConnections()
+                    && clientHandler.getInFlightCount() == 0
+                    && clientHandler.getLastActiveTime() < idleDeadline)
+            {
+                evict(channel);
+            }
+        }
+
+        // 每次最多补一个, 不足的部分由后续检查继续补充
+        if (channels.size() < config.getMinConnections())
+        {
+            connectAsync();
+        }
+    }
+
+    /**
+     * 等待建立连接, 已有正在建立的连接时共用其结果
+     * @return 连接
+     */
+    private Channel awaitConnect()
+    {
+        Future<Channel> connectFuture = connectAsync();
+
+        if (connectFuture == null)
+        {
+            throw new PoolSaturatedException("与 " + host + ":" + port + "的连接数已满");
+        }
+
+        if (!connectFuture.awaitUninterruptibly().isSuccess())
+        {
+            throw new RuntimeException("与 " + host + ":" + port + "连接失败!", connectFuture.cause());
+        }
+        return connectFuture.getNow();
+    }
+
+    /**
+     * 后台建立连接
+     * 只有一个调用方能发起连接, 其他调用方取得同一个结果; 已关闭或连接数已满时不发起
+     * @return 连接结果, 未发起时为null
+     */
+    private Future<Channel> connectAsync()
+    {
+        Promise<Channel> current = pendingConnect.get();
+        if (current != null)
+        {
+            return current;
+        }
+        if (closed || channels.size() >= config.getMaxConnections())
+        {
+            return null;
+        }
+
+        final Promise<Channel> promise = GlobalEventExecutor.INSTANCE.newPromise();
+
+        while (!pendingConnect.compareAndSet(null, promise))
+        {
+            Promise<Channel> pending = pendingConnect.get();
+            if (pending != null)
+            {
+                return pending;
+            }
+        }
+
+        if (closed || channels.size() >= config.getMaxConnections())
+        {
+            pendingConnect.compareAndSet(promise, null);
+            return null;
+        }
+
+        bootstrap.connect(host, port).addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture channelFuture) throws Exception {
+
+                // 先加入连接组再唤醒等待方, 之后的选择和补充连接都能看到新连接
+                if (channelFuture.isSuccess())
+                {
+                    addChannel(channelFuture.channel());
+                }
+                pendingConnect.compareAndSet(promise, null);
+
+                if (channelFuture.isSuccess())
+                {
+                    promise.setSuccess(channelFuture.channel());
+                }
+                else
+                {
+                    promise.setFailure(channelFuture.cause());
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * 加入连接组, 连接池已关闭时直接关闭连接
+     * @param channel 连接
+     */
+    private void addChannel(Channel channel)
+    {
+        channels.add(channel);
+
+        if (closed)
+        {
+            evict(channel);
+        }
+    }
+
+    /**
+     * 增加引用
+     * @return 是否成功, 已关闭时失败
+     */
+    boolean retain()
+    {
+        while (true)
+        {
+            int current = refCnt.get();
+            if (closed || current < 0)
+            {
+                return false;
+            }
+            if (refCnt.compareAndSet(current, current + 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放引用, 没有引用时关闭所有连接
+     * @return 是否已关闭
+     */
+    boolean release()
+    {
+        if (refCnt.decrementAndGet() > 0)
+        {
+            return false;
+        }
+
+        if (!refCnt.compareAndSet(0, -1))
+        {
+            return false;
+        }
+
+        close();
+        return true;
+    }
+
+    /**
+     * 关闭连接池, 不论是否还有引用, 用于传输资源关闭
+     */
+    void close()
+    {
+        refCnt.set(-1);
+        closed = true;
+        for (Channel channel : channels)
+        {
+            evict(channel);
+        }
+    }
+
+    /**
+     * 获取连接上的客户端逻辑
+     * @param channel 连接
+     * @return 客户端逻辑
+     */
+    static MyClientHandler clientHandlerOf(Channel channel)
+    {
+        return channel.pipeline().get(MyClientHandler.class);
+    }
+
+    /**
+     * method for get host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * method for get port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 记录一次成功调用的rtt
+     * @param rttNanos rtt, 纳秒
+     */
+    public void recordRtt(long rttNanos)
+    {
+        rtt.record(rttNanos);
+    }
+
+    /**
+     * 估算负载, 峰值rtt乘以未完成请求数
+     * @return 负载, 越小越优先
+     */
+    public double getLoadCost()
+    {
+        return rtt.cost(getInFlightCount());
+    }
+
+    /**
+     * method for get circuitBreaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * method for get remoteAddress
+     */
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
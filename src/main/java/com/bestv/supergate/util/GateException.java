@@ -0,0 +1,47 @@
+package com.bestv.supergate.util;
+
+/**
+ * 网关异常
+ * 带http状态码, 由过滤器按状态码直接返回给调用方
+ * Created by flamhaze on 16/10/18.
+ */
+public class GateException extends RuntimeException {
+
+    /** http状态码 */
+    private final int status;
+
+    /**
+     * 构造函数
+     * @param status  http状态码
+     * @param message 提示
+     */
+    public GateException(int status, String message)
+    {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * 查找异常链中的网关异常
+     * @param cause 异常
+     * @return 网关异常, 没有时为null
+     */
+    public static GateException find(Throwable cause)
+    {
+        for (Throwable current = cause; current != null; current = current.getCause())
+        {
+            if (current instanceof GateException)
+            {
+                return (GateException) current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * method for get status
+     */
+    public int getStatus() {
+        return status;
+    }
+}
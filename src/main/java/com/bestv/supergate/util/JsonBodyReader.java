@@ -0,0 +1,425 @@
+package com.bestv.supergate.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON请求体读取
+ * 从输入流流式读取, 只取出路由计划需要的参数, 其他字段和子对象直接跳过, 不构建整个对象;
+ * 请求体与rpc参数结构一致, 按链接参数时的代码参数路径取值, 而不是请求参数key:
+ * 例如linkParameter("request.phoneNo", "mobile")对应{"request":{"phoneNo":...}}, 同一值在查询串中为mobile;
+ * 批量请求同样逐项流式读取, 项数超过上限时立即拒绝, 不再读取剩余内容
+ * Created by flamhaze on 16/10/18.
+ */
+public final class JsonBodyReader {
+
+    /** JSON工厂, 线程安全 */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /** 批量请求项的服务码键 */
+    private static final String SERVICE_CODE_KEY = "serviceCode";
+
+    /** 批量请求项的请求参数键 */
+    private static final String PARAMS_KEY = "params";
+
+    /** 批量请求项的超时时间键, 毫秒 */
+    private static final String TIMEOUT_KEY = "timeout";
+
+    /** 路径分隔符 */
+    private static final char SEPARATOR = '.';
+
+    /** 请求体过大 */
+    private static final int PAYLOAD_TOO_LARGE = 413;
+
+    /** 请求格式错误 */
+    private static final int BAD_REQUEST = 400;
+
+    private JsonBodyReader()
+    {
+    }
+
+    /**
+     * 限制请求体大小
+     * 声明了长度的请求在读取前拒绝; 分块传输的请求读取超过上限时拒绝
+     * @param in            请求体输入流
+     * @param contentLength 声明的长度, 未声明时为-1
+     * @param maxBodyBytes  最大字节数, 不大于0时不限制
+     * @return 限制大小的输入流
+     * @throws GateException 请求体过大, 413
+     */
+    public static InputStream limit(InputStream in, long contentLength, long maxBodyBytes)
+    {
+        if (maxBodyBytes <= 0)
+        {
+            return in;
+        }
+
+        checkLength(contentLength, maxBodyBytes);
+        return new LimitedInputStream(in, maxBodyBytes);
+    }
+
+    /**
+     * 检查声明的请求体长度
+     * @param contentLength 声明的长度, 未声明时为-1
+     * @param maxBodyBytes  最大字节数, 不大于0时不限制
+     * @throws GateException 请求体过大, 413
+     */
+    public static void checkLength(long contentLength, long maxBodyBytes)
+    {
+        if (maxBodyBytes > 0 && contentLength > maxBodyBytes)
+        {
+            throw tooLarge(maxBodyBytes);
+        }
+    }
+
+    /**
+     * 读取路由计划需要的参数
+     * 标量取文本, 数字和布尔由参数类型再校验; 数组取每个元素的文本, 作为同名参数的多个值;
+     * 多个路径链接同一请求参数时, 取请求体中最后出现的值
+     * @param in   请求体输入流, 不关闭
+     * @param plan 路由计划
+     * @return 参数值组, 下标与路由计划的参数下标一致, 请求体中没有的参数为null
+     * @throws GateException 不是JSON对象或参数值不是标量和标量数组, 400; 请求体过大, 413
+     * @throws IOException   读取失败
+     */
+    public static String[][] read(InputStream in, RoutePlan plan) throws IOException
+    {
+        String[][] values = new String[plan.getParameterCount()][];
+        JsonParser parser = JSON_FACTORY.createParser(in);
+
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                throw new GateException(BAD_REQUEST, "请求体应为JSON对象");
+            }
+
+            readObject(parser, null, plan, values);
+            return values;
+        }
+        catch (JsonParseException e)
+        {
+            throw new GateException(BAD_REQUEST, "请求体不是有效的JSON: " + e.getOriginalMessage());
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * 逐项读取批量请求
+     * 请求体为请求项数组, 每项为{"serviceCode": "...", "params": {...}, "timeout": 毫秒};
+     * 读到超过上限的一项时立即拒绝, 不构建整个数组; 请求体大小由调用方用{@link #limit}限制
+     * @param in       请求体输入流, 不关闭
+     * @param maxItems 最大项数
+     * @return 请求项组
+     * @throws GateException 不是JSON数组、请求项格式错误或项数不在1到最大项数之间, 400; 请求体过大, 413
+     * @throws IOException   读取失败
+     */
+    public static List<BatchItem> readBatch(InputStream in, int maxItems) throws IOException
+    {
+        JsonParser parser = JSON_FACTORY.createParser(in);
+
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+            {
+                throw new GateException(BAD_REQUEST, "批量请求应为JSON数组");
+            }
+
+            List<BatchItem> items = new ArrayList<BatchItem>();
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken())
+            {
+                if (items.size() >= maxItems)
+                {
+                    throw itemCount(maxItems);
+                }
+                if (token != JsonToken.START_OBJECT)
+                {
+                    throw new GateException(BAD_REQUEST, "批量请求项应为JSON对象");
+                }
+                items.add(readItem(parser));
+            }
+
+            if (items.isEmpty())
+            {
+                throw itemCount(maxItems);
+            }
+            return items;
+        }
+        catch (JsonParseException e)
+        {
+            throw new GateException(BAD_REQUEST, "批量请求不是有效的JSON: " + e.getOriginalMessage());
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * 读取批量请求项, 解析器位于START_OBJECT, 读完后位于对应的END_OBJECT
+     * 参数值与表单参数一样统一为字符串, 由服务码声明的类型校验; 其他字段直接跳过
+     * @param parser 解析器
+     * @return 请求项
+     */
+    private static BatchItem readItem(JsonParser parser) throws IOException
+    {
+        String serviceCode = null;
+        Long timeoutMillis = null;
+        Map<String, Object> params = new HashMap<String, Object>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if (SERVICE_CODE_KEY.equals(name))
+            {
+                String[] value = readValue(parser, token, name);
+                serviceCode = value == null || value.length != 1 ? null : value[0];
+            }
+            else if (TIMEOUT_KEY.equals(name))
+            {
+                timeoutMillis = readTimeout(parser, token);
+            }
+            else if (PARAMS_KEY.equals(name) && token == JsonToken.START_OBJECT)
+            {
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String key = parser.getCurrentName();
+                    JsonToken valueToken = parser.nextToken();
+                    String[] value = readValue(parser, valueToken, key);
+                    params.put(key, value == null || valueToken == JsonToken.START_ARRAY ? value : value[0]);
+                }
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+        return new BatchItem(serviceCode, timeoutMillis, params);
+    }
+
+    /**
+     * 读取批量请求项的超时时间
+     * @param parser 解析器
+     * @param token  当前值的起始标记
+     * @return 超时时间, 毫秒, null时为null
+     */
+    private static Long readTimeout(JsonParser parser, JsonToken token) throws IOException
+    {
+        if (token == JsonToken.VALUE_NULL)
+        {
+            return null;
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+        {
+            return parser.getLongValue();
+        }
+        if (token == JsonToken.VALUE_STRING)
+        {
+            try
+            {
+                return Long.valueOf(parser.getText().trim());
+            }
+            catch (NumberFormatException e)
+            {
+                // 落到下面的格式错误
+            }
+        }
+        throw new GateException(BAD_REQUEST, "批量请求项的 " + TIMEOUT_KEY + " 应为整数毫秒");
+    }
+
+    /**
+     * 读取对象的字段, 解析器位于START_OBJECT, 读完后位于对应的END_OBJECT
+     * @param parser 解析器
+     * @param prefix 对象的代码参数路径, 最外层为null
+     * @param plan   路由计划
+     * @param values 参数值组
+     */
+    private static void readObject(JsonParser parser, String prefix, RoutePlan plan, String[][] values) throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String path = prefix == null ? parser.getCurrentName() : prefix + SEPARATOR + parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            int index = plan.getParameterIndexByPath(path);
+            if (index >= 0)
+            {
+                values[index] = readValue(parser, token, path);
+            }
+            else if (token == JsonToken.START_OBJECT && plan.isParameterPathPrefix(path))
+            {
+                readObject(parser, path, plan, values);
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 读取参数值
+     * @param parser 解析器
+     * @param token  当前值的起始标记
+     * @param path   代码参数路径, 用于错误提示
+     * @return 参数值组, null时为null
+     */
+    private static String[] readValue(JsonParser parser, JsonToken token, String path) throws IOException
+    {
+        if (token == JsonToken.VALUE_NULL)
+        {
+            return null;
+        }
+        if (token.isScalarValue())
+        {
+            return new String[]{parser.getText()};
+        }
+        if (token != JsonToken.START_ARRAY)
+        {
+            throw invalidValue(path);
+        }
+
+        List<String> items = new ArrayList<String>();
+        for (token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken())
+        {
+            if (!token.isScalarValue())
+            {
+                throw invalidValue(path);
+            }
+            items.add(token == JsonToken.VALUE_NULL ? null : parser.getText());
+        }
+        return items.toArray(new String[items.size()]);
+    }
+
+    /**
+     * 参数值不是标量和标量数组
+     * @param path 代码参数路径
+     * @return 网关异常, 400
+     */
+    private static GateException invalidValue(String path)
+    {
+        return new GateException(BAD_REQUEST, "参数 " + path + " 应为字符串、数字、布尔或其数组");
+    }
+
+    /**
+     * 批量请求项数不在范围内
+     * @param maxItems 最大项数
+     * @return 网关异常, 400
+     */
+    private static GateException itemCount(int maxItems)
+    {
+        return new GateException(BAD_REQUEST, "批量请求项数应在1到" + maxItems + "之间");
+    }
+
+    /**
+     * 请求体过大
+     * @param maxBodyBytes 最大字节数
+     * @return 网关异常, 413
+     */
+    private static GateException tooLarge(long maxBodyBytes)
+    {
+        return new GateException(PAYLOAD_TOO_LARGE, "请求体不能超过 " + maxBodyBytes + " 字节");
+    }
+
+    /**
+     * 限制大小的输入流, 读取超过上限时抛出413
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        /** 剩余可读字节数 */
+        private long remaining;
+
+        /** 最大字节数 */
+        private final long maxBodyBytes;
+
+        /**
+         * 构造函数
+         * @param in           输入流
+         * @param maxBodyBytes 最大字节数
+         */
+        LimitedInputStream(InputStream in, long maxBodyBytes)
+        {
+            super(in);
+            this.remaining = maxBodyBytes;
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        /**
+         * @see FilterInputStream#read()
+         */
+        @Override
+        public int read() throws IOException {
+
+            int b = super.read();
+            if (b >= 0)
+            {
+                count(1);
+            }
+            return b;
+        }
+
+        /**
+         * @see FilterInputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            // 多读一个字节, 恰好等于上限的请求体不会被误判
+            int n = super.read(b, off, (int) Math.min(len, remaining + 1));
+            if (n > 0)
+            {
+                count(n);
+            }
+            return n;
+        }
+
+        /**
+         * @see FilterInputStream#skip(long)
+         */
+        @Override
+        public long skip(long n) throws IOException {
+
+            long skipped = super.skip(Math.min(n, remaining + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        /**
+         * 记录已读字节数
+         * @param n 本次读取的字节数
+         */
+        private void count(long n)
+        {
+            remaining -= n;
+            if (remaining < 0)
+            {
+                throw tooLarge(maxBodyBytes);
+            }
+        }
+
+        /**
+         * 不支持标记, 避免重置后重复计数
+         * @see FilterInputStream#markSupported()
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.bestv.supergate.util;
+
+/**
+ * 应用的后端地址选择方式
+ * Created by flamhaze on 16/10/18.
+ */
+public enum LoadBalance {
+
+    /** 使用软负载策略选中的地址 */
+    ROUTER,
+
+    /** 在已连接的地址中随机取两个, 选峰值rtt乘以未完成请求数较小的一个 */
+    PEAK_EWMA
+}
@@ -0,0 +1,221 @@
+package com.bestv.supergate.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.TooLongFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端主要逻辑
+ * 持有本通道上未完成请求的关联表, 多个请求在同一连接上流水线发送,
+ * 同一轮io循环内排队的请求合并为一次flush
+ * Created by flamhaze on 16/10/18.
+ */
+class MyClientHandler extends ChannelInboundHandlerAdapter {
+
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MyClientHandler.class);
+
+    /** 未完成的rpc请求, 请求id -> 调用结果 */
+    private final ConcurrentHashMap<String, RpcFuture> rpcFutureMap = new ConcurrentHashMap<String, RpcFuture>();
+
+    /** 最近一次收发时间, 用于空闲连接回收 */
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    /** 连续超时次数, 收到回复后清零 */
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+
+    /** 通道上下文 */
+    private ChannelHandlerContext ctx;
+
+    /** 是否已安排flush, 只在io线程读写 */
+    private boolean flushPending;
+
+    /** flush任务 */
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flushPending = false;
+            ctx.flush();
+        }
+    };
+
+    /**
+     * @see ChannelInboundHandlerAdapter#handlerAdded(ChannelHandlerContext)
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+
+        this.ctx = ctx;
+    }
+
+    /**
+     * 发送请求, 不立即flush
+     * 写入在io线程执行, 首个写入安排一次flush任务, 排在其前面的写入共用这次flush
+     * @param future   调用结果, 排队期间已超时的请求不再写入
+     * @param frame    请求缓冲
+     * @param listener 写入结果回调
+     */
+    public void write(final RpcFuture future, final ByteBuf frame, final ChannelFutureListener listener)
+    {
+        EventLoop eventLoop = ctx.channel().eventLoop();
+
+        if (eventLoop.inEventLoop())
+        {
+            doWrite(future, frame, listener);
+            return;
+        }
+
+        try
+        {
+            eventLoop.execute(new Runnable() {
+                public void run() {
+                    doWrite(future, frame, listener);
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            frame.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 在io线程写入请求并安排flush
+     * @param future   调用结果
+     * @param frame    请求缓冲
+     * @param listener 写入结果回调
+     */
+    private void doWrite(RpcFuture future, ByteBuf frame, ChannelFutureListener listener)
+    {
+        if (future.isDone())
+        {
+            frame.release();
+            return;
+        }
+
+        ctx.write(frame).addListener(listener);
+
+        if (!flushPending)
+        {
+            flushPending = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    /**
+     * 记录一次超时
+     * @return 连续超时次数
+     */
+    public int incrementTimeouts()
+    {
+        return consecutiveTimeouts.incrementAndGet();
+    }
+
+    /**
+     * 登记未完成的rpc请求
+     * @param future 调用结果
+     */
+    public void register(RpcFuture future)
+    {
+        if (rpcFutureMap.putIfAbsent(future.getTraceId(), future) != null)
+        {
+            throw new RuntimeException("rpc请求暂存失败");
+        }
+        lastActiveTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取未完成的rpc请求数
+     * @return 未完成的rpc请求数
+     */
+    public int getInFlightCount()
+    {
+        return rpcFutureMap.size();
+    }
+
+    /**
+     * method for get lastActiveTime
+     */
+    public long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 以失败结束rpc请求
+     * @param future 调用结果
+     * @param cause  失败原因
+     */
+    public void fail(RpcFuture future, Throwable cause)
+    {
+        rpcFutureMap.remove(future.getTraceId(), future);
+        future.fail(cause);
+    }
+
+    /**
+     * @see ChannelInboundHandlerAdapter#channelRead(ChannelHandlerContext, Object)
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+        lastActiveTime = System.currentTimeMillis();
+        consecutiveTimeouts.set(0);
+
+        RpcResponse rpcResult = (RpcResponse) msg;
+        RpcFuture future = rpcFutureMap.remove(rpcResult.getTraceId());
+
+        // 已超时的请求, 丢弃迟到的回复
+        if (future == null || !future.complete(rpcResult))
+        {
+            rpcResult.release();
+        }
+    }
+
+    /**
+     * 通道关闭, 未完成的请求全部失败
+     * @see ChannelInboundHandlerAdapter#channelInactive(ChannelHandlerContext)
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+
+        for (RpcFuture future : rpcFutureMap.values())
+        {
+            fail(future, new RuntimeException("连接已关闭: " + ctx.channel()));
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * @see ChannelInboundHandlerAdapter#channelReadComplete(ChannelHandlerContext)
+     */
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+
+        ctx.flush();
+    }
+
+    /**
+     * @see ChannelInboundHandlerAdapter#exceptionCaught(ChannelHandlerContext, Throwable)
+     */
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+            throws Exception {
+
+        // 超长帧无法对应到请求, 连接上未完成的请求直接失败, 不再等待超时
+        if (cause instanceof TooLongFrameException)
+        {
+            for (RpcFuture future : rpcFutureMap.values())
+            {
+                fail(future, cause);
+            }
+        }
+
+        LOGGER.warn("连接 " + ctx.channel().remoteAddress() + " 异常, 关闭连接", cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.bestv.supergate.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 请求参数类型
+ * 读取请求参数时按类型校验并转换, 无效时直接拒绝, 不再发出rpc请求;
+ * 转换后的值由{@link RequestTemplate}按类型写为JSON: 字符串转义后加引号, 数字和布尔原样, 数组写为字符串数组
+ * Created by flamhaze on 16/10/18.
+ */
+public enum ParameterType {
+
+    /** 字符串 */
+    STRING {
+        public Object bind(String key, String value) {
+            return value;
+        }
+    },
+
+    /** 整数 */
+    INT {
+        public Object bind(String key, String value) {
+            if (value == null)
+            {
+                return null;
+            }
+            try
+            {
+                return Integer.valueOf(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw invalid(key, value, "整数");
+            }
+        }
+    },
+
+    /** 长整数 */
+    LONG {
+        public Object bind(String key, String value) {
+            if (value == null)
+            {
+                return null;
+            }
+            try
+            {
+                return Long.valueOf(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw invalid(key, value, "整数");
+            }
+        }
+    },
+
+    /** 布尔, 只接受true和false, 不区分大小写 */
+    BOOLEAN {
+        public Object bind(String key, String value) {
+            if (value == null)
+            {
+                return null;
+            }
+            if ("true".equalsIgnoreCase(value))
+            {
+                return Boolean.TRUE;
+            }
+            if ("false".equalsIgnoreCase(value))
+            {
+                return Boolean.FALSE;
+            }
+            throw invalid(key, value, "true或false");
+        }
+    },
+
+    /** 字符串数组, 同名参数的多个值 */
+    ARRAY {
+        public Object bind(String key, String value) {
+            return value == null ? null : Collections.singletonList(value);
+        }
+
+        @Override
+        public Object bindAll(String key, String[] values) {
+            return values == null ? null : Arrays.asList(values);
+        }
+    };
+
+    /**
+     * 校验并转换参数值
+     * @param key   请求参数key, 用于错误提示
+     * @param value 参数值, 没有时为null
+     * @return 转换后的值, 没有时为null
+     * @throws GateException 参数值无效, 400
+     */
+    public abstract Object bind(String key, String value);
+
+    /**
+     * 校验并转换同名参数的所有值, 数组以外的类型只取第一个
+     * @param key    请求参数key, 用于错误提示
+     * @param values 参数值组, 没有时为null
+     * @return 转换后的值, 没有时为null
+     * @throws GateException 参数值无效, 400
+     */
+    public Object bindAll(String key, String[] values)
+    {
+        return bind(key, values == null || values.length == 0 ? null : values[0]);
+    }
+
+    /**
+     * 参数值无效
+     * @param key      请求参数key
+     * @param value    参数值
+     * @param expected 期望的格式
+     * @return 网关异常, 400
+     */
+    private static GateException invalid(String key, String value, String expected)
+    {
+        return new GateException(400, "参数 " + key + " 应为" + expected + ": " + value);
+    }
+}
@@ -0,0 +1,88 @@
+package com.bestv.supergate.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 峰值指数加权rtt
+ * 比平均值大的样本直接取为当前值, 比平均值小的样本按时间衰减加权,
+ * 长时间没有样本时向0衰减, 让变慢的地址在恢复后重新获得流量
+ * Created by flamhaze on 16/10/18.
+ */
+public class PeakEwma {
+
+    /** 衰减时间常数, 纳秒 */
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /** 没有rtt样本但有未完成请求时的负载, 避免新地址在首个回复前被集中选中 */
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+    /** 当前rtt, 纳秒 */
+    private double rttNanos;
+
+    /** 上次更新时间, 纳秒 */
+    private long stampNanos;
+
+    /**
+     * 构造函数
+     */
+    public PeakEwma()
+    {
+        this.stampNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录rtt样本
+     * @param sampleNanos rtt, 纳秒
+     */
+    public synchronized void record(long sampleNanos)
+    {
+        long nowNanos = System.nanoTime();
+        double weight = weight(Math.max(nowNanos - stampNanos, 0));
+        stampNanos = nowNanos;
+
+        if (sampleNanos > rttNanos)
+        {
+            rttNanos = sampleNanos;
+        }
+        else
+        {
+            rttNanos = rttNanos * weight + sampleNanos * (1 - weight);
+        }
+    }
+
+    /**
+     * 估算负载, rtt乘以包括本次在内的未完成请求数
+     * @param inFlight 未完成请求数
+     * @return 负载, 越小越优先
+     */
+    public synchronized double cost(int inFlight)
+    {
+        decay(System.nanoTime());
+
+        if (rttNanos == 0 && inFlight > 0)
+        {
+            return PENALTY + inFlight;
+        }
+        return rttNanos * (inFlight + 1);
+    }
+
+    /**
+     * 按距上次更新的时间向0衰减, 相当于记录一个为0的样本
+     * @param nowNanos 当前时间, 纳秒
+     */
+    private void decay(long nowNanos)
+    {
+        rttNanos *= weight(Math.max(nowNanos - stampNanos, 0));
+        stampNanos = nowNanos;
+    }
+
+    /**
+     * 衰减权重
+     * @param elapsedNanos 经过时间, 纳秒
+     * @return 权重
+     */
+    private static double weight(long elapsedNanos)
+    {
+        return Math.exp(-elapsedNanos / DECAY_NANOS);
+    }
+}
@@ -0,0 +1,22 @@
+package com.bestv.supergate.util;
+
+/**
+ * 连接并发已满
+ * 后端地址的所有连接都已达到并发上限, 请求没有发出; 属于网关本地的拒绝,
+ * 不说明后端不可用, 不计入熔断统计
+ * Created by flamhaze on 16/10/18.
+ */
+public class PoolSaturatedException extends GateException {
+
+    /** 服务不可用 */
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    /**
+     * 构造函数
+     * @param message 提示
+     */
+    public PoolSaturatedException(String message)
+    {
+        super(SERVICE_UNAVAILABLE, message);
+    }
+}
@@ -1,56 +1,57 @@
 package com.bestv.supergate.util;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.parser.Feature;
 import com.bestv.flame.client.handler.AbstractClientHandler;
 import com.bestv.flame.client.handler.softrouter.RouterServer;
 import com.bestv.flame.client.handler.softrouter.strategy.RouterStrategy;
-import io.netty.bootstrap.Bootstrap;
+import com.bestv.supergate.config.GateProperties;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.AbstractNioChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-
-import java.lang.reflect.Field;
-import java.text.MessageFormat;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 请求发送工具
+ * 同一应用的所有过滤器共用, 不持有请求相关的状态, 请求内容由调用方的{@link RoutePlan}决定
  * Created by flamhaze on 16/8/5.
  */
-public class RequestSenderHandler extends AbstractClientHandler<JSONObject, JSONObject, Channel>
+public class RequestSenderHandler extends AbstractClientHandler<RpcRequestFrame, RpcFuture, EndpointChannelPool>
 {
 
-    /** 连接器 */
-    private Bootstrap bootstrap;
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestSenderHandler.class);
 
-    /** rpc请求暂存器 */
-    private ConcurrentHashMap<String, JSONObject> rpcRequestMap;
+    /** 连续超时次数上限, 达到后认为连接已挂起, 关闭重建 */
+    private static final int CONSECUTIVE_TIMEOUT_LIMIT = 3;
 
-    /** rpc请求结果暂存器 */
-    private ConcurrentHashMap<String, JSONObject> rpcResultMap;
+    /** 应用并发限制器, 未开启时为null */
+    private final AdaptiveConcurrencyLimiter limiter;
 
-    /** 用于访问封装的channel远程请求地址 */
-    private Field requestedRemoteAddrField;
+    /**
+     * 本处理器已连接的地址, 选中地址熔断时从中改选
+     * 父类构造函数中即可能建立连接, 不能在声明处初始化, 否则会清掉构造期间加入的地址
+     */
+    private CopyOnWriteArrayList<EndpointChannelPool> knownPools;
+
+    /** rpc传输资源, 首次使用时取进程内的实例, 同样不能在声明处初始化 */
+    private RpcTransport transport;
 
-    /** request本体, 带占位符 */
-    private String requestGen;
+    /** 地址选择方式 */
+    private volatile LoadBalance loadBalance = LoadBalance.ROUTER;
 
-    /** 请求id键 */
-    private static final String TRACE_ID_KEY = "traceId";
+    /** 选中地址熔断时改选的起始位置, 轮流后移, 改选的请求分摊到其他地址 */
+    private final AtomicInteger fallbackCursor = new AtomicInteger();
 
 
     /**
@@ -71,18 +72,35 @@ public class RequestSenderHandler extends AbstractClientHandler<JSONObject, JSON
         super(appName, serviceInterface, serviceHost, servicePort,
                 keepAlive,
                 softRouter, routerServer, routerStrategy);
-        rpcRequestMap = new ConcurrentHashMap<String, JSONObject>();
-        rpcResultMap = new ConcurrentHashMap<String, JSONObject>();
 
-        try
+        GateProperties.Limiter limiterConfig = RpcRequestContext.getGateProperties().getLimiter();
+        this.limiter = limiterConfig.isEnabled() ? new AdaptiveConcurrencyLimiter(appName, limiterConfig) : null;
+    }
+
+    /**
+     * 获取已连接的地址, 没有时创建
+     * @return 已连接的地址
+     */
+    private synchronized CopyOnWriteArrayList<EndpointChannelPool> knownPools()
+    {
+        if (knownPools == null)
         {
-            requestedRemoteAddrField = AbstractNioChannel.class.getDeclaredField("requestedRemoteAddress");
-            requestedRemoteAddrField.setAccessible(true);
+            knownPools = new CopyOnWriteArrayList<EndpointChannelPool>();
         }
-        catch (NoSuchFieldException e)
+        return knownPools;
+    }
+
+    /**
+     * 获取rpc传输资源, 首次使用时取进程内的实例, 之后固定使用同一实例
+     * @return rpc传输资源
+     */
+    private synchronized RpcTransport transport()
+    {
+        if (transport == null)
         {
-            throw new RuntimeException("requestedRemoteAddress属性获取失败, 可能是netty版本不对", e);
+            transport = RpcRequestContext.getTransport();
         }
+        return transport;
     }
 
     /**
@@ -90,20 +108,15 @@ public class RequestSenderHandler extends AbstractClientHandler<JSONObject, JSON
      */
     protected String buildTraceId()
     {
-        return null;
+        return RpcRequestContext.getTraceIdGenerator().nextTraceId();
     }
 
     /**
+     * io线程组和连接器由{@link RpcTransport}统一提供
      * @see AbstractClientHandler#init()
      */
     protected void init() {
 
-        bootstrap = new Bootstrap();
-
-        bootstrap.group(new NioEventLoopGroup());                  //group 组
-        bootstrap.channel(NioSocketChannel.class);                 //channel 通道
-        bootstrap.option(ChannelOption.TCP_NODELAY, true);         //option 选项
-        bootstrap.handler(new ClientChildHandler(this));           //handler 处理
     }
 
     /**
@@ -116,250 +129,366 @@ public class RequestSenderHandler extends AbstractClientHandler<JSONObject, JSON
     /**
      * @see AbstractClientHandler#isConnectionAlive(Object)
      */
-    protected boolean isConnectionAlive(Channel connection)
+    protected boolean isConnectionAlive(EndpointChannelPool connection)
     {
-        return connection.isActive();
+        return connection.isAlive();
     }
 
     /**
      * @see AbstractClientHandler#releaseConnection(Object)
      */
-    protected boolean releaseConnection(Channel connection)
+    protected boolean releaseConnection(EndpointChannelPool connection)
     {
         try
         {
-            releaseChannel(connection);
+            knownPools().remove(connection);
+            transport().releasePool(connection);
+            withReleaseConnection(new ConnectionWrapper<EndpointChannelPool>(connection.getRemoteAddress(), connection));
             return true;
         }
         catch (Exception e)
         {
-            e.printStackTrace();
+            LOGGER.error("释放连接池失败: " + connection.getRemoteAddress(), e);
             return false;
         }
     }
 
     /**
+     * 连接池由所有处理器共享, 这里只增加引用
      * @see AbstractClientHandler#connect(String, int)
      */
-    protected Channel connect(String serviceHost, int servicePort) {
+    protected EndpointChannelPool connect(String serviceHost, int servicePort) {
 
-        //发起连接
-        ChannelFuture channelFuture = bootstrap.connect(serviceHost, servicePort);
-
-        if (!channelFuture.awaitUninterruptibly().isSuccess())
-        {
-            throw new RuntimeException("与 " + serviceHost + ":" + servicePort + "连接失败!");
-        }
-
-        return channelFuture.channel();
+        EndpointChannelPool pool = transport().acquirePool(serviceHost, servicePort);
+        knownPools().addIfAbsent(pool);
+        return pool;
     }
 
-
     /**
-     * @see AbstractClientHandler#sendRequest(Object, Object)
+     * 选择发送地址并取得熔断器放行
+     * 按延迟选择时先在已连接的地址中二选一; 选中的地址熔断时, 从轮转的起始位置改选其他未熔断的地址, 不再等待超时,
+     * 也不会让改选的请求全部落到列表中第一个未熔断的地址上
+     * @param pool 软负载选中的地址
+     * @return 发送地址及放行代号
+     * @throws GateException 所有地址都已熔断, 503
      */
-    protected void sendRequest(JSONObject rpcRequest, Channel channel) {
-
-        rpcRequest.put(TRACE_ID_KEY, UUID.randomUUID().toString());
-
-        channel.writeAndFlush(JSON.toJSONString(rpcRequest));
+    private Selection selectPool(EndpointChannelPool pool)
+    {
+        if (loadBalance == LoadBalance.PEAK_EWMA)
+        {
+            pool = selectByLatency(pool);
+        }
 
-        if (rpcRequestMap.putIfAbsent((String) rpcRequest.get(TRACE_ID_KEY), rpcRequest) != null)
+        long permit = pool.getCircuitBreaker().acquirePermit();
+        if (permit != CircuitBreaker.NOT_PERMITTED)
         {
-            throw new RuntimeException("rpc请求暂存失败");
+            return new Selection(pool, permit);
         }
 
-        synchronized (rpcRequest)
+        List<EndpointChannelPool> pools = knownPools();
+        int size = pools.size();
+        int start = fallbackCursor.getAndIncrement() & Integer.MAX_VALUE;
+
+        // 只在其他地址之间轮转, 熔断地址的位置不会让其后的地址多分一份
+        int self = pools.indexOf(pool);
+        int others = self < 0 ? size : size - 1;
+
+        for (int i = 0; i < others; i++)
         {
+            int offset = (start + i) % others;
+            EndpointChannelPool candidate;
             try
             {
-                rpcRequest.wait(3000);
-                if (rpcResultMap.get(rpcRequest.get(TRACE_ID_KEY)) == null)
-                {
-                    throw new RuntimeException("没有收到回复, 快速失败");
-                }
+                candidate = pools.get(self < 0 ? offset : (self + 1 + offset) % size);
             }
-            catch (Exception e)
+            catch (IndexOutOfBoundsException e)
             {
-                e.printStackTrace();
-                releaseConnection(channel);
+                // 地址在遍历期间被释放
+                break;
             }
-        }
-    }
-
-    /**
-     * @see AbstractClientHandler#receiveResponse(Object)
-     */
-    protected JSONObject receiveResponse(JSONObject rpcRequest) throws Exception {
 
-        JSONObject rpcResult = rpcResultMap.get(rpcRequest.get(TRACE_ID_KEY));
-        rpcResultMap.remove(rpcRequest.get(TRACE_ID_KEY));
-        rpcRequestMap.remove(rpcRequest.get(TRACE_ID_KEY));
-        return rpcResult;
+            if (candidate != pool && candidate.isAlive())
+            {
+                permit = candidate.getCircuitBreaker().acquirePermit();
+                if (permit != CircuitBreaker.NOT_PERMITTED)
+                {
+                    return new Selection(candidate, permit);
+                }
+            }
+        }
+        throw new GateException(503, "后端地址 " + pool.getRemoteAddress() + " 已熔断, 且没有其他可用地址");
     }
 
     /**
-     * 填充rpc请求结果
-     * @param rpcResult rpc请求结果
+     * 随机取两个可用地址, 选负载较小的一个
+     * 只比较两个地址, 不需要遍历排序, 也不会让所有请求同时涌向同一个最快的地址
+     * @param pool 软负载选中的地址, 可用地址不足两个时使用
+     * @return 发送地址
      */
-    public void fillRpcResult(JSONObject rpcResult)
+    private EndpointChannelPool selectByLatency(EndpointChannelPool pool)
     {
-        if (rpcResultMap.putIfAbsent((String) rpcResult.get(TRACE_ID_KEY), rpcResult) != null)
+        List<EndpointChannelPool> pools = knownPools();
+        int size = pools.size();
+        if (size < 2)
         {
-            throw new RuntimeException("rpc请求结果暂存失败");
+            return pool;
         }
 
-        JSONObject rpcRequest = rpcRequestMap.get(rpcResult.get(TRACE_ID_KEY));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        EndpointChannelPool first = null;
+        EndpointChannelPool second = null;
 
-        while (rpcRequest == null)
+        // 从随机位置起取两个连接可用且未熔断的地址
+        int start = random.nextInt(size);
+        for (int i = 0; i < size && second == null; i++)
         {
-            rpcRequest = rpcRequestMap.get(rpcResult.get(TRACE_ID_KEY));
+            EndpointChannelPool candidate;
+            try
+            {
+                candidate = pools.get((start + i) % size);
+            }
+            catch (IndexOutOfBoundsException e)
+            {
+                // 地址在遍历期间被释放
+                break;
+            }
+
+            if (!candidate.isAlive() || candidate.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN)
+            {
+                continue;
+            }
+
+            if (first == null)
+            {
+                first = candidate;
+            }
+            else
+            {
+                second = candidate;
+            }
         }
 
-        synchronized (rpcRequest)
+        if (first == null)
+        {
+            return pool;
+        }
+        if (second == null)
         {
-            rpcRequest.notify();
+            return first;
         }
+        return first.getLoadCost() <= second.getLoadCost() ? first : second;
     }
 
 
     /**
-     * @see AbstractClientHandler#buildRpcRequest(String, String, String, Object[])
-     */
-    @Override
-    protected JSONObject buildRpcRequest(String traceId, String serviceInterface, String methodName, Object[] args) {
-
-        return JSON.parseObject(MessageFormat.format(requestGen, args), Feature.DisableSpecialKeyDetect, Feature.OrderedField);
-    }
-
-    /**
-     * method for get requestGen
+     * @see AbstractClientHandler#sendRequest(Object, Object)
      */
-    public String getRequestGen() {
-        return requestGen;
-    }
+    protected void sendRequest(RpcRequestFrame rpcRequest, EndpointChannelPool pool) {
 
-    /**
-     * method for set requestGen
-     */
-    public void setRequestGen(String requestGen) {
-        this.requestGen = requestGen;
-    }
+        if (rpcRequest.getTraceId() == null)
+        {
+            rpcRequest.setTraceId(buildTraceId());
+        }
 
+        // 调用方已不再等待的请求不再发送
+        if (rpcRequest.getRemainingMillis() <= 0)
+        {
+            throw new GateException(504, "请求已超过截止时间, 不再发送");
+        }
 
-    @Override
-    public Object doAction(String methodName, Object[] args) throws Exception {
+        final Selection selection = selectPool(pool);
+        final EndpointChannelPool channelPool = selection.pool;
+        final CircuitBreaker circuitBreaker = channelPool.getCircuitBreaker();
+        final long startNanos = System.nanoTime();
+        final Channel channel;
+        final MyClientHandler clientHandler;
 
-        Object response = super.doAction(methodName, args);
-        return response;
-    }
+        // 连接失败计为失败, 连接超时由连接器的CONNECT_TIMEOUT_MILLIS限定;
+        // 连接并发已满是网关本地的拒绝, 请求没有发出, 不计入熔断统计
+        try
+        {
+            channel = channelPool.select();
+            clientHandler = EndpointChannelPool.clientHandlerOf(channel);
+            if (clientHandler == null)
+            {
+                throw new RuntimeException("连接不可用: " + channel);
+            }
+        }
+        catch (PoolSaturatedException e)
+        {
+            circuitBreaker.cancel(selection.permit);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            circuitBreaker.record(selection.permit, System.nanoTime() - startNanos, false);
+            throw e;
+        }
 
-    /**
-     * 释放失效通道
-     * @param channel 失效通道
-     */
-    private void releaseChannel(Channel channel) throws IllegalAccessException
-    {
-        String remoteAddress = getRemoteAddr(channel);
-        channel.close();
-        withReleaseConnection(new ConnectionWrapper<Channel>(remoteAddress, channel));
-    }
+        ByteBuf frame = rpcRequest.encode(channel.alloc());
 
-    /**
-     * 通过channel获取远程地址
-     * @param channel channel
-     * @return 远程地址
-     */
-    private String getRemoteAddr(Channel channel) throws IllegalAccessException
-    {
-        return requestedRemoteAddrField.get(channel).toString();
-    }
-}
+        // 先登记再发送, 回复不会早于登记到达
+        final RpcFuture future = new RpcFuture(rpcRequest.getTraceId(), channel);
+        rpcRequest.setFuture(future);
+        future.addListener(new RpcFuture.Listener() {
+            public void operationComplete(RpcFuture future) throws Exception {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                circuitBreaker.record(selection.permit, elapsedNanos, future.getCause() == null);
 
+                // 失败由熔断器处理, 不计入rtt, 否则快速失败的地址会显得更快
+                if (future.getCause() == null)
+                {
+                    channelPool.recordRtt(elapsedNanos);
+                }
+            }
+        });
+        try
+        {
+            clientHandler.register(future);
+        }
+        catch (RuntimeException e)
+        {
+            future.fail(e);
+            frame.release();
+            throw e;
+        }
+        future.setTimeout(transport().getTimeoutTimer().newTimeout(new TimerTask() {
+            public void run(Timeout timeout) throws Exception {
+                clientHandler.fail(future, new TimeoutException("没有收到回复, 快速失败"));
 
-/**
- * 客户端执行总线
- * Created by flamhaze on 16/6/29.
- */
-class ClientChildHandler extends ChannelInitializer<SocketChannel> {
+                // 连接上还有其他请求, 偶发超时不关闭连接
+                if (clientHandler.incrementTimeouts() >= CONSECUTIVE_TIMEOUT_LIMIT)
+                {
+                    channelPool.evict(channel);
+                }
+            }
+        }, Math.max(1L, rpcRequest.getRemainingMillis()), TimeUnit.MILLISECONDS));
 
-    /** RPC动态代理执行器 */
-    private RequestSenderHandler requestSenderHandler;
+        clientHandler.write(future, frame, new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture channelFuture) throws Exception {
+                if (!channelFuture.isSuccess())
+                {
+                    clientHandler.fail(future, channelFuture.cause());
+                }
+            }
+        });
+    }
 
     /**
-     * 构造函数
-     * @param requestSenderHandler RPC动态代理执行器
+     * 不等待回复, 直接返回调用结果, 由调用方决定阻塞或注册回调
+     * @see AbstractClientHandler#receiveResponse(Object)
      */
-    public ClientChildHandler(RequestSenderHandler requestSenderHandler) {
-        this.requestSenderHandler = requestSenderHandler;
+    protected RpcFuture receiveResponse(RpcRequestFrame rpcRequest) throws Exception {
+
+        return rpcRequest.getFuture();
     }
 
     /**
-     * @see ChannelInitializer#initChannel(Channel)
+     * 请求帧由{@link #sendAsync(RoutePlan, Object[], long)}按路由计划生成, 这里只填充请求id
+     * @see AbstractClientHandler#buildRpcRequest(String, String, String, Object[])
      */
     @Override
-    protected void initChannel(SocketChannel e) throws Exception {
-
-        e.pipeline()
-
-                // 半粘包解决方案
-                .addLast(new LengthFieldPrepender(4, false))
-
-                .addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4))
-
-                .addLast(new StringEncoder())
-
-                .addLast(new StringDecoder())
+    protected RpcRequestFrame buildRpcRequest(String traceId, String serviceInterface, String methodName, Object[] args) {
 
-                // 客户端主要逻辑
-                .addLast(new MyClientHandler(requestSenderHandler))
-        ;
+        RpcRequestFrame rpcRequest = (RpcRequestFrame) args[0];
+        rpcRequest.setTraceId(traceId);
+        return rpcRequest;
     }
 
-
-}
-
-
-/**
- * 客户端主要逻辑
- */
-class MyClientHandler extends ChannelInboundHandlerAdapter {
-
-    /** rpc动态代理执行器 */
-    private RequestSenderHandler requestSenderHandler;
-
     /**
-     * 构造函数
-     * @param requestSenderHandler RPC动态代理执行器
+     * method for set loadBalance
      */
-    public MyClientHandler(RequestSenderHandler requestSenderHandler) {
-        this.requestSenderHandler = requestSenderHandler;
+    public void setLoadBalance(LoadBalance loadBalance) {
+        this.loadBalance = loadBalance;
     }
 
-
     /**
-     * @see ChannelInboundHandlerAdapter#channelRead(ChannelHandlerContext, Object)
+     * 发送rpc请求并阻塞等待结果
+     * @param plan   路由计划
+     * @param values 参数值组
+     * @param timeoutMillis 调用方给出的超时时间, 毫秒, 不大于0时按路由计划的超时时间
+     * @return rpc回复, 由调用方释放
      */
-    @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    public RpcResponse send(RoutePlan plan, Object[] values, long timeoutMillis) throws Exception
+    {
+        RpcFuture future = sendAsync(plan, values, timeoutMillis);
 
-        requestSenderHandler.fillRpcResult(JSON.parseObject((String) msg, Feature.DisableSpecialKeyDetect));
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("rpc请求失败, traceId: " + future.getTraceId(), e.getCause());
+        }
     }
 
     /**
-     * @see ChannelInboundHandlerAdapter#channelReadComplete(ChannelHandlerContext)
+     * 发送rpc请求, 不等待回复
+     * 应用并发已满时直接拒绝, 不占用连接和等待时间
+     * @param plan   路由计划
+     * @param values 参数值组
+     * @param timeoutMillis 调用方给出的超时时间, 毫秒, 不大于0时按路由计划的超时时间
+     * @return 调用结果
+     * @throws GateException 应用并发已满, 503; 请求已过期, 504
      */
-    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+    public RpcFuture sendAsync(RoutePlan plan, Object[] values, long timeoutMillis) throws Exception
+    {
+        if (limiter == null)
+        {
+            return doAction(plan.getMethodName(), new Object[]{plan.newFrame(values, timeoutMillis)});
+        }
 
-        ctx.flush();
+        final int acquiredInFlight = limiter.acquire();
+        final long startNanos = System.nanoTime();
+        RpcFuture future;
+
+        try
+        {
+            future = doAction(plan.getMethodName(), new Object[]{plan.newFrame(values, timeoutMillis)});
+        }
+        catch (Exception e)
+        {
+            // 熔断、连接并发已满、已过截止时间都是本地拒绝, 请求没有发出, 不能当作后端变慢退让
+            if (GateException.find(e) != null)
+            {
+                limiter.cancel();
+            }
+            else
+            {
+                limiter.release(acquiredInFlight, System.nanoTime() - startNanos, true);
+            }
+            throw e;
+        }
+
+        future.addListener(new RpcFuture.Listener() {
+            public void operationComplete(RpcFuture future) throws Exception {
+                limiter.release(acquiredInFlight, System.nanoTime() - startNanos, future.getCause() != null);
+            }
+        });
+        return future;
     }
 
     /**
-     * @see ChannelInboundHandlerAdapter#exceptionCaught(ChannelHandlerContext, Throwable)
+     * 选中的发送地址及其熔断器放行代号
      */
-    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
-            throws Exception {
-        ctx.close();
-        System.out.println("异常信息：\r\n" + cause.getMessage());
+    private static final class Selection {
+
+        /** 发送地址 */
+        private final EndpointChannelPool pool;
+
+        /** 熔断器放行代号 */
+        private final long permit;
+
+        /**
+         * 构造函数
+         * @param pool   发送地址
+         * @param permit 熔断器放行代号
+         */
+        private Selection(EndpointChannelPool pool, long permit)
+        {
+            this.pool = pool;
+            this.permit = permit;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,361 @@
+package com.bestv.supergate.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的请求模板
+ * 将带占位符的请求JSON样式(MessageFormat语法)一次性拆成字面量字节段和参数槽位,
+ * 每次请求按顺序把字面量和参数直接写入输出缓冲, 不再重复解析样式和JSON;
+ * 参数按{@link ParameterType}转换后的类型写入: 字符串转义后加引号, 数字和布尔原样, 列表写为数组, null写为null;
+ * 转义和UTF-8编码一次写入输出缓冲, 不生成中间字符串
+ * Created by flamhaze on 16/10/18.
+ */
+public class RequestTemplate {
+
+    /** 请求id字段前缀, 追加在请求对象末尾 */
+    private static final byte[] TRACE_ID_PREFIX = ",\"traceId\":".getBytes(CharsetUtil.UTF_8);
+
+    /** 剩余超时时间字段前缀, 紧跟请求id */
+    private static final byte[] TIMEOUT_PREFIX = ",\"timeout\":".getBytes(CharsetUtil.UTF_8);
+
+    /** 请求对象结尾 */
+    private static final int OBJECT_END = '}';
+
+    /** 空参数 */
+    private static final byte[] NULL_BYTES = "null".getBytes(CharsetUtil.UTF_8);
+
+    /** 布尔真 */
+    private static final byte[] TRUE_BYTES = "true".getBytes(CharsetUtil.UTF_8);
+
+    /** 布尔假 */
+    private static final byte[] FALSE_BYTES = "false".getBytes(CharsetUtil.UTF_8);
+
+    /** 最小长整数, 取反会溢出, 直接写入 */
+    private static final byte[] LONG_MIN_BYTES = String.valueOf(Long.MIN_VALUE).getBytes(CharsetUtil.UTF_8);
+
+    /** 十六进制字符, 用于控制字符转义 */
+    private static final byte[] HEX_BYTES = "0123456789abcdef".getBytes(CharsetUtil.UTF_8);
+
+    /** 字符串引号 */
+    private static final int QUOTE = '"';
+
+    /** 单个参数预估长度, 用于分配缓冲 */
+    private static final int PARAMETER_SIZE_HINT = 16;
+
+    /** 字面量段, 比参数槽位多一个 */
+    private final byte[][] literals;
+
+    /** 参数槽位, 值为参数下标 */
+    private final int[] slots;
+
+    /** 预估请求长度 */
+    private final int sizeHint;
+
+    /**
+     * 构造函数
+     * @param literals 字面量段
+     * @param slots    参数槽位
+     */
+    private RequestTemplate(byte[][] literals, int[] slots)
+    {
+        this.literals = literals;
+        this.slots = slots;
+
+        // 请求id连同引号按38字节估算, 超时时间最长20位, 再加结尾的 }
+        int size = TRACE_ID_PREFIX.length + TIMEOUT_PREFIX.length + 38 + 20 + 1;
+        for (byte[] literal : literals)
+        {
+            size += literal.length;
+        }
+        this.sizeHint = size + slots.length * PARAMETER_SIZE_HINT;
+    }
+
+    /**
+     * 编译请求样式
+     * 只支持 {n} 形式的占位符, 单引号转义规则与MessageFormat一致
+     * @param requestGen 请求JSON样式, 带占位符
+     * @return 请求模板
+     */
+    public static RequestTemplate compile(String requestGen)
+    {
+        List<String> literalList = new ArrayList<String>();
+        List<Integer> slotList = new ArrayList<Integer>();
+
+        StringBuilder literal = new StringBuilder();
+        boolean inQuote = false;
+        int length = requestGen.length();
+
+        for (int i = 0; i < length; i++)
+        {
+            char c = requestGen.charAt(i);
+
+            if (c == '\'')
+            {
+                // 两个单引号表示单引号本身
+                if (i + 1 < length && requestGen.charAt(i + 1) == '\'')
+                {
+                    literal.append('\'');
+                    i++;
+                }
+                else
+                {
+                    inQuote = !inQuote;
+                }
+            }
+            else if (c == '{' && !inQuote)
+            {
+                int end = requestGen.indexOf('}', i);
+                if (end < 0)
+                {
+                    throw new RuntimeException("请求样式占位符没有闭合: " + requestGen);
+                }
+
+                int slot;
+                try
+                {
+                    slot = Integer.parseInt(requestGen.substring(i + 1, end).trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new RuntimeException("请求样式占位符不合法: " + requestGen.substring(i, end + 1), e);
+                }
+
+                literalList.add(literal.toString());
+                slotList.add(slot);
+                literal.setLength(0);
+                i = end;
+            }
+            else
+            {
+                literal.append(c);
+            }
+        }
+
+        // 末尾的 } 留给请求id字段
+        int tail = literal.length() - 1;
+        while (tail >= 0 && Character.isWhitespace(literal.charAt(tail)))
+        {
+            tail--;
+        }
+
+        if (tail < 0 || literal.charAt(tail) != '}')
+        {
+            throw new RuntimeException("请求样式不是JSON对象: " + requestGen);
+        }
+
+        literal.setLength(tail);
+        literalList.add(literal.toString());
+
+        byte[][] literals = new byte[literalList.size()][];
+        for (int i = 0; i < literals.length; i++)
+        {
+            literals[i] = literalList.get(i).getBytes(CharsetUtil.UTF_8);
+        }
+
+        int[] slots = new int[slotList.size()];
+        for (int i = 0; i < slots.length; i++)
+        {
+            slots[i] = slotList.get(i);
+        }
+
+        return new RequestTemplate(literals, slots);
+    }
+
+    /**
+     * 将请求写入缓冲
+     * @param out     输出缓冲
+     * @param args    参数组, 按参数类型转换后的值
+     * @param traceId 请求id, 由可替换的生成器给出, 与字符串参数一样转义
+     * @param timeoutMillis 剩余超时时间, 毫秒
+     */
+    public void write(ByteBuf out, Object[] args, String traceId, long timeoutMillis)
+    {
+        for (int i = 0; i < slots.length; i++)
+        {
+            out.writeBytes(literals[i]);
+            writeValue(out, args[slots[i]]);
+        }
+        out.writeBytes(literals[slots.length]);
+
+        out.writeBytes(TRACE_ID_PREFIX);
+        writeString(out, traceId);
+        out.writeBytes(TIMEOUT_PREFIX);
+        writeLong(out, timeoutMillis);
+        out.writeByte(OBJECT_END);
+    }
+
+    /**
+     * 按值的类型写为JSON
+     * @param out   输出缓冲
+     * @param value 参数值
+     */
+    private static void writeValue(ByteBuf out, Object value)
+    {
+        if (value == null)
+        {
+            out.writeBytes(NULL_BYTES);
+        }
+        else if (value instanceof CharSequence)
+        {
+            writeString(out, (CharSequence) value);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.writeBytes((Boolean) value ? TRUE_BYTES : FALSE_BYTES);
+        }
+        else if (value instanceof Integer || value instanceof Long)
+        {
+            writeLong(out, ((Number) value).longValue());
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List<?>) value;
+            out.writeByte('[');
+            for (int i = 0; i < list.size(); i++)
+            {
+                if (i > 0)
+                {
+                    out.writeByte(',');
+                }
+                writeValue(out, list.get(i));
+            }
+            out.writeByte(']');
+        }
+        else
+        {
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    /**
+     * 写入JSON字符串, 逐字符转义并按UTF-8编码
+     * 不成对的代理字符写为?
+     * @param out   输出缓冲
+     * @param value 字符串
+     */
+    private static void writeString(ByteBuf out, CharSequence value)
+    {
+        int length = value.length();
+        out.ensureWritable(length + 2);
+        out.writeByte(QUOTE);
+
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\')
+            {
+                out.writeByte('\\');
+                out.writeByte(c);
+            }
+            else if (c < 0x20)
+            {
+                writeControl(out, c);
+            }
+            else if (c < 0x80)
+            {
+                out.writeByte(c);
+            }
+            else if (c < 0x800)
+            {
+                out.writeByte(0xc0 | (c >> 6));
+                out.writeByte(0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.writeByte(0xf0 | (codePoint >> 18));
+                out.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                out.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                out.writeByte(0x80 | (codePoint & 0x3f));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                out.writeByte('?');
+            }
+            else
+            {
+                out.writeByte(0xe0 | (c >> 12));
+                out.writeByte(0x80 | ((c >> 6) & 0x3f));
+                out.writeByte(0x80 | (c & 0x3f));
+            }
+        }
+
+        out.writeByte(QUOTE);
+    }
+
+    /**
+     * 写入转义的控制字符
+     * @param out 输出缓冲
+     * @param c   控制字符
+     */
+    private static void writeControl(ByteBuf out, char c)
+    {
+        out.writeByte('\\');
+        switch (c)
+        {
+            case '\b':
+                out.writeByte('b');
+                break;
+            case '\f':
+                out.writeByte('f');
+                break;
+            case '\n':
+                out.writeByte('n');
+                break;
+            case '\r':
+                out.writeByte('r');
+                break;
+            case '\t':
+                out.writeByte('t');
+                break;
+            default:
+                out.writeByte('u');
+                out.writeByte('0');
+                out.writeByte('0');
+                out.writeByte(HEX_BYTES[c >> 4]);
+                out.writeByte(HEX_BYTES[c & 0xf]);
+        }
+    }
+
+    /**
+     * 写入十进制整数, 不生成中间字符串
+     * @param out   输出缓冲
+     * @param value 整数
+     */
+    private static void writeLong(ByteBuf out, long value)
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            out.writeBytes(LONG_MIN_BYTES);
+            return;
+        }
+        if (value < 0)
+        {
+            out.writeByte('-');
+            value = -value;
+        }
+
+        long divisor = 1;
+        while (value / divisor >= 10)
+        {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10)
+        {
+            out.writeByte('0' + (int) (value / divisor));
+            value %= divisor;
+        }
+    }
+
+    /**
+     * method for get sizeHint
+     */
+    public int getSizeHint() {
+        return sizeHint;
+    }
+}
@@ -0,0 +1,210 @@
+package com.bestv.supergate.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由计划
+ * 过滤器载入时编译一次, 之后只读, 每次请求随参数一起交给共享的处理器,
+ * 同一应用下的多个服务码不再共用处理器上的可变状态
+ * Created by flamhaze on 16/10/18.
+ */
+public final class RoutePlan {
+
+    /** 服务码 */
+    private final String serviceCode;
+
+    /** 接口名 */
+    private final String serviceInterface;
+
+    /** 方法名 */
+    private final String methodName;
+
+    /** 预编译的请求模板 */
+    private final RequestTemplate template;
+
+    /** 请求参数key组, 顺序与模板参数下标一致 */
+    private final String[] parameterKeys;
+
+    /** 请求参数类型组, 与请求参数key组一一对应 */
+    private final ParameterType[] parameterTypes;
+
+    /** 代码参数路径 -> 参数下标, JSON请求体按参数结构取值, 例如request.phoneNo对应{"request":{"phoneNo":...}} */
+    private final Map<String, Integer> pathIndexMap;
+
+    /** 代码参数路径的上级路径, 例如request.phoneNo的request, JSON请求体中只进入这些对象 */
+    private final Set<String> pathPrefixes;
+
+    /** 超时时间, 毫秒, 调用方给出的超时不能超过该值 */
+    private final long timeoutMillis;
+
+    /**
+     * 构造函数
+     * @param serviceCode      服务码
+     * @param serviceInterface 接口名
+     * @param methodName       方法名
+     * @param template         预编译的请求模板
+     * @param parameterKeys    请求参数key组
+     * @param parameterTypes   请求参数类型组
+     * @param parameterLinks   代码参数路径 -> 请求参数key, 路径相对于args
+     * @param timeoutMillis    超时时间, 毫秒
+     */
+    public RoutePlan(String serviceCode, String serviceInterface, String methodName, RequestTemplate template,
+                     String[] parameterKeys, ParameterType[] parameterTypes, Map<String, String> parameterLinks, long timeoutMillis)
+    {
+        this.serviceCode = serviceCode;
+        this.serviceInterface = serviceInterface;
+        this.methodName = methodName;
+        this.template = template;
+        this.parameterKeys = parameterKeys.clone();
+        this.parameterTypes = parameterTypes.clone();
+        this.timeoutMillis = timeoutMillis;
+
+        Map<String, Integer> keyIndexMap = new HashMap<String, Integer>();
+        for (int i = 0; i < parameterKeys.length; i++)
+        {
+            keyIndexMap.put(parameterKeys[i], i);
+        }
+
+        this.pathIndexMap = new HashMap<String, Integer>();
+        this.pathPrefixes = new HashSet<String>();
+        for (Map.Entry<String, String> link : parameterLinks.entrySet())
+        {
+            Integer index = keyIndexMap.get(link.getValue());
+            if (index == null)
+            {
+                continue;
+            }
+
+            String path = link.getKey();
+            pathIndexMap.put(path, index);
+            for (int dot = path.indexOf('.'); dot > 0; dot = path.indexOf('.', dot + 1))
+            {
+                pathPrefixes.add(path.substring(0, dot));
+            }
+        }
+    }
+
+    /**
+     * 生成请求帧, 截止时间从此刻起算
+     * @param values        参数值组, 顺序与请求参数key组一致
+     * @param timeoutMillis 超时时间, 毫秒, 不大于0或超过计划的超时时间时按计划的超时时间
+     * @return 请求帧
+     */
+    public RpcRequestFrame newFrame(Object[] values, long timeoutMillis)
+    {
+        return new RpcRequestFrame(template, values, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(capTimeout(timeoutMillis)));
+    }
+
+    /**
+     * 校验并转换参数值
+     * @param index  参数下标
+     * @param values 同名参数的所有值, 没有时为null
+     * @return 转换后的值
+     * @throws GateException 参数值无效, 400
+     */
+    public Object bind(int index, String[] values)
+    {
+        return parameterTypes[index].bindAll(parameterKeys[index], values);
+    }
+
+    /**
+     * 校验并转换参数值
+     * @param index 参数下标
+     * @param value 参数值, 没有时为null
+     * @return 转换后的值
+     * @throws GateException 参数值无效, 400
+     */
+    public Object bind(int index, String value)
+    {
+        return parameterTypes[index].bind(parameterKeys[index], value);
+    }
+
+    /**
+     * 按计划的超时时间限制调用方给出的超时时间
+     * @param requestedMillis 调用方给出的超时时间, 毫秒, 不大于0表示未给出
+     * @return 超时时间, 毫秒
+     */
+    public long capTimeout(long requestedMillis)
+    {
+        return requestedMillis > 0 && requestedMillis < timeoutMillis ? requestedMillis : timeoutMillis;
+    }
+
+    /**
+     * 获取参数个数
+     * @return 参数个数
+     */
+    public int getParameterCount()
+    {
+        return parameterKeys.length;
+    }
+
+    /**
+     * 获取请求参数key
+     * @param index 参数下标
+     * @return 请求参数key
+     */
+    public String getParameterKey(int index)
+    {
+        return parameterKeys[index];
+    }
+
+    /**
+     * 按代码参数路径获取参数下标
+     * @param path 代码参数路径, 相对于args, 例如request.phoneNo
+     * @return 参数下标, 没有链接请求参数时为-1
+     */
+    public int getParameterIndexByPath(String path)
+    {
+        Integer index = pathIndexMap.get(path);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * 是否为代码参数路径的上级路径
+     * @param path 路径
+     * @return 是否有链接了请求参数的路径在该路径下
+     */
+    public boolean isParameterPathPrefix(String path)
+    {
+        return pathPrefixes.contains(path);
+    }
+
+    /**
+     * method for get serviceCode
+     */
+    public String getServiceCode() {
+        return serviceCode;
+    }
+
+    /**
+     * method for get serviceInterface
+     */
+    public String getServiceInterface() {
+        return serviceInterface;
+    }
+
+    /**
+     * method for get methodName
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * method for get timeoutMillis
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * method for get template
+     */
+    public RequestTemplate getTemplate() {
+        return template;
+    }
+}
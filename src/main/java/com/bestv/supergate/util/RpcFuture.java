@@ -0,0 +1,266 @@
+package com.bestv.supergate.util;
+
+import io.netty.channel.Channel;
+import io.netty.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RPC调用结果
+ * 发送前登记到通道的关联表, 收到回复或超时后完成
+ * Created by flamhaze on 16/10/18.
+ */
+public class RpcFuture implements Future<RpcResponse> {
+
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpcFuture.class);
+
+    /** 请求id */
+    private final String traceId;
+
+    /** 发送请求的通道 */
+    private final Channel channel;
+
+    /** 完成标记, 保证只完成一次 */
+    private final AtomicBoolean done;
+
+    /** 完成信号 */
+    private final CountDownLatch latch;
+
+    /** rpc请求结果 */
+    private volatile RpcResponse result;
+
+    /** 失败原因 */
+    private volatile Throwable cause;
+
+    /** 超时任务 */
+    private volatile Timeout timeout;
+
+    /** 完成回调, 完成后置为null */
+    private List<Listener> listeners;
+
+    /**
+     * 构造函数
+     * @param traceId 请求id
+     * @param channel 发送请求的通道
+     */
+    public RpcFuture(String traceId, Channel channel)
+    {
+        this.traceId = traceId;
+        this.channel = channel;
+        this.done = new AtomicBoolean();
+        this.latch = new CountDownLatch(1);
+        this.listeners = new ArrayList<Listener>(1);
+    }
+
+    /**
+     * 添加完成回调, 已完成时立即在当前线程执行
+     * 回调在完成调用的线程执行, 可能是netty的io线程, 不应在回调中阻塞
+     * @param listener 完成回调
+     */
+    public void addListener(Listener listener)
+    {
+        synchronized (this)
+        {
+            if (listeners != null)
+            {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * 填充rpc请求结果
+     * @param result rpc请求结果
+     * @return 是否由本次调用完成, 已超时或已失败时为false
+     */
+    public boolean complete(RpcResponse result)
+    {
+        if (!done.compareAndSet(false, true))
+        {
+            return false;
+        }
+
+        this.result = result;
+        finish();
+        return true;
+    }
+
+    /**
+     * 以失败结束
+     * @param cause 失败原因
+     * @return 是否由本次调用完成
+     */
+    public boolean fail(Throwable cause)
+    {
+        if (!done.compareAndSet(false, true))
+        {
+            return false;
+        }
+
+        this.cause = cause;
+        finish();
+        return true;
+    }
+
+    /**
+     * 结束等待, 取消超时任务, 执行完成回调
+     */
+    private void finish()
+    {
+        Timeout currentTimeout = timeout;
+        if (currentTimeout != null)
+        {
+            currentTimeout.cancel();
+        }
+        latch.countDown();
+
+        List<Listener> currentListeners;
+        synchronized (this)
+        {
+            currentListeners = listeners;
+            listeners = null;
+        }
+
+        for (Listener listener : currentListeners)
+        {
+            notifyListener(listener);
+        }
+    }
+
+    /**
+     * 执行完成回调
+     * @param listener 完成回调
+     */
+    private void notifyListener(Listener listener)
+    {
+        try
+        {
+            listener.operationComplete(this);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("rpc请求完成回调失败, traceId: " + traceId, e);
+        }
+    }
+
+    /**
+     * @see Future#cancel(boolean)
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    /**
+     * @see Future#isCancelled()
+     */
+    public boolean isCancelled() {
+        return cause instanceof CancellationException;
+    }
+
+    /**
+     * @see Future#isDone()
+     */
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    /**
+     * @see Future#get()
+     */
+    public RpcResponse get() throws InterruptedException, ExecutionException {
+
+        latch.await();
+        return report();
+    }
+
+    /**
+     * @see Future#get(long, TimeUnit)
+     */
+    public RpcResponse get(long waitTime, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+
+        if (!latch.await(waitTime, unit))
+        {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    /**
+     * 返回结果或抛出失败原因
+     * @return rpc请求结果
+     */
+    private RpcResponse report() throws ExecutionException
+    {
+        if (cause != null)
+        {
+            throw new ExecutionException(cause);
+        }
+        return result;
+    }
+
+    /**
+     * method for get traceId
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * method for get channel
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * method for get result
+     */
+    public RpcResponse getResult() {
+        return result;
+    }
+
+    /**
+     * method for get cause
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * method for set timeout
+     */
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+
+        // 设置超时任务前已经完成
+        if (isDone())
+        {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 完成回调
+     */
+    public interface Listener {
+
+        /**
+         * 调用完成, 成功或失败
+         * @param future 调用结果
+         */
+        void operationComplete(RpcFuture future) throws Exception;
+    }
+}
@@ -1,10 +1,14 @@
 package com.bestv.supergate.util;
 
 import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.MetricRegistry;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RPC请求上下文
@@ -17,7 +21,22 @@ public class RpcRequestContext {
     private static final Map<String, RequestSenderHandler> SENDER_HANDLER_MAP = new ConcurrentHashMap<String, RequestSenderHandler>();
 
     /** 路由服务 */
-    private static RouterServer routerServer;
+    private static volatile RouterServer routerServer;
+
+    /** 路由服务就绪信号 */
+    private static final CountDownLatch ROUTER_SERVER_READY = new CountDownLatch(1);
+
+    /** 网关设置 */
+    private static GateProperties gateProperties = new GateProperties();
+
+    /** 请求id生成器 */
+    private static TraceIdGenerator traceIdGenerator = new SequenceTraceIdGenerator();
+
+    /** 指标注册表, 启动后替换为actuator使用的注册表 */
+    private static MetricRegistry metricRegistry = new MetricRegistry();
+
+    /** rpc传输资源, 启动时按网关设置创建 */
+    private static volatile RpcTransport transport;
 
     /**
      * 获取处理器
@@ -40,10 +59,23 @@ public class RpcRequestContext {
     }
 
     /**
-     * method for set routerServer
+     * 设置路由服务, 并唤醒等待的过滤器
      */
     public static void setRouterServer(RouterServer routerServer) {
         RpcRequestContext.routerServer = routerServer;
+        ROUTER_SERVER_READY.countDown();
+    }
+
+    /**
+     * 等待路由服务就绪, 各过滤器独立等待, 不互相阻塞
+     * @param timeoutMillis 等待超时时间, 毫秒
+     * @return 路由服务, 超时未就绪时为null
+     * @throws InterruptedException 等待被中断
+     */
+    public static RouterServer awaitRouterServer(long timeoutMillis) throws InterruptedException
+    {
+        ROUTER_SERVER_READY.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        return routerServer;
     }
 
     /**
@@ -52,4 +84,67 @@ public class RpcRequestContext {
     public static RouterServer getRouterServer() {
         return routerServer;
     }
-}
\ No newline at end of file
+
+    /**
+     * method for set gateProperties
+     */
+    public static void setGateProperties(GateProperties gateProperties) {
+        RpcRequestContext.gateProperties = gateProperties;
+    }
+
+    /**
+     * method for get gateProperties
+     */
+    public static GateProperties getGateProperties() {
+        return gateProperties;
+    }
+
+    /**
+     * method for set traceIdGenerator
+     */
+    public static void setTraceIdGenerator(TraceIdGenerator traceIdGenerator) {
+        RpcRequestContext.traceIdGenerator = traceIdGenerator;
+    }
+
+    /**
+     * method for get traceIdGenerator
+     */
+    public static TraceIdGenerator getTraceIdGenerator() {
+        return traceIdGenerator;
+    }
+
+    /**
+     * method for set metricRegistry
+     */
+    public static void setMetricRegistry(MetricRegistry metricRegistry) {
+        RpcRequestContext.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * method for get metricRegistry
+     */
+    public static MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * method for set transport
+     */
+    public static void setTransport(RpcTransport transport) {
+        RpcRequestContext.transport = transport;
+    }
+
+    /**
+     * 获取rpc传输资源
+     * @return rpc传输资源
+     * @throws IllegalStateException 尚未设置
+     */
+    public static RpcTransport getTransport() {
+        RpcTransport current = transport;
+        if (current == null)
+        {
+            throw new IllegalStateException("rpc传输资源尚未初始化");
+        }
+        return current;
+    }
+}
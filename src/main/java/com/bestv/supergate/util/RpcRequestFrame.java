@@ -0,0 +1,99 @@
+package com.bestv.supergate.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RPC请求帧
+ * 持有请求模板和参数, 发送时直接编码进输出缓冲
+ * Created by flamhaze on 16/10/18.
+ */
+public class RpcRequestFrame {
+
+    /** 请求模板 */
+    private final RequestTemplate template;
+
+    /** 参数组 */
+    private final Object[] args;
+
+    /** 截止时间, System.nanoTime()时钟 */
+    private final long deadlineNanos;
+
+    /** 请求id */
+    private String traceId;
+
+    /** 调用结果 */
+    private RpcFuture future;
+
+    /**
+     * 构造函数
+     * @param template 请求模板
+     * @param args     参数组
+     * @param deadlineNanos 截止时间, System.nanoTime()时钟
+     */
+    public RpcRequestFrame(RequestTemplate template, Object[] args, long deadlineNanos)
+    {
+        this.template = template;
+        this.args = args;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 获取距截止时间的剩余时间
+     * @return 剩余时间, 毫秒, 已过期时不大于0
+     */
+    public long getRemainingMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * 编码请求, 剩余时间随请求传给后端
+     * @param allocator 缓冲分配器
+     * @return 请求缓冲
+     */
+    public ByteBuf encode(ByteBufAllocator allocator)
+    {
+        ByteBuf out = allocator.buffer(template.getSizeHint());
+        try
+        {
+            template.write(out, args, traceId, Math.max(0L, getRemainingMillis()));
+            return out;
+        }
+        catch (RuntimeException e)
+        {
+            out.release();
+            throw e;
+        }
+    }
+
+    /**
+     * method for get traceId
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * method for set traceId
+     */
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    /**
+     * method for get future
+     */
+    public RpcFuture getFuture() {
+        return future;
+    }
+
+    /**
+     * method for set future
+     */
+    public void setFuture(RpcFuture future) {
+        this.future = future;
+    }
+}
@@ -0,0 +1,50 @@
+package com.bestv.supergate.util;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * rpc回复
+ * 持有原始回复帧, 由最终使用方负责释放
+ * Created by flamhaze on 16/10/18.
+ */
+public class RpcResponse {
+
+    /** 请求id */
+    private final String traceId;
+
+    /** 回复帧, 完整的RpcResult JSON */
+    private final ByteBuf content;
+
+    /**
+     * 构造函数
+     * @param traceId 请求id
+     * @param content 回复帧
+     */
+    public RpcResponse(String traceId, ByteBuf content)
+    {
+        this.traceId = traceId;
+        this.content = content;
+    }
+
+    /**
+     * 释放回复帧
+     */
+    public void release()
+    {
+        content.release();
+    }
+
+    /**
+     * method for get traceId
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * method for get content
+     */
+    public ByteBuf getContent() {
+        return content;
+    }
+}
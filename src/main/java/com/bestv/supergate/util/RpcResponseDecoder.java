@@ -0,0 +1,31 @@
+package com.bestv.supergate.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * rpc回复解码
+ * 只流式读取请求id, 不解析回复内容, 回复帧保留给调用方直接输出
+ * Created by flamhaze on 16/10/18.
+ */
+class RpcResponseDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+    /**
+     * @see MessageToMessageDecoder#decode(ChannelHandlerContext, Object, List)
+     */
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) throws Exception {
+
+        String traceId = RpcResultWriter.readTraceId(frame);
+
+        if (traceId == null)
+        {
+            throw new RuntimeException("rpc回复没有请求id");
+        }
+
+        out.add(new RpcResponse(traceId, frame.retain()));
+    }
+}
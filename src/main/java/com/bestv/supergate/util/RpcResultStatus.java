@@ -0,0 +1,17 @@
+package com.bestv.supergate.util;
+
+/**
+ * rpc回复状态
+ * Created by flamhaze on 16/10/18.
+ */
+public enum RpcResultStatus {
+
+    /** 调用成功 */
+    SUCCESS,
+
+    /** rpc调用成功, 业务结果的success为false */
+    BUSINESS_FAILURE,
+
+    /** rpc调用失败 */
+    RPC_FAILURE
+}
@@ -0,0 +1,259 @@
+package com.bestv.supergate.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * rpc回复输出
+ * 流式读取回复帧, 一次遍历去掉类型信息和异常堆栈, 直接以UTF-8写入输出流
+ * Created by flamhaze on 16/10/18.
+ */
+public final class RpcResultWriter {
+
+    /** JSON工厂, 线程安全 */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /** 类型信息键 */
+    private static final String TYPE_KEY = "@type";
+
+    /** 异常堆栈键 */
+    private static final String STACK_TRACE_KEY = "stackTraceElements";
+
+    /** rpc调用是否成功键 */
+    private static final String SUCCESS_KEY = "success";
+
+    /** 业务结果键 */
+    private static final String TARGET_RESULT_KEY = "targetResult";
+
+    /** 请求id键 */
+    private static final String TRACE_ID_KEY = "traceId";
+
+    private RpcResultWriter()
+    {
+    }
+
+    /**
+     * 读取回复帧的请求id, 只遍历最外层, 不读取缓冲位置
+     * @param frame 回复帧
+     * @return 请求id, 没有时为null
+     */
+    public static String readTraceId(ByteBuf frame) throws IOException
+    {
+        JsonParser parser = createParser(frame);
+
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                return null;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+
+                if (TRACE_ID_KEY.equals(name))
+                {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * 输出业务结果
+     * rpc调用成功时写出targetResult, 去掉所有@type键、只含@type的对象和异常堆栈
+     * @param frame 回复帧
+     * @param out   输出流
+     * @return 回复状态, rpc调用失败时不写出任何内容
+     */
+    public static RpcResultStatus write(ByteBuf frame, OutputStream out) throws IOException
+    {
+        JsonParser parser = createParser(frame);
+
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                throw new RuntimeException("结果为空");
+            }
+
+            Boolean success = null;
+            Boolean businessSuccess = null;
+            boolean hasResult = false;
+            ByteArrayOutputStream pending = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                if (SUCCESS_KEY.equals(name))
+                {
+                    success = token == JsonToken.VALUE_TRUE;
+                }
+                else if (TARGET_RESULT_KEY.equals(name) && token != JsonToken.VALUE_NULL)
+                {
+                    hasResult = true;
+
+                    // 已知调用成功直接写出, 否则先暂存, 读到success后再决定
+                    OutputStream target = out;
+                    if (!Boolean.TRUE.equals(success))
+                    {
+                        pending = new ByteArrayOutputStream();
+                        target = pending;
+                    }
+
+                    JsonGenerator generator = JSON_FACTORY.createGenerator(target, JsonEncoding.UTF8);
+                    businessSuccess = copyValue(parser, generator);
+                    generator.close();
+                }
+                else
+                {
+                    parser.skipChildren();
+                }
+            }
+
+            if (!Boolean.TRUE.equals(success))
+            {
+                return RpcResultStatus.RPC_FAILURE;
+            }
+
+            if (!hasResult)
+            {
+                throw new RuntimeException("结果为空");
+            }
+
+            if (pending != null)
+            {
+                pending.writeTo(out);
+            }
+            return Boolean.FALSE.equals(businessSuccess) ? RpcResultStatus.BUSINESS_FAILURE : RpcResultStatus.SUCCESS;
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * 复制当前值
+     * @param parser    解析器, 位于值的第一个token
+     * @param generator 输出器
+     * @return 值为对象时其success字段的值, 没有时为null
+     */
+    private static Boolean copyValue(JsonParser parser, JsonGenerator generator) throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        Boolean success = null;
+
+        if (token == JsonToken.START_OBJECT)
+        {
+            generator.writeStartObject();
+            parser.nextToken();
+            success = copyFields(parser, generator);
+            generator.writeEndObject();
+        }
+        else if (token == JsonToken.START_ARRAY)
+        {
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY)
+            {
+                copyValue(parser, generator);
+            }
+            generator.writeEndArray();
+        }
+        else
+        {
+            generator.copyCurrentEvent(parser);
+        }
+        return success;
+    }
+
+    /**
+     * 复制对象的字段, 直到对象结束
+     * @param parser    解析器, 位于第一个字段名或对象结束
+     * @param generator 输出器
+     * @return 对象的success字段的值, 没有时为null
+     */
+    private static Boolean copyFields(JsonParser parser, JsonGenerator generator) throws IOException
+    {
+        Boolean success = null;
+
+        for (JsonToken token = parser.getCurrentToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken())
+        {
+            String name = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+
+            if (SUCCESS_KEY.equals(name) && valueToken.isBoolean())
+            {
+                success = valueToken == JsonToken.VALUE_TRUE;
+            }
+
+            if (TYPE_KEY.equals(name) || STACK_TRACE_KEY.equals(name))
+            {
+                parser.skipChildren();
+                continue;
+            }
+
+            if (valueToken != JsonToken.START_OBJECT)
+            {
+                generator.writeFieldName(name);
+                copyValue(parser, generator);
+                continue;
+            }
+
+            // 对象首个字段是@type时向后看一个token, 只含@type的对象整个去掉
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.FIELD_NAME && TYPE_KEY.equals(parser.getCurrentName()))
+            {
+                parser.nextToken();
+                parser.skipChildren();
+                first = parser.nextToken();
+
+                if (first == JsonToken.END_OBJECT)
+                {
+                    continue;
+                }
+            }
+
+            generator.writeFieldName(name);
+            generator.writeStartObject();
+            copyFields(parser, generator);
+            generator.writeEndObject();
+        }
+        return success;
+    }
+
+    /**
+     * 创建解析器, 堆缓冲直接解析底层数组
+     * @param frame 回复帧
+     * @return 解析器
+     */
+    private static JsonParser createParser(ByteBuf frame) throws IOException
+    {
+        if (frame.hasArray())
+        {
+            return JSON_FACTORY.createParser(frame.array(), frame.arrayOffset() + frame.readerIndex(), frame.readableBytes());
+        }
+        return JSON_FACTORY.createParser(new ByteBufInputStream(frame.duplicate()));
+    }
+}
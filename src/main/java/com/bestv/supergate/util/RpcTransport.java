@@ -0,0 +1,280 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RPC传输资源
+ * 所有处理器共用一个io线程组、一个连接器和按后端地址划分的连接池,
+ * 构造时按传入的网关设置初始化, 不读取全局设置; 进程内的实例由{@link RpcRequestContext}持有
+ * Created by flamhaze on 16/10/18.
+ */
+public final class RpcTransport {
+
+    /** 日志 */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpcTransport.class);
+
+    /** 后端地址指标名前缀 */
+    private static final String ENDPOINT_METRIC_PREFIX = "supergate.endpoint";
+
+    /** 网关设置 */
+    private final GateProperties gateProperties;
+
+    /** 指标注册表 */
+    private final MetricRegistry metricRegistry;
+
+    /** io线程组, linux下可用时使用epoll */
+    private final EventLoopGroup eventLoopGroup;
+
+    /** 连接器 */
+    private final Bootstrap bootstrap;
+
+    /** rpc请求超时调度器 */
+    private final HashedWheelTimer timeoutTimer;
+
+    /** 连接池, 后端地址 -> 连接池 */
+    private final ConcurrentMap<String, EndpointChannelPool> poolMap = new ConcurrentHashMap<String, EndpointChannelPool>();
+
+    /**
+     * 构造函数
+     * @param gateProperties 网关设置
+     * @param metricRegistry 指标注册表, 登记连接池指标
+     */
+    public RpcTransport(GateProperties gateProperties, MetricRegistry metricRegistry)
+    {
+        this.gateProperties = gateProperties;
+        this.metricRegistry = metricRegistry;
+
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("rpc-io", true);
+        Class<? extends Channel> channelClass;
+
+        if (isEpollAvailable())
+        {
+            eventLoopGroup = EpollTransport.newEventLoopGroup(gateProperties.getIoThreads(), threadFactory);
+            channelClass = EpollTransport.channelClass();
+        }
+        else
+        {
+            eventLoopGroup = new NioEventLoopGroup(gateProperties.getIoThreads(), threadFactory);
+            channelClass = NioSocketChannel.class;
+        }
+
+        bootstrap = new Bootstrap();
+        bootstrap.group(eventLoopGroup);                           //group 组
+        bootstrap.channel(channelClass);                           //channel 通道
+        bootstrap.option(ChannelOption.TCP_NODELAY, true);         //option 选项
+        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, gateProperties.getPool().getConnectTimeoutMillis());
+        bootstrap.handler(new ClientChildHandler(gateProperties.getMaxFrameLength()));    //handler 处理
+
+        timeoutTimer = new HashedWheelTimer(new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+        // 定时健康检查, 清理失效和空闲连接, 补足最小连接数
+        long interval = gateProperties.getPool().getHealthCheckIntervalMillis();
+        eventLoopGroup.next().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                for (EndpointChannelPool pool : poolMap.values())
+                {
+                    try
+                    {
+                        pool.maintain();
+                    }
+                    catch (Exception e)
+                    {
+                        LOGGER.error("连接池健康检查失败: " + pool.getRemoteAddress(), e);
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭所有连接池, 停止io线程和超时调度
+     * 未完成的请求随连接关闭失败
+     */
+    public void shutdown()
+    {
+        for (EndpointChannelPool pool : poolMap.values())
+        {
+            pool.close();
+            if (poolMap.remove(pool.getHost() + ":" + pool.getPort(), pool))
+            {
+                metricRegistry.removeMatching(gaugeFilter(pool.getHost() + ":" + pool.getPort()));
+            }
+        }
+        eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        timeoutTimer.stop();
+    }
+
+    /**
+     * epoll是否可用, 没有带epoll包或平台不支持时不可用
+     * @return 是否可用
+     */
+    private static boolean isEpollAvailable()
+    {
+        try
+        {
+            return Epoll.isAvailable();
+        }
+        catch (NoClassDefFoundError e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * 获取后端地址的连接池并增加引用, 没有可用连接时同步建立一个
+     * @param host 主机名
+     * @param port 端口号
+     * @return 连接池
+     */
+    public EndpointChannelPool acquirePool(String host, int port)
+    {
+        String key = host + ":" + port;
+
+        while (true)
+        {
+            EndpointChannelPool pool = poolMap.get(key);
+
+            if (pool == null)
+            {
+                EndpointChannelPool newPool = new EndpointChannelPool(bootstrap, host, port,
+                        gateProperties.getPool(), gateProperties.getCircuitBreaker());
+                pool = poolMap.putIfAbsent(key, newPool);
+                if (pool == null)
+                {
+                    pool = newPool;
+                    registerGauges(key, pool);
+                }
+            }
+
+            if (pool.retain())
+            {
+                try
+                {
+                    pool.ensureConnected();
+                    return pool;
+                }
+                catch (RuntimeException e)
+                {
+                    releasePool(pool);
+                    throw e;
+                }
+            }
+
+            // 已关闭的连接池, 移除后重建
+            poolMap.remove(key, pool);
+        }
+    }
+
+    /**
+     * 释放连接池引用, 没有处理器引用时关闭连接池
+     * @param pool 连接池
+     */
+    public void releasePool(EndpointChannelPool pool)
+    {
+        if (pool.release())
+        {
+            String key = pool.getHost() + ":" + pool.getPort();
+            if (poolMap.remove(key, pool))
+            {
+                metricRegistry.removeMatching(gaugeFilter(key));
+            }
+        }
+    }
+
+    /**
+     * 注册连接池指标, 同一地址的旧连接池指标先移除
+     * @param key  后端地址
+     * @param pool 连接池
+     */
+    private void registerGauges(String key, final EndpointChannelPool pool)
+    {
+        metricRegistry.removeMatching(gaugeFilter(key));
+
+        metricRegistry.register(MetricRegistry.name(ENDPOINT_METRIC_PREFIX, key, "connections"), new Gauge<Integer>() {
+            public Integer getValue() {
+                return pool.getConnectionCount();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(ENDPOINT_METRIC_PREFIX, key, "inFlight"), new Gauge<Integer>() {
+            public Integer getValue() {
+                return pool.getInFlightCount();
+            }
+        });
+        // 熔断状态, 0关闭 1打开 2半开, actuator只输出数值型指标
+        metricRegistry.register(MetricRegistry.name(ENDPOINT_METRIC_PREFIX, key, "circuitState"), new Gauge<Integer>() {
+            public Integer getValue() {
+                return pool.getCircuitBreaker().getState().ordinal();
+            }
+        });
+    }
+
+    /**
+     * 连接池指标过滤器
+     * @param key 后端地址
+     * @return 指标过滤器
+     */
+    private static MetricFilter gaugeFilter(String key)
+    {
+        final String prefix = MetricRegistry.name(ENDPOINT_METRIC_PREFIX, key) + ".";
+
+        return new MetricFilter() {
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(prefix);
+            }
+        };
+    }
+
+    /**
+     * method for get timeoutTimer
+     */
+    public HashedWheelTimer getTimeoutTimer() {
+        return timeoutTimer;
+    }
+
+    /**
+     * epoll传输, 单独成类, 没有epoll包时不会被加载
+     */
+    private static final class EpollTransport {
+
+        /**
+         * 创建epoll io线程组
+         * @param threads       线程数
+         * @param threadFactory 线程工厂
+         * @return io线程组
+         */
+        static EventLoopGroup newEventLoopGroup(int threads, DefaultThreadFactory threadFactory)
+        {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+
+        /**
+         * 获取epoll连接类型
+         * @return 连接类型
+         */
+        static Class<? extends Channel> channelClass()
+        {
+            return EpollSocketChannel.class;
+        }
+    }
+}
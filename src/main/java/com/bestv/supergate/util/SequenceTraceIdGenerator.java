@@ -0,0 +1,65 @@
+package com.bestv.supergate.util;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 默认请求id生成器
+ * 进程启动时取一次随机的节点前缀, 之后用分段计数器递增, 不再每次请求走SecureRandom.
+ * 格式: 节点前缀-分段号-序号
+ * Created by flamhaze on 16/10/18.
+ */
+public class SequenceTraceIdGenerator implements TraceIdGenerator {
+
+    /** 计数器间隔, 每个分段独占一个缓存行 */
+    private static final int PADDING = 8;
+
+    /** 节点前缀 */
+    private final String nodePrefix;
+
+    /** 分段数减一, 分段数为2的幂 */
+    private final int stripeMask;
+
+    /** 分段计数器 */
+    private final AtomicLongArray counters;
+
+    /** 各分段的id前缀 */
+    private final String[] stripePrefixes;
+
+    /**
+     * 构造函数
+     */
+    public SequenceTraceIdGenerator()
+    {
+        // 64位随机节点号, 多实例间碰撞概率可以忽略
+        long nodeId = new SecureRandom().nextLong();
+        nodePrefix = Long.toString(nodeId & Long.MAX_VALUE, 36) + Long.toString(System.currentTimeMillis(), 36);
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+        stripeMask = stripes - 1;
+        counters = new AtomicLongArray(stripes * PADDING);
+
+        stripePrefixes = new String[stripes];
+        for (int i = 0; i < stripes; i++)
+        {
+            stripePrefixes[i] = nodePrefix + "-" + Integer.toString(i, 36) + "-";
+        }
+    }
+
+    /**
+     * @see TraceIdGenerator#nextTraceId()
+     */
+    public String nextTraceId() {
+
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        long sequence = counters.getAndIncrement(stripe * PADDING);
+        return stripePrefixes[stripe].concat(Long.toString(sequence, 36));
+    }
+
+    /**
+     * method for get nodePrefix
+     */
+    public String getNodePrefix() {
+        return nodePrefix;
+    }
+}
@@ -0,0 +1,187 @@
+package com.bestv.supergate.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 服务码指标
+ * 过滤器载入时按服务码预先注册, 请求过程中只做计数和计时, 不查表、不拼接指标名;
+ * 通过actuator的/metrics输出
+ * Created by flamhaze on 16/10/18.
+ */
+public class ServiceMetrics {
+
+    /** 指标名前缀 */
+    private static final String METRIC_PREFIX = "supergate.service";
+
+    /** 请求过多 */
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /** 服务不可用 */
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    /** 网关超时 */
+    private static final int GATEWAY_TIMEOUT = 504;
+
+    /** 耗时统计窗口, 秒 */
+    private static final long LATENCY_WINDOW_SECONDS = 60L;
+
+    /** 服务码 -> 指标, 脚本重载后沿用 */
+    private static final ConcurrentMap<String, ServiceMetrics> METRICS_MAP = new ConcurrentHashMap<String, ServiceMetrics>();
+
+    /** 耗时, 含p50/p99/p999 */
+    private final Timer latency;
+
+    /** 请求数 */
+    private final Counter requests;
+
+    /** 未完成请求数 */
+    private final Counter inFlight;
+
+    /** rpc调用失败数 */
+    private final Counter rpcFailures;
+
+    /** 超时数 */
+    private final Counter timeouts;
+
+    /** 业务失败数 */
+    private final Counter businessFailures;
+
+    /** 网关拒绝数, 并发已满、熔断等卸载负载的429和503 */
+    private final Counter rejections;
+
+    /** 请求错误数, 参数错误、请求体过大等4xx */
+    private final Counter clientErrors;
+
+    /**
+     * 构造函数
+     * @param registry    指标注册表
+     * @param serviceCode 服务码
+     */
+    private ServiceMetrics(MetricRegistry registry, String serviceCode)
+    {
+        String prefix = MetricRegistry.name(METRIC_PREFIX, serviceCode);
+
+        this.latency = registry.timer(MetricRegistry.name(prefix, "latency"), new MetricRegistry.MetricSupplier<Timer>() {
+            public Timer newMetric() {
+                return new Timer(new SlidingTimeWindowArrayReservoir(LATENCY_WINDOW_SECONDS, TimeUnit.SECONDS));
+            }
+        });
+        this.requests = registry.counter(MetricRegistry.name(prefix, "requests"));
+        this.inFlight = registry.counter(MetricRegistry.name(prefix, "inFlight"));
+        this.rpcFailures = registry.counter(MetricRegistry.name(prefix, "errors", "rpcFailure"));
+        this.timeouts = registry.counter(MetricRegistry.name(prefix, "errors", "timeout"));
+        this.businessFailures = registry.counter(MetricRegistry.name(prefix, "errors", "businessFailure"));
+        this.rejections = registry.counter(MetricRegistry.name(prefix, "errors", "rejected"));
+        this.clientErrors = registry.counter(MetricRegistry.name(prefix, "errors", "clientError"));
+    }
+
+    /**
+     * 获取服务码的指标, 没有时注册
+     * @param serviceCode 服务码
+     * @return 指标
+     */
+    public static ServiceMetrics of(String serviceCode)
+    {
+        ServiceMetrics metrics = METRICS_MAP.get(serviceCode);
+
+        if (metrics == null)
+        {
+            ServiceMetrics newMetrics = new ServiceMetrics(RpcRequestContext.getMetricRegistry(), serviceCode);
+            metrics = METRICS_MAP.putIfAbsent(serviceCode, newMetrics);
+            if (metrics == null)
+            {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 请求开始
+     * @return 开始时间, 纳秒
+     */
+    public long begin()
+    {
+        requests.inc();
+        inFlight.inc();
+        return System.nanoTime();
+    }
+
+    /**
+     * 请求完成
+     * @param startNanos 开始时间, 纳秒
+     * @param status     回复状态
+     */
+    public void end(long startNanos, RpcResultStatus status)
+    {
+        inFlight.dec();
+        latency.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+        if (status == RpcResultStatus.RPC_FAILURE)
+        {
+            rpcFailures.inc();
+        }
+        else if (status == RpcResultStatus.BUSINESS_FAILURE)
+        {
+            businessFailures.inc();
+        }
+    }
+
+    /**
+     * 请求失败
+     * 网关异常按状态码分类: 504截止时间已到计为超时, 429和503计为网关拒绝, 其他4xx计为请求错误;
+     * rpc超时计为超时, 其他都算rpc调用失败
+     * @param startNanos 开始时间, 纳秒
+     * @param cause      失败原因
+     */
+    public void fail(long startNanos, Throwable cause)
+    {
+        inFlight.dec();
+        latency.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+        GateException gateException = GateException.find(cause);
+        int status = gateException == null ? 0 : gateException.getStatus();
+
+        if (status == GATEWAY_TIMEOUT || (gateException == null && isTimeout(cause)))
+        {
+            timeouts.inc();
+        }
+        else if (status == TOO_MANY_REQUESTS || status == SERVICE_UNAVAILABLE)
+        {
+            rejections.inc();
+        }
+        else if (status >= 400 && status < 500)
+        {
+            clientErrors.inc();
+        }
+        else
+        {
+            rpcFailures.inc();
+        }
+    }
+
+    /**
+     * 是否为超时, 查找整个异常链
+     * @param cause 失败原因
+     * @return 是否为超时
+     */
+    public static boolean isTimeout(Throwable cause)
+    {
+        for (Throwable current = cause; current != null; current = current.getCause())
+        {
+            if (current instanceof TimeoutException)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
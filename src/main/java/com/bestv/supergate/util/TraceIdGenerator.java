@@ -0,0 +1,15 @@
+package com.bestv.supergate.util;
+
+/**
+ * 请求id生成器
+ * 生成的id在所有网关实例间唯一, 用于关联rpc请求和回复
+ * Created by flamhaze on 16/10/18.
+ */
+public interface TraceIdGenerator {
+
+    /**
+     * 生成请求id
+     * @return 请求id
+     */
+    String nextTraceId();
+}
@@ -0,0 +1,45 @@
+package com.bestv.supergate.filter;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 过滤器基类测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class AbstractFilterTest {
+
+    @Test
+    public void ordersParameterKeysByPlaceholderNumber() {
+
+        Map<String, Object> keyMap = new HashMap<String, Object>();
+        String[] expected = new String[12];
+        for (int i = 0; i < expected.length; i++)
+        {
+            keyMap.put("p" + i, "key" + i);
+            expected[i] = "key" + i;
+        }
+
+        assertArrayEquals(expected, AbstractFilter.getParameterKeys(keyMap));
+    }
+
+    @Test
+    public void ordersBareAndZeroPaddedPlaceholders() {
+
+        Map<String, Object> keyMap = new HashMap<String, Object>();
+        keyMap.put("10", "c");
+        keyMap.put("2", "b");
+        keyMap.put("0", "a");
+        assertArrayEquals(new String[]{"a", "b", "c"}, AbstractFilter.getParameterKeys(keyMap));
+
+        keyMap.clear();
+        keyMap.put("p010", "c");
+        keyMap.put("p9", "b");
+        keyMap.put("p00", "a");
+        assertArrayEquals(new String[]{"a", "b", "c"}, AbstractFilter.getParameterKeys(keyMap));
+    }
+}
@@ -0,0 +1,223 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.bestv.supergate.util.RpcTransport;
+import com.bestv.supergate.util.SequenceTraceIdGenerator;
+import com.bestv.supergate.util.StubRpcServer;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.zuul.context.RequestContext;
+import io.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量请求过滤器测试
+ * 声明式路由过滤器经分发表执行, 应用处理器直连本机的测试用rpc服务端
+ * Created by flamhaze on 16/10/18.
+ */
+public class BatchDispatchFilterTest {
+
+    /** JSON解析 */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 应用名 */
+    private static final String APP_NAME = "stub";
+
+    /** 网关设置 */
+    private GateProperties gateProperties;
+
+    /** 测试用rpc服务端 */
+    private StubRpcServer server;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+
+        gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+        RpcRequestContext.setRouterServer(Mockito.mock(RouterServer.class));
+
+        server = new StubRpcServer();
+        server.start();
+
+        // 预先登记直连的处理器, 过滤器不再经软负载创建
+        RpcRequestContext.putHandler(APP_NAME, new RequestSenderHandler(APP_NAME, "com.bestv.stub.StubFacade",
+                "127.0.0.1", server.getPort(), true, false, null, null));
+
+        ServiceDispatchFilter.register(new DeclaredRouteFilter(definition("t.001", "query", "id", "LONG", null)));
+        ServiceDispatchFilter.register(new DeclaredRouteFilter(definition("t.002", "lookup", "name", "STRING", 60000L)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        ServiceDispatchFilter.unregister(DeclaredRouteFilter.filterNameOf("t.001"));
+        ServiceDispatchFilter.unregister(DeclaredRouteFilter.filterNameOf("t.002"));
+        ResponseCache.getCacheMap().clear();
+        RequestContext.getCurrentContext().unset();
+
+        transport.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void answersEachItemInRequestOrder() throws Exception {
+
+        MockHttpServletResponse response = run("["
+                + "{\"serviceCode\":\"t.001\",\"params\":{\"id\":1}},"
+                + "{\"serviceCode\":\"t.404\",\"params\":{}},"
+                + "{\"serviceCode\":\"t.001\",\"params\":{\"id\":\"abc\"}},"
+                + "{\"serviceCode\":\"t.002\",\"params\":{\"name\":\"中文\"}}]");
+
+        assertEquals(200, response.getStatus());
+        JsonNode results = MAPPER.readTree(response.getContentAsByteArray());
+        assertEquals(4, results.size());
+
+        assertEquals("t.001", results.get(0).get("serviceCode").asText());
+        assertTrue(results.get(0).get("success").asBoolean());
+        assertEquals("query", results.get(0).get("result").get("methodName").asText());
+        assertFalse(results.get(0).get("result").has("@type"));
+
+        assertFalse(results.get(1).get("success").asBoolean());
+        assertTrue(results.get(1).get("error").asText().contains("t.404"));
+
+        assertFalse(results.get(2).get("success").asBoolean());
+        assertTrue(results.get(2).get("error").asText().contains("id"));
+
+        assertTrue(results.get(3).get("success").asBoolean());
+        assertEquals("lookup", results.get(3).get("result").get("methodName").asText());
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void itemTimeoutOnlyAffectsThatItem() throws Exception {
+
+        server.setLatencyMillis(200);
+
+        MockHttpServletResponse response = run("["
+                + "{\"serviceCode\":\"t.001\",\"params\":{\"id\":1},\"timeout\":50},"
+                + "{\"serviceCode\":\"t.001\",\"params\":{\"id\":2}}]");
+
+        JsonNode results = MAPPER.readTree(response.getContentAsByteArray());
+        assertFalse(results.get(0).get("success").asBoolean());
+        assertEquals("请求超时", results.get(0).get("error").asText());
+        assertTrue(results.get(1).get("success").asBoolean());
+    }
+
+    @Test
+    public void cachedItemsShareOneRpc() throws Exception {
+
+        server.setLatencyMillis(50);
+
+        MockHttpServletResponse response = run("["
+                + "{\"serviceCode\":\"t.002\",\"params\":{\"name\":\"x\"}},"
+                + "{\"serviceCode\":\"t.002\",\"params\":{\"name\":\"x\"}}]");
+
+        JsonNode results = MAPPER.readTree(response.getContentAsByteArray());
+        assertTrue(results.get(0).get("success").asBoolean());
+        assertEquals(results.get(0).get("result"), results.get(1).get("result"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void rejectsTooManyItems() throws Exception {
+
+        gateProperties.getBatch().setMaxItems(1);
+
+        MockHttpServletResponse response = run("[{\"serviceCode\":\"t.001\"},{\"serviceCode\":\"t.001\"}]");
+
+        assertEquals(400, response.getStatus());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void rejectsOversizedBody() throws Exception {
+
+        gateProperties.setMaxBodyBytes(16);
+
+        MockHttpServletResponse response = run("[{\"serviceCode\":\"t.001\",\"params\":{\"id\":1}}]");
+
+        assertEquals(413, response.getStatus());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    /**
+     * 以当前请求上下文执行批量请求
+     * @param body 请求体
+     * @return 响应
+     */
+    private MockHttpServletResponse run(String body)
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", gateProperties.getBatch().getPath());
+        request.setContent(body.getBytes(CharsetUtil.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        RequestContext context = RequestContext.getCurrentContext();
+        context.setRequest(request);
+        context.setResponse(response);
+
+        BatchDispatchFilter filter = new BatchDispatchFilter();
+        assertTrue(filter.shouldFilter());
+        filter.run();
+        return response;
+    }
+
+    /**
+     * 构造一个参数的路由定义
+     * @param serviceCode  服务码
+     * @param methodName   方法名
+     * @param parameterKey 请求参数key, 同时为代码参数路径
+     * @param type         参数类型
+     * @param cacheTtl     缓存过期时间, 毫秒, 为null时不缓存
+     * @return 路由定义
+     */
+    private static RouteDefinition definition(String serviceCode, String methodName, String parameterKey,
+                                              String type, Long cacheTtl)
+    {
+        Map<String, Object> parameter = new HashMap<String, Object>();
+        parameter.put("key", parameterKey);
+        parameter.put("type", type);
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(parameterKey, parameter);
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("serviceCode", serviceCode);
+        map.put("appName", APP_NAME);
+        map.put("serviceInterface", "com.bestv.stub.StubFacade");
+        map.put("methodName", methodName);
+        map.put("parameters", parameters);
+        if (cacheTtl != null)
+        {
+            map.put("cache", Collections.<String, Object>singletonMap("ttlMillis", cacheTtl));
+        }
+        return RouteDefinition.parse(map, "test");
+    }
+}
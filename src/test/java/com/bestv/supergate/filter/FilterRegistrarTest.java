@@ -0,0 +1,123 @@
+package com.bestv.supergate.filter;
+
+import com.netflix.zuul.FilterLoader;
+import com.netflix.zuul.ZuulFilter;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * zuul过滤器登记测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class FilterRegistrarTest {
+
+    /** 测试用过滤器类型, 不与其他测试共用 */
+    private static final String FILTER_TYPE = "registrar-test";
+
+    @After
+    public void tearDown() {
+        FilterRegistrar.remove("first");
+        FilterRegistrar.remove("second");
+    }
+
+    @Test
+    public void putRefreshesTypeCachedBeforeRegistration() {
+
+        // 登记前的查询在FilterLoader中缓存了空列表
+        assertTrue(FilterLoader.getInstance().getFiltersByType(FILTER_TYPE).isEmpty());
+
+        ZuulFilter filter = new TestFilter(FILTER_TYPE, 0);
+        FilterRegistrar.put("first", filter);
+
+        List<ZuulFilter> filters = FilterLoader.getInstance().getFiltersByType(FILTER_TYPE);
+        assertEquals(1, filters.size());
+        assertSame(filter, filters.get(0));
+    }
+
+    @Test
+    public void putReplacesInstanceAndKeepsOrder() {
+
+        ZuulFilter second = new TestFilter(FILTER_TYPE, 2);
+        FilterRegistrar.put("second", second);
+        FilterRegistrar.put("first", new TestFilter(FILTER_TYPE, 1));
+        FilterLoader.getInstance().getFiltersByType(FILTER_TYPE);
+
+        ZuulFilter reloaded = new TestFilter(FILTER_TYPE, 1);
+        FilterRegistrar.put("first", reloaded);
+
+        List<ZuulFilter> filters = FilterLoader.getInstance().getFiltersByType(FILTER_TYPE);
+        assertEquals(2, filters.size());
+        assertSame(reloaded, filters.get(0));
+        assertSame(second, filters.get(1));
+    }
+
+    @Test
+    public void putMovesFilterWhenTypeChanges() {
+
+        FilterRegistrar.put("first", new TestFilter(FILTER_TYPE, 0));
+        FilterLoader.getInstance().getFiltersByType(FILTER_TYPE);
+
+        ZuulFilter moved = new TestFilter(FILTER_TYPE + "-other", 0);
+        FilterRegistrar.put("first", moved);
+
+        assertTrue(FilterLoader.getInstance().getFiltersByType(FILTER_TYPE).isEmpty());
+        assertTrue(FilterLoader.getInstance().getFiltersByType(FILTER_TYPE + "-other").contains(moved));
+
+        FilterRegistrar.remove("first");
+        assertTrue(FilterLoader.getInstance().getFiltersByType(FILTER_TYPE + "-other").isEmpty());
+    }
+
+    @Test
+    public void removeRefreshesTypeCache() {
+
+        ZuulFilter filter = new TestFilter(FILTER_TYPE, 0);
+        FilterRegistrar.put("first", filter);
+        assertFalse(FilterLoader.getInstance().getFiltersByType(FILTER_TYPE).isEmpty());
+
+        assertSame(filter, FilterRegistrar.remove("first"));
+        assertTrue(FilterLoader.getInstance().getFiltersByType(FILTER_TYPE).isEmpty());
+        assertNull(FilterRegistrar.remove("first"));
+    }
+
+    /**
+     * 测试用过滤器
+     */
+    private static final class TestFilter extends ZuulFilter {
+
+        /** 过滤器类型 */
+        private final String filterType;
+
+        /** 执行顺序 */
+        private final int filterOrder;
+
+        TestFilter(String filterType, int filterOrder)
+        {
+            this.filterType = filterType;
+            this.filterOrder = filterOrder;
+        }
+
+        public String filterType() {
+            return filterType;
+        }
+
+        public int filterOrder() {
+            return filterOrder;
+        }
+
+        public boolean shouldFilter() {
+            return true;
+        }
+
+        public Object run() {
+            return null;
+        }
+    }
+}
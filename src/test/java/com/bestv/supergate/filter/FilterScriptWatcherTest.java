@@ -0,0 +1,233 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.flame.client.handler.softrouter.RouterServer;
+import com.bestv.supergate.config.GateProperties;
+import com.bestv.supergate.util.RequestSenderHandler;
+import com.bestv.supergate.util.RpcRequestContext;
+import com.codahale.metrics.MetricRegistry;
+import com.netflix.zuul.FilterLoader;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.groovy.GroovyCompiler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 脚本和路由文件监听器测试
+ * 使用zuul的groovy编译器, 在临时目录中修改和删除文件
+ * Created by flamhaze on 16/10/18.
+ */
+public class FilterScriptWatcherTest {
+
+    /** 测试用过滤器类型, 不与其他测试共用 */
+    private static final String FILTER_TYPE = "watcher-test";
+
+    /** 等待变更生效的最长时间, 毫秒 */
+    private static final long AWAIT_MILLIS = 10000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** 监听器 */
+    private FilterScriptWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        RpcRequestContext.setMetricRegistry(new MetricRegistry());
+        RpcRequestContext.setRouterServer(Mockito.mock(RouterServer.class));
+
+        // 路由过滤器只需构造, 不发送请求
+        RpcRequestContext.putHandler("watched", Mockito.mock(RequestSenderHandler.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        if (watcher != null)
+        {
+            watcher.stop();
+        }
+        ServiceDispatchFilter.unregister(DeclaredRouteFilter.filterNameOf("w.001"));
+        ResponseCache.getCacheMap().clear();
+    }
+
+    @Test
+    public void reloadsAndRemovesPlainZuulFilterScripts() throws Exception {
+
+        File script = folder.newFile("PlainFilter.groovy");
+        writeScript(script, "v1");
+        start();
+
+        assertEquals("v1", awaitFilterResult("v1"));
+
+        writeScript(script, "v2");
+        assertEquals("v2", awaitFilterResult("v2"));
+
+        assertTrue(script.delete());
+        awaitFilterRemoved();
+    }
+
+    @Test
+    public void reloadsSameSecondSaveWithUnchangedModifiedTime() throws Exception {
+
+        File script = folder.newFile("PlainFilter.groovy");
+        writeScript(script, "v1");
+        long lastModified = script.lastModified();
+        start();
+        assertEquals("v1", awaitFilterResult("v1"));
+
+        // 修改时间精度较粗时, 同一秒内的第二次保存修改时间不变, 只有内容变化
+        writeScript(script, "v2");
+        assertTrue(script.setLastModified(lastModified));
+        assertEquals("v2", awaitFilterResult("v2"));
+
+        assertTrue(script.delete());
+        awaitFilterRemoved();
+    }
+
+    @Test
+    public void removesRouteAndResponseCacheWhenRouteFileIsDeleted() throws Exception {
+
+        File routes = folder.newFile("routes.yaml");
+        Files.write(routes.toPath(), ("routes:\n"
+                + "  - serviceCode: \"w.001\"\n"
+                + "    appName: \"watched\"\n"
+                + "    serviceInterface: \"com.bestv.stub.StubFacade\"\n"
+                + "    methodName: \"query\"\n"
+                + "    parameters:\n"
+                + "      id: \"id\"\n"
+                + "    cache:\n"
+                + "      ttlMillis: 60000\n").getBytes("UTF-8"));
+        start();
+
+        AbstractFilter filter = ServiceDispatchFilter.getFilter("w.001");
+        assertNotNull(filter);
+        assertSame(filter.getResponseCache(), ResponseCache.getCacheMap().get("w.001"));
+
+        assertTrue(routes.delete());
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (ServiceDispatchFilter.getFilter("w.001") != null)
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                fail("删除的路由仍在分发表中");
+            }
+            Thread.sleep(20L);
+        }
+        assertFalse(ResponseCache.getCacheMap().containsKey("w.001"));
+    }
+
+    @Test
+    public void dropsResponseCacheWhenReloadedRouteDisablesIt() throws Exception {
+
+        File routes = folder.newFile("routes.yaml");
+        String route = "routes:\n"
+                + "  - serviceCode: \"w.001\"\n"
+                + "    appName: \"watched\"\n"
+                + "    serviceInterface: \"com.bestv.stub.StubFacade\"\n"
+                + "    methodName: \"query\"\n";
+        Files.write(routes.toPath(), (route + "    cache:\n      ttlMillis: 60000\n").getBytes("UTF-8"));
+        start();
+        assertTrue(ResponseCache.getCacheMap().containsKey("w.001"));
+
+        AbstractFilter cached = ServiceDispatchFilter.getFilter("w.001");
+        Files.write(routes.toPath(), route.getBytes("UTF-8"));
+
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (ServiceDispatchFilter.getFilter("w.001") == cached)
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                fail("修改的路由没有重新载入");
+            }
+            Thread.sleep(20L);
+        }
+        assertNull(ServiceDispatchFilter.getFilter("w.001").getResponseCache());
+        assertFalse(ResponseCache.getCacheMap().containsKey("w.001"));
+    }
+
+    /**
+     * 载入临时目录并开始监听
+     */
+    private void start() throws Exception
+    {
+        watcher = new FilterScriptWatcher(folder.getRoot(), new GroovyCompiler());
+        watcher.start();
+    }
+
+    /**
+     * 写入不是{@link AbstractFilter}的zuul过滤器脚本, run()返回给定的版本号
+     * @param script  脚本文件
+     * @param version 版本号
+     */
+    private static void writeScript(File script, String version) throws Exception
+    {
+        Files.write(script.toPath(), ("import com.netflix.zuul.ZuulFilter\n"
+                + "class PlainFilter extends ZuulFilter {\n"
+                + "    String filterType() { '" + FILTER_TYPE + "' }\n"
+                + "    int filterOrder() { 0 }\n"
+                + "    boolean shouldFilter() { true }\n"
+                + "    Object run() { '" + version + "' }\n"
+                + "}\n").getBytes("UTF-8"));
+    }
+
+    /**
+     * 等待zuul执行的过滤器变为给定版本
+     * @param version 版本号
+     * @return 过滤器执行结果
+     */
+    private static Object awaitFilterResult(String version) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        Object result = null;
+
+        while (System.currentTimeMillis() < deadline)
+        {
+            List<ZuulFilter> filters = FilterLoader.getInstance().getFiltersByType(FILTER_TYPE);
+            assertTrue(filters.size() <= 1);
+            result = filters.isEmpty() ? null : filters.get(0).run();
+            if (version.equals(result))
+            {
+                return result;
+            }
+            Thread.sleep(20L);
+        }
+        return result;
+    }
+
+    /**
+     * 等待zuul不再执行脚本过滤器
+     */
+    private static void awaitFilterRemoved() throws Exception
+    {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+
+        while (!FilterLoader.getInstance().getFiltersByType(FILTER_TYPE).isEmpty())
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                fail("删除的脚本仍在执行");
+            }
+            Thread.sleep(20L);
+        }
+    }
+}
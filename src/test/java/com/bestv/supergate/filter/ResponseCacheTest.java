@@ -0,0 +1,167 @@
+package com.bestv.supergate.filter;
+
+import com.bestv.supergate.util.RpcResultStatus;
+import io.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 服务码返回结果缓存测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class ResponseCacheTest {
+
+    @After
+    public void tearDown() {
+        ResponseCache.getCacheMap().clear();
+    }
+
+    @Test
+    public void cachesSuccessfulResultsByParameterValues() throws Exception {
+
+        CountingLoader loader = new CountingLoader(RpcResultStatus.SUCCESS);
+        ResponseCache cache = new ResponseCache("S001", 60000L, 0L, loader);
+
+        assertBody("a:1", cache.get(new Object[]{"a", 1}).get(1, TimeUnit.SECONDS));
+        assertBody("a:1", cache.get(new Object[]{"a", 1}).get(1, TimeUnit.SECONDS));
+        assertBody("a:2", cache.get(new Object[]{"a", 2}).get(1, TimeUnit.SECONDS));
+        assertBody("[x, y]:null", cache.get(new Object[]{Arrays.asList("x", "y"), null}).get(1, TimeUnit.SECONDS));
+        cache.get(new Object[]{Arrays.asList("x", "y"), null}).get(1, TimeUnit.SECONDS);
+
+        assertEquals(3, loader.count.get());
+        assertEquals(2L, cache.stats().hitCount());
+    }
+
+    @Test
+    public void coalescesConcurrentMisses() throws Exception {
+
+        final CompletableFuture<ResponseCache.CachedResult> pending = new CompletableFuture<ResponseCache.CachedResult>();
+        final AtomicInteger count = new AtomicInteger();
+        ResponseCache cache = new ResponseCache("S001", 60000L, 100L, new ResponseCache.Loader() {
+            public CompletableFuture<ResponseCache.CachedResult> load(Object[] parameters, Executor executor) {
+                count.incrementAndGet();
+                return pending;
+            }
+        });
+
+        CompletableFuture<ResponseCache.CachedResult> first = cache.get(new Object[]{"a"});
+        CompletableFuture<ResponseCache.CachedResult> second = cache.get(new Object[]{"a"});
+        pending.complete(new ResponseCache.CachedResult("v".getBytes(CharsetUtil.UTF_8), RpcResultStatus.SUCCESS));
+
+        assertEquals(1, count.get());
+        assertSame(first.get(1, TimeUnit.SECONDS), second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void doesNotKeepFailedResults() throws Exception {
+
+        CountingLoader loader = new CountingLoader(RpcResultStatus.BUSINESS_FAILURE);
+        ResponseCache cache = new ResponseCache("S001", 60000L, 100L, loader);
+
+        assertEquals(RpcResultStatus.BUSINESS_FAILURE, cache.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS).getStatus());
+        cache.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void invalidatesRegisteredServiceCodes() throws Exception {
+
+        CountingLoader readLoader = new CountingLoader(RpcResultStatus.SUCCESS);
+        CountingLoader otherLoader = new CountingLoader(RpcResultStatus.SUCCESS);
+        ResponseCache read = new ResponseCache("READ", 60000L, 100L, readLoader);
+        ResponseCache other = new ResponseCache("OTHER", 60000L, 100L, otherLoader);
+        ResponseCache.register(read);
+        ResponseCache.register(other);
+
+        read.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+        other.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+
+        ResponseCache.invalidate(new String[]{"READ", "UNKNOWN"});
+        read.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+        other.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, readLoader.count.get());
+        assertEquals(1, otherLoader.count.get());
+    }
+
+    @Test
+    public void registerReplacesCacheOfSameServiceCode() throws Exception {
+
+        CountingLoader oldLoader = new CountingLoader(RpcResultStatus.SUCCESS);
+        CountingLoader newLoader = new CountingLoader(RpcResultStatus.SUCCESS);
+        ResponseCache oldCache = new ResponseCache("READ", 60000L, 100L, oldLoader);
+        ResponseCache newCache = new ResponseCache("READ", 60000L, 100L, newLoader);
+        ResponseCache.register(oldCache);
+        ResponseCache.register(newCache);
+
+        assertSame(newCache, ResponseCache.getCacheMap().get("READ"));
+
+        newCache.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+        ResponseCache.invalidate(new String[]{"READ"});
+        newCache.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, newLoader.count.get());
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception {
+
+        CountingLoader loader = new CountingLoader(RpcResultStatus.SUCCESS);
+        ResponseCache cache = new ResponseCache("S001", 50L, 100L, loader);
+
+        cache.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        cache.get(new Object[]{"a"}).get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, loader.count.get());
+    }
+
+    /**
+     * 计数的加载器, 输出内容为参数值以冒号连接
+     */
+    private static class CountingLoader implements ResponseCache.Loader {
+
+        /** 加载次数 */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /** 回复状态 */
+        private final RpcResultStatus status;
+
+        CountingLoader(RpcResultStatus status)
+        {
+            this.status = status;
+        }
+
+        public CompletableFuture<ResponseCache.CachedResult> load(Object[] parameters, Executor executor) {
+
+            count.incrementAndGet();
+            StringBuilder body = new StringBuilder();
+            for (Object parameter : parameters)
+            {
+                body.append(body.length() == 0 ? "" : ":").append(parameter);
+            }
+            return CompletableFuture.completedFuture(
+                    new ResponseCache.CachedResult(body.toString().getBytes(CharsetUtil.UTF_8), status));
+        }
+    }
+
+    /**
+     * 校验调用成功的输出内容
+     */
+    private static void assertBody(String expected, ResponseCache.CachedResult result)
+    {
+        assertEquals(RpcResultStatus.SUCCESS, result.getStatus());
+        assertArrayEquals(expected.getBytes(CharsetUtil.UTF_8), result.getBody());
+    }
+}
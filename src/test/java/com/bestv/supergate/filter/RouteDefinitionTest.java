@@ -0,0 +1,145 @@
+package com.bestv.supergate.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 声明式路由定义测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class RouteDefinitionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBundledRoutes() throws Exception {
+
+        List<RouteDefinition> definitions = RouteDefinition.read(new File("src/main/resources/groovies/routes.yaml"));
+
+        List<String> serviceCodes = new ArrayList<String>();
+        for (RouteDefinition definition : definitions)
+        {
+            serviceCodes.add(definition.getServiceCode());
+        }
+        assertEquals(7, definitions.size());
+        assertTrue(serviceCodes.contains("b000.001.001"));
+    }
+
+    @Test
+    public void readsJsonRoutesAndTopLevelLists() throws Exception {
+
+        File file = folder.newFile("routes.json");
+        Files.write(file.toPath(), ("[{\"serviceCode\":\"t.001\",\"appName\":\"a\",\"serviceInterface\":\"com.x.F\","
+                + "\"methodName\":\"m\",\"parameters\":{\"id\":{\"key\":\"id\",\"type\":\"long\"}}}]").getBytes("UTF-8"));
+
+        assertEquals("t.001", RouteDefinition.read(file).get(0).getServiceCode());
+    }
+
+    @Test
+    public void rejectsDuplicateServiceCodes() throws Exception {
+
+        File file = folder.newFile("routes.yaml");
+        String route = "  - {serviceCode: t.001, appName: a, serviceInterface: com.x.F, methodName: m}\n";
+        Files.write(file.toPath(), ("routes:\n" + route + route).getBytes("UTF-8"));
+
+        assertInvalid(file, "t.001");
+    }
+
+    @Test
+    public void rejectsNegativeCacheSettings() {
+
+        Map<String, Object> map = route();
+        map.put("cache", Collections.<String, Object>singletonMap("ttlMillis", -1));
+        assertInvalid(map, "cache.ttlMillis");
+
+        map.put("cache", Collections.<String, Object>singletonMap("maxSize", "-5"));
+        assertInvalid(map, "cache.maxSize");
+    }
+
+    @Test
+    public void rejectsInvalidFields() {
+
+        Map<String, Object> map = route();
+        map.remove("methodName");
+        assertInvalid(map, "methodName");
+
+        map = route();
+        map.put("timeoutMillis", "soon");
+        assertInvalid(map, "timeoutMillis");
+
+        map = route();
+        map.put("loadBalance", "RANDOM");
+        assertInvalid(map, "loadBalance");
+
+        map = route();
+        map.put("parameters", Collections.singletonMap("id", Collections.singletonMap("type", "LONG")));
+        assertInvalid(map, "parameters.id.key");
+
+        map = route();
+        Map<String, Object> parameter = new LinkedHashMap<String, Object>();
+        parameter.put("key", "id");
+        parameter.put("type", "DATE");
+        map.put("parameters", Collections.singletonMap("id", parameter));
+        assertInvalid(map, "parameters.id.type");
+    }
+
+    /**
+     * 构造最小的有效路由项
+     * @return 路由项
+     */
+    private static Map<String, Object> route()
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("serviceCode", "t.001");
+        map.put("appName", "a");
+        map.put("serviceInterface", "com.x.F");
+        map.put("methodName", "m");
+        return map;
+    }
+
+    /**
+     * 校验路由项无效, 提示中带出错字段
+     */
+    private static void assertInvalid(Map<String, Object> map, String key)
+    {
+        try
+        {
+            RouteDefinition.parse(map, "test");
+            fail("应拒绝: " + key);
+        }
+        catch (RuntimeException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains(key));
+        }
+    }
+
+    /**
+     * 校验路由文件无效, 提示中带出错内容
+     */
+    private static void assertInvalid(File file, String content) throws Exception
+    {
+        try
+        {
+            RouteDefinition.read(file);
+            fail("应拒绝: " + file);
+        }
+        catch (RuntimeException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains(content));
+        }
+    }
+}
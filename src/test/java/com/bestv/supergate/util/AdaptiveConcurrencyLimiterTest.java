@@ -0,0 +1,252 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 应用并发限制器测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    /** 1毫秒 */
+    private static final long ONE_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** 指标仓库 */
+    private MetricRegistry registry;
+
+    /** 设置 */
+    private GateProperties.Limiter config;
+
+    @Before
+    public void setUp() {
+
+        registry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(registry);
+
+        config = new GateProperties.Limiter();
+        config.setInitialLimit(10);
+        config.setMinLimit(4);
+        config.setMaxLimit(100);
+    }
+
+    @Test
+    public void rejectsAtLimitWithServiceUnavailable() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        for (int i = 1; i <= 10; i++)
+        {
+            assertEquals(i, limiter.acquire());
+        }
+
+        try
+        {
+            limiter.acquire();
+            fail();
+        }
+        catch (GateException e)
+        {
+            assertEquals(503, e.getStatus());
+        }
+        assertEquals(1L, registry.counter("supergate.app.app.rejected").getCount());
+    }
+
+    @Test
+    public void cancelFreesPermitWithoutAdjustingLimit() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        for (int i = 0; i < 10; i++)
+        {
+            limiter.acquire();
+        }
+
+        limiter.cancel();
+        assertEquals(10, limiter.getLimit());
+        assertEquals(10, limiter.acquire());
+        assertEquals(10, gauge("supergate.app.app.inFlight"));
+    }
+
+    @Test
+    public void backsOffOnDroppedRequestsDownToMinimum() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+
+        limiter.release(limiter.acquire(), 0L, true);
+        assertEquals(9, limiter.getLimit());
+
+        // 每个请求都在上次退让之后发出, 逐次退让
+        for (int i = 0; i < 50; i++)
+        {
+            limiter.release(limiter.acquire(), 0L, true);
+        }
+        assertEquals(config.getMinLimit(), limiter.getLimit());
+        assertEquals(config.getMinLimit(), gauge("supergate.app.app.limit"));
+    }
+
+    @Test
+    public void backsOffOnceForSimultaneousTimeouts() throws Exception {
+
+        config.setInitialLimit(60);
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(50);
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+
+        // 50个请求同时发出, 后端卡顿后同时超时
+        Thread.sleep(5L);
+        final long sentNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < 50; i++)
+        {
+            final int acquired = limiter.acquire();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try
+                    {
+                        start.await();
+                        limiter.release(acquired, System.nanoTime() - sentNanos, true);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(54, limiter.getLimit());
+        assertEquals(0, gauge("supergate.app.app.inFlight"));
+
+        // 退让之后发出的请求再超时, 继续退让
+        limiter.release(limiter.acquire(), 0L, true);
+        assertEquals(48, limiter.getLimit());
+    }
+
+    @Test
+    public void growsWhenSaturatedAndRttIsSteady() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        saturate(limiter, 200, ONE_MILLI);
+
+        assertTrue(limiter.getLimit() > 10);
+        assertTrue(limiter.getLimit() <= config.getMaxLimit());
+    }
+
+    @Test
+    public void doesNotGrowWhenUnderused() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        for (int i = 0; i < 200; i++)
+        {
+            limiter.release(limiter.acquire(), ONE_MILLI, false);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenRttRises() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        saturate(limiter, 100, ONE_MILLI);
+        int grown = limiter.getLimit();
+
+        // 长期rtt会逐渐跟上新的rtt, 只看变慢后的少量样本
+        saturate(limiter, 2, 20 * ONE_MILLI);
+
+        assertTrue(limiter.getLimit() < grown);
+        assertTrue(limiter.getLimit() >= config.getMinLimit());
+    }
+
+    @Test
+    public void balancesPermitsUnderConcurrency() throws Exception {
+
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("app", config);
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int t = 0; t < 8; t++)
+        {
+            final int seed = t;
+            executor.execute(new Runnable() {
+                public void run() {
+                    try
+                    {
+                        for (int i = 0; i < 5000; i++)
+                        {
+                            try
+                            {
+                                int acquired = limiter.acquire();
+                                limiter.release(acquired, ONE_MILLI, (i + seed) % 97 == 0);
+                            }
+                            catch (GateException e)
+                            {
+                                rejected.incrementAndGet();
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(0, gauge("supergate.app.app.inFlight"));
+        assertEquals(rejected.get(), registry.counter("supergate.app.app.rejected").getCount());
+        assertTrue(limiter.getLimit() >= config.getMinLimit() && limiter.getLimit() <= config.getMaxLimit());
+    }
+
+    /**
+     * 占满并发上限后逐个完成, 每个请求按占满时的未完成数释放
+     */
+    private static void saturate(AdaptiveConcurrencyLimiter limiter, int rounds, long rttNanos)
+    {
+        for (int round = 0; round < rounds; round++)
+        {
+            int limit = limiter.getLimit();
+            for (int i = 0; i < limit; i++)
+            {
+                limiter.acquire();
+            }
+            for (int i = 0; i < limit; i++)
+            {
+                limiter.release(limit, rttNanos, false);
+            }
+        }
+    }
+
+    /**
+     * 读取整数指标
+     */
+    @SuppressWarnings("unchecked")
+    private int gauge(String name)
+    {
+        return ((Gauge<Integer>) registry.getGauges().get(name)).getValue();
+    }
+}
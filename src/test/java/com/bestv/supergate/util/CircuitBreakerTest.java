@@ -0,0 +1,264 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 后端地址熔断器测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class CircuitBreakerTest {
+
+    /** 快速调用耗时 */
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** 慢调用耗时 */
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /** 打开持续时间, 毫秒 */
+    private static final long OPEN_MILLIS = 50L;
+
+    /** 设置 */
+    private GateProperties.CircuitBreaker config;
+
+    @Before
+    public void setUp() {
+
+        config = new GateProperties.CircuitBreaker();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(50);
+        config.setSlowCallDurationMillis(100L);
+        config.setSlowCallRateThreshold(80);
+        config.setOpenDurationMillis(OPEN_MILLIS);
+        config.setHalfOpenProbes(2);
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        for (int i = 0; i < 3; i++)
+        {
+            breaker.record(breaker.acquirePermit(), FAST, false);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertPermitted(breaker.acquirePermit());
+    }
+
+    @Test
+    public void opensOnFailureRate() {
+
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        breaker.record(breaker.acquirePermit(), FAST, true);
+        breaker.record(breaker.acquirePermit(), FAST, true);
+        breaker.record(breaker.acquirePermit(), FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.record(breaker.acquirePermit(), FAST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermit());
+    }
+
+    @Test
+    public void opensOnSlowCallRate() {
+
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        breaker.record(breaker.acquirePermit(), FAST, true);
+        for (int i = 0; i < 3; i++)
+        {
+            breaker.record(breaker.acquirePermit(), SLOW, true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.record(breaker.acquirePermit(), SLOW, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void slidingWindowForgetsOldFailures() {
+
+        config.setMinimumCalls(10);
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        record(breaker, 4, false);
+        record(breaker, 10, true);
+
+        // 最早的4次失败已移出窗口, 再失败4次仍只有40%
+        record(breaker, 4, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        record(breaker, 1, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenClosesAfterSuccessfulProbes() throws Exception {
+
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        long first = breaker.acquirePermit();
+        assertPermitted(first);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        long second = breaker.acquirePermit();
+        assertPermitted(second);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermit());
+
+        breaker.record(first, FAST, true);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(second, FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertPermitted(breaker.acquirePermit());
+
+        // 关闭后重新统计, 之前的失败不再计入
+        breaker.record(breaker.acquirePermit(), FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenReopensOnFailedOrSlowProbe() throws Exception {
+
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.acquirePermit();
+        assertPermitted(probe);
+        breaker.record(probe, FAST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermit());
+
+        Thread.sleep(OPEN_MILLIS + 10);
+        probe = breaker.acquirePermit();
+        assertPermitted(probe);
+        breaker.record(probe, SLOW, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void cancelReturnsProbePermit() throws Exception {
+
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.acquirePermit();
+        assertPermitted(probe);
+        assertPermitted(breaker.acquirePermit());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermit());
+
+        breaker.cancel(probe);
+        assertPermitted(breaker.acquirePermit());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermit());
+    }
+
+    @Test
+    public void ignoresLateResultsWhileOpen() {
+
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        long early = breaker.acquirePermit();
+        record(breaker, config.getMinimumCalls(), false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.record(early, FAST, true);
+        breaker.record(early, FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void ignoresResultsFromEarlierGenerationsWhileHalfOpen() throws Exception {
+
+        CircuitBreaker breaker = new CircuitBreaker(config);
+
+        // 打开前发出的慢请求
+        long early = breaker.acquirePermit();
+        record(breaker, config.getMinimumCalls(), false);
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        long first = breaker.acquirePermit();
+        long second = breaker.acquirePermit();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // 打开前的请求在半开时返回成功, 不能当作探测成功
+        breaker.record(early, FAST, true);
+        breaker.record(early, FAST, true);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // 失败也不能让半开的熔断器重新打开
+        breaker.record(early, FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // 归还上一代的名额不会多放行
+        breaker.cancel(early);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.acquirePermit());
+
+        breaker.record(first, FAST, true);
+        breaker.record(second, FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void ignoresProbesFromExpiredHalfOpenGeneration() throws Exception {
+
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+        long stale = breaker.acquirePermit();
+        assertPermitted(stale);
+
+        // 探测迟迟没有结果, 重新发放名额后旧探测的失败不再重新打开
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.acquirePermit();
+        assertPermitted(probe);
+        assertTrue(probe != stale);
+
+        breaker.record(stale, SLOW, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void disabledBreakerAlwaysAllows() {
+
+        config.setEnabled(false);
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        for (int i = 0; i < 20; i++)
+        {
+            breaker.record(breaker.acquirePermit(), FAST, false);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertPermitted(breaker.acquirePermit());
+    }
+
+    /**
+     * 检查已放行
+     */
+    private static void assertPermitted(long permit)
+    {
+        assertTrue(permit != CircuitBreaker.NOT_PERMITTED);
+    }
+
+    /**
+     * 记录多次快速调用
+     */
+    private static void record(CircuitBreaker breaker, int times, boolean success)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            breaker.record(breaker.acquirePermit(), FAST, success);
+        }
+    }
+
+    /**
+     * 构造已打开的熔断器
+     */
+    private CircuitBreaker openBreaker()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(config);
+        record(breaker, config.getMinimumCalls(), false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,250 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 后端地址连接池测试, 连接本机的测试用rpc服务端
+ * Created by flamhaze on 16/10/18.
+ */
+public class EndpointChannelPoolTest {
+
+    /** 网关设置 */
+    private GateProperties gateProperties;
+
+    /** 测试用rpc服务端 */
+    private StubRpcServer server;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+
+        gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+
+        server = new StubRpcServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void concurrentAcquiresShareSingleConnect() throws Exception {
+
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<EndpointChannelPool>> results = new ArrayList<Future<EndpointChannelPool>>();
+
+        for (int i = 0; i < threads; i++)
+        {
+            results.add(executor.submit(new Callable<EndpointChannelPool>() {
+                public EndpointChannelPool call() throws Exception {
+                    start.await();
+                    return transport.acquirePool("127.0.0.1", server.getPort());
+                }
+            }));
+        }
+        start.countDown();
+
+        EndpointChannelPool pool = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<EndpointChannelPool> result : results)
+        {
+            assertSame(pool, result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(1, server.getAcceptedCount());
+
+        // 最后一个引用释放后关闭连接
+        for (int i = 0; i < threads - 1; i++)
+        {
+            transport.releasePool(pool);
+        }
+        assertTrue(pool.isAlive());
+
+        transport.releasePool(pool);
+        assertFalse(pool.isAlive());
+        awaitOpenCount(0);
+    }
+
+    @Test
+    public void saturatedPoolFailsFastWithoutTrippingBreaker() throws Exception {
+
+        gateProperties.getPool().setMaxConnections(1);
+        gateProperties.getPool().setMaxInFlightPerConnection(2);
+        server.setLatencyMillis(300);
+
+        RequestSenderHandler handler = newHandler();
+        EndpointChannelPool pool = transport.acquirePool("127.0.0.1", server.getPort());
+        try
+        {
+            RoutePlan plan = RequestSenderHandlerTest.newPlan(3000L);
+            RpcFuture first = handler.sendAsync(plan, new Object[]{1L}, 0L);
+            RpcFuture second = handler.sendAsync(plan, new Object[]{2L}, 0L);
+
+            try
+            {
+                handler.sendAsync(plan, new Object[]{3L}, 0L);
+                fail();
+            }
+            catch (Exception e)
+            {
+                GateException gateException = GateException.find(e);
+                assertTrue(String.valueOf(e), gateException instanceof PoolSaturatedException);
+                assertEquals(503, gateException.getStatus());
+            }
+
+            assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitBreaker().getState());
+            assertEquals(1, pool.getConnectionCount());
+
+            first.get(2, TimeUnit.SECONDS).release();
+            second.get(2, TimeUnit.SECONDS).release();
+            assertEquals(2, server.getRequestCount());
+        }
+        finally
+        {
+            handler.releaseConnection(pool);
+            transport.releasePool(pool);
+        }
+    }
+
+    @Test
+    public void addsConnectionWhenBusyUpToMaximum() throws Exception {
+
+        gateProperties.getPool().setMaxConnections(2);
+        gateProperties.getPool().setMaxInFlightPerConnection(4);
+        server.setLatencyMillis(300);
+
+        RequestSenderHandler handler = newHandler();
+        EndpointChannelPool pool = transport.acquirePool("127.0.0.1", server.getPort());
+        try
+        {
+            RoutePlan plan = RequestSenderHandlerTest.newPlan(3000L);
+            List<RpcFuture> futures = new ArrayList<RpcFuture>();
+
+            // 首个连接过半后后台补充连接, 后续请求分到新连接上
+            for (int i = 0; i < 3; i++)
+            {
+                futures.add(handler.sendAsync(plan, new Object[]{(long) i}, 0L));
+            }
+            // 服务端已接受的连接不一定已加入连接池, 等连接池可以选到新连接
+            awaitConnectionCount(pool, 2);
+            for (int i = 3; i < 8; i++)
+            {
+                futures.add(handler.sendAsync(plan, new Object[]{(long) i}, 0L));
+            }
+
+            for (RpcFuture future : futures)
+            {
+                future.get(2, TimeUnit.SECONDS).release();
+            }
+            assertEquals(2, pool.getConnectionCount());
+            assertEquals(2, server.getAcceptedCount());
+        }
+        finally
+        {
+            handler.releaseConnection(pool);
+            transport.releasePool(pool);
+        }
+    }
+
+    @Test
+    public void reconnectsAfterBackendClosesConnections() throws Exception {
+
+        RequestSenderHandler handler = newHandler();
+        EndpointChannelPool pool = transport.acquirePool("127.0.0.1", server.getPort());
+        try
+        {
+            RoutePlan plan = RequestSenderHandlerTest.newPlan(3000L);
+            handler.send(plan, new Object[]{1L}, 0L).release();
+
+            server.closeConnections();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (pool.isAlive() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertFalse(pool.isAlive());
+
+            handler.send(plan, new Object[]{2L}, 0L).release();
+            assertTrue(pool.isAlive());
+            assertEquals(1, pool.getConnectionCount());
+            assertEquals(2, server.getAcceptedCount());
+        }
+        finally
+        {
+            handler.releaseConnection(pool);
+            transport.releasePool(pool);
+        }
+    }
+
+    /**
+     * 直连测试用rpc服务端的请求发送工具
+     * @return 请求发送工具
+     */
+    private RequestSenderHandler newHandler()
+    {
+        return new RequestSenderHandler("stub", "com.bestv.stub.StubFacade", "127.0.0.1", server.getPort(), true, false, null, null);
+    }
+
+    /**
+     * 等待服务端的打开连接数达到预期
+     * @param expected 预期连接数
+     */
+    private void awaitOpenCount(int expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getOpenCount() != expected && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, server.getOpenCount());
+    }
+
+    /**
+     * 等待连接池中的可用连接数达到预期
+     * @param pool     连接池
+     * @param expected 预期连接数
+     */
+    private static void awaitConnectionCount(EndpointChannelPool pool, int expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pool.getConnectionCount() != expected && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, pool.getConnectionCount());
+    }
+}
@@ -0,0 +1,261 @@
+package com.bestv.supergate.util;
+
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.FilterInputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * JSON请求体读取测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class JsonBodyReaderTest {
+
+    /** 路由计划: request.phoneNo -> mobile, ids -> ids, flag -> flag */
+    private static final RoutePlan PLAN = newPlan();
+
+    @Test
+    public void readsLinkedPathsAndSkipsOtherFields() throws Exception {
+
+        String body = "{\"other\":{\"phoneNo\":\"x\",\"deep\":[{\"a\":1}]},"
+                + "\"request\":{\"name\":\"n\",\"phoneNo\":\"13800000000\",\"inner\":{\"phoneNo\":\"y\"}},"
+                + "\"ids\":[1,\"2\",null],\"flag\":true,\"mobile\":\"ignored\"}";
+        String[][] values = JsonBodyReader.read(stream(body), PLAN);
+
+        assertArrayEquals(new String[]{"13800000000"}, values[0]);
+        assertArrayEquals(new String[]{"1", "2", null}, values[1]);
+        assertArrayEquals(new String[]{"true"}, values[2]);
+    }
+
+    @Test
+    public void leavesMissingParametersNull() throws Exception {
+
+        String[][] values = JsonBodyReader.read(stream("{\"request\":{},\"flag\":null}"), PLAN);
+
+        assertNull(values[0]);
+        assertNull(values[1]);
+        assertNull(values[2]);
+    }
+
+    @Test
+    public void takesLastValueOfRepeatedField() throws Exception {
+
+        String[][] values = JsonBodyReader.read(stream("{\"flag\":false,\"flag\":true}"), PLAN);
+
+        assertArrayEquals(new String[]{"true"}, values[2]);
+    }
+
+    @Test
+    public void rejectsMalformedBodiesWithBadRequest() throws Exception {
+
+        assertStatus(400, "[1,2]");
+        assertStatus(400, "\"text\"");
+        assertStatus(400, "{\"flag\":");
+        assertStatus(400, "{flag:true}");
+        assertStatus(400, "{\"flag\":{\"a\":1}}");
+        assertStatus(400, "{\"ids\":[[1]]}");
+        assertStatus(400, "{\"request\":{\"phoneNo\":{\"a\":1}}}");
+    }
+
+    @Test
+    public void rejectsDeclaredLengthOverLimit() {
+
+        try
+        {
+            JsonBodyReader.limit(stream("{}"), 11, 10);
+            fail();
+        }
+        catch (GateException e)
+        {
+            assertEquals(413, e.getStatus());
+        }
+        JsonBodyReader.checkLength(10, 10);
+        JsonBodyReader.checkLength(-1, 10);
+        JsonBodyReader.checkLength(100, 0);
+    }
+
+    @Test
+    public void rejectsChunkedBodyOverLimitWhileReading() throws Exception {
+
+        String body = "{\"flag\":true,\"padding\":\"0123456789012345678901234567890123456789\"}";
+
+        try
+        {
+            JsonBodyReader.read(JsonBodyReader.limit(stream(body), -1, 32), PLAN);
+            fail();
+        }
+        catch (GateException e)
+        {
+            assertEquals(413, e.getStatus());
+        }
+    }
+
+    @Test
+    public void acceptsBodyExactlyAtLimit() throws Exception {
+
+        String body = "{\"flag\":true}";
+        int length = body.getBytes(CharsetUtil.UTF_8).length;
+
+        String[][] values = JsonBodyReader.read(JsonBodyReader.limit(stream(body), -1, length), PLAN);
+        assertArrayEquals(new String[]{"true"}, values[2]);
+    }
+
+    @Test
+    public void skipsLimitWhenNotConfigured() {
+
+        InputStream in = stream("{}");
+        assertSame(in, JsonBodyReader.limit(in, 1000, 0));
+    }
+
+    @Test
+    public void readsBatchItemsAsStrings() throws Exception {
+
+        List<BatchItem> items = JsonBodyReader.readBatch(stream("["
+                + "{\"serviceCode\":\"t.001\",\"params\":{\"id\":1,\"ids\":[1,\"2\"],\"flag\":true,\"none\":null},"
+                + "\"timeout\":50,\"other\":{\"a\":[1]}},"
+                + "{\"params\":{},\"timeout\":\"80\"}]"), 2);
+
+        assertEquals(2, items.size());
+        BatchItem first = items.get(0);
+        assertEquals("t.001", first.getServiceCode());
+        assertEquals(Long.valueOf(50L), first.getTimeoutMillis());
+        assertEquals("1", first.getParams().get("id"));
+        assertArrayEquals(new String[]{"1", "2"}, (String[]) first.getParams().get("ids"));
+        assertEquals("true", first.getParams().get("flag"));
+        assertTrue(first.getParams().containsKey("none"));
+        assertNull(first.getParams().get("none"));
+
+        assertNull(items.get(1).getServiceCode());
+        assertEquals(Long.valueOf(80L), items.get(1).getTimeoutMillis());
+    }
+
+    @Test
+    public void rejectsMalformedBatchesWithBadRequest() throws Exception {
+
+        assertBatchStatus(400, "[]");
+        assertBatchStatus(400, "{}");
+        assertBatchStatus(400, "[1]");
+        assertBatchStatus(400, "[{\"serviceCode\":\"t.001\"}");
+        assertBatchStatus(400, "[{\"timeout\":\"soon\"}]");
+        assertBatchStatus(400, "[{\"params\":{\"id\":{\"a\":1}}}]");
+    }
+
+    @Test
+    public void stopsReadingBatchAtItemLimit() throws Exception {
+
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 100000; i++)
+        {
+            body.append(i == 0 ? "" : ",").append("{\"serviceCode\":\"t.001\",\"params\":{\"id\":").append(i).append("}}");
+        }
+        body.append("]");
+
+        final int[] consumed = new int[1];
+        InputStream in = new FilterInputStream(stream(body.toString())) {
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                consumed[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+
+        try
+        {
+            JsonBodyReader.readBatch(in, 20);
+            fail();
+        }
+        catch (GateException e)
+        {
+            assertEquals(400, e.getStatus());
+        }
+
+        // 超过上限时只读了解析器的一个缓冲区, 而不是整个请求体
+        assertTrue(consumed[0] + " / " + body.length(), consumed[0] < 64 * 1024);
+    }
+
+    @Test
+    public void rejectsChunkedBatchOverLimitWhileReading() throws Exception {
+
+        String body = "[{\"serviceCode\":\"t.001\",\"params\":{\"padding\":\"0123456789012345678901234567890123456789\"}}]";
+
+        try
+        {
+            JsonBodyReader.readBatch(JsonBodyReader.limit(stream(body), -1, 32), 20);
+            fail();
+        }
+        catch (GateException e)
+        {
+            assertEquals(413, e.getStatus());
+        }
+    }
+
+    /**
+     * 校验读取批量请求时返回的状态码
+     */
+    private static void assertBatchStatus(int status, String body) throws IOException
+    {
+        try
+        {
+            JsonBodyReader.readBatch(stream(body), 20);
+            fail("应拒绝: " + body);
+        }
+        catch (GateException e)
+        {
+            assertEquals(body, status, e.getStatus());
+        }
+    }
+
+    /**
+     * 校验读取请求体时返回的状态码
+     */
+    private static void assertStatus(int status, String body) throws IOException
+    {
+        try
+        {
+            JsonBodyReader.read(stream(body), PLAN);
+            fail("应拒绝: " + body);
+        }
+        catch (GateException e)
+        {
+            assertEquals(body, status, e.getStatus());
+        }
+    }
+
+    /**
+     * 请求体输入流
+     */
+    private static InputStream stream(String body)
+    {
+        return new ByteArrayInputStream(body.getBytes(CharsetUtil.UTF_8));
+    }
+
+    /**
+     * 构造测试用的路由计划
+     */
+    private static RoutePlan newPlan()
+    {
+        Map<String, String> links = new HashMap<String, String>();
+        links.put("request.phoneNo", "mobile");
+        links.put("ids", "ids");
+        links.put("flag", "flag");
+
+        return new RoutePlan("S001", "com.x.Service", "query",
+                RequestTemplate.compile("'{'\"args\":[{0},{1},{2}]'}'"),
+                new String[]{"mobile", "ids", "flag"},
+                new ParameterType[]{ParameterType.STRING, ParameterType.ARRAY, ParameterType.BOOLEAN},
+                links, 3000L);
+    }
+}
@@ -0,0 +1,95 @@
+package com.bestv.supergate.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 请求参数类型测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class ParameterTypeTest {
+
+    @Test
+    public void bindsValidValues() {
+
+        assertEquals("a b", ParameterType.STRING.bind("k", "a b"));
+        assertEquals(Integer.valueOf(-12), ParameterType.INT.bind("k", "-12"));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), ParameterType.LONG.bind("k", String.valueOf(Long.MAX_VALUE)));
+        assertEquals(Boolean.TRUE, ParameterType.BOOLEAN.bind("k", "TRUE"));
+        assertEquals(Boolean.FALSE, ParameterType.BOOLEAN.bind("k", "false"));
+        assertEquals(Collections.singletonList("x"), ParameterType.ARRAY.bind("k", "x"));
+    }
+
+    @Test
+    public void bindsMissingValuesAsNull() {
+
+        for (ParameterType type : ParameterType.values())
+        {
+            assertNull(type.name(), type.bind("k", null));
+            assertNull(type.name(), type.bindAll("k", null));
+        }
+        assertNull(ParameterType.INT.bindAll("k", new String[0]));
+    }
+
+    @Test
+    public void bindAllTakesFirstValueExceptForArrays() {
+
+        String[] values = {"1", "2"};
+
+        assertEquals(Integer.valueOf(1), ParameterType.INT.bindAll("k", values));
+        assertEquals(Arrays.asList("1", "2"), ParameterType.ARRAY.bindAll("k", values));
+    }
+
+    @Test
+    public void rejectsInvalidValuesWithBadRequest() {
+
+        assertBadRequest(ParameterType.INT, "abc");
+        assertBadRequest(ParameterType.INT, "");
+        assertBadRequest(ParameterType.INT, "1.5");
+        assertBadRequest(ParameterType.INT, String.valueOf(Integer.MAX_VALUE + 1L));
+        assertBadRequest(ParameterType.LONG, "9223372036854775808");
+        assertBadRequest(ParameterType.LONG, " 1");
+        assertBadRequest(ParameterType.BOOLEAN, "yes");
+        assertBadRequest(ParameterType.BOOLEAN, "1");
+    }
+
+    @Test
+    public void bindAllRejectsInvalidFirstValue() {
+
+        try
+        {
+            ParameterType.LONG.bindAll("userId", new String[]{"x", "1"});
+            fail();
+        }
+        catch (GateException e)
+        {
+            assertEquals(400, e.getStatus());
+            assertTrue(e.getMessage(), e.getMessage().contains("userId"));
+        }
+    }
+
+    /**
+     * 校验无效值返回400, 提示中带参数key和值
+     */
+    private static void assertBadRequest(ParameterType type, String value)
+    {
+        try
+        {
+            type.bind("age", value);
+            fail(type + " 应拒绝: " + value);
+        }
+        catch (GateException e)
+        {
+            assertEquals(400, e.getStatus());
+            assertTrue(e.getMessage(), e.getMessage().contains("age"));
+            assertTrue(e.getMessage(), e.getMessage().contains(value));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.bestv.supergate.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 峰值指数加权rtt测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class PeakEwmaTest {
+
+    /** 10毫秒 */
+    private static final long TEN_MILLIS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void newAddressCostsNothingUntilRequestsAreInFlight() {
+
+        PeakEwma ewma = new PeakEwma();
+
+        assertEquals(0d, ewma.cost(0), 0d);
+        assertTrue(ewma.cost(1) > TimeUnit.SECONDS.toNanos(3600));
+        assertTrue(ewma.cost(2) > ewma.cost(1));
+    }
+
+    @Test
+    public void takesPeakSampleImmediately() {
+
+        PeakEwma ewma = new PeakEwma();
+        ewma.record(TEN_MILLIS);
+        ewma.record(5 * TEN_MILLIS);
+
+        assertEquals(5 * TEN_MILLIS, ewma.cost(0), TEN_MILLIS * 0.01);
+    }
+
+    @Test
+    public void smallerSamplesDecayGradually() {
+
+        PeakEwma ewma = new PeakEwma();
+        ewma.record(5 * TEN_MILLIS);
+        ewma.record(TEN_MILLIS / 10);
+
+        // 间隔远小于衰减时间常数, 小样本几乎不拉低峰值
+        assertTrue(ewma.cost(0) > 4.9 * TEN_MILLIS);
+    }
+
+    @Test
+    public void costScalesWithInFlightRequests() {
+
+        PeakEwma ewma = new PeakEwma();
+        ewma.record(TEN_MILLIS);
+        double idle = ewma.cost(0);
+
+        assertEquals(idle * 4, ewma.cost(3), idle * 0.01);
+    }
+
+    @Test
+    public void decaysTowardsZeroWithoutSamples() throws Exception {
+
+        PeakEwma ewma = new PeakEwma();
+        ewma.record(TEN_MILLIS);
+        double before = ewma.cost(0);
+
+        Thread.sleep(200);
+        double after = ewma.cost(0);
+
+        assertTrue(after < before * 0.995);
+        assertTrue(after > 0);
+    }
+
+    @Test
+    public void prefersFasterAddressAtEqualLoad() {
+
+        PeakEwma fast = new PeakEwma();
+        PeakEwma slow = new PeakEwma();
+        fast.record(TEN_MILLIS);
+        slow.record(3 * TEN_MILLIS);
+
+        assertTrue(fast.cost(2) < slow.cost(2));
+        assertTrue(fast.cost(5) > slow.cost(0));
+    }
+}
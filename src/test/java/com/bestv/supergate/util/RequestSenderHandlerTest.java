@@ -0,0 +1,246 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 请求发送工具测试, 直连本机的测试用rpc服务端
+ * Created by flamhaze on 16/10/18.
+ */
+public class RequestSenderHandlerTest {
+
+    /** JSON解析 */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 服务接口 */
+    private static final String SERVICE_INTERFACE = "com.bestv.stub.StubFacade";
+
+    /** 测试用rpc服务端 */
+    private StubRpcServer server;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    /** 请求发送工具 */
+    private RequestSenderHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(metricRegistry);
+        transport = new RpcTransport(gateProperties, metricRegistry);
+        RpcRequestContext.setTransport(transport);
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+
+        server = new StubRpcServer();
+        server.start();
+        handler = new RequestSenderHandler("stub", SERVICE_INTERFACE, "127.0.0.1", server.getPort(), true, false, null, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        transport.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void correlatesOutOfOrderResponses() throws Exception {
+
+        server.setLatencyMillis(0, 20);
+        RoutePlan plan = newPlan(3000L);
+
+        List<RpcFuture> futures = new ArrayList<RpcFuture>();
+        for (int i = 0; i < 200; i++)
+        {
+            futures.add(handler.sendAsync(plan, new Object[]{(long) i}, 0L));
+        }
+
+        for (int i = 0; i < futures.size(); i++)
+        {
+            RpcFuture future = futures.get(i);
+            RpcResponse response = future.get(5, TimeUnit.SECONDS);
+            try
+            {
+                assertEquals(future.getTraceId(), response.getTraceId());
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(RpcResultStatus.SUCCESS, RpcResultWriter.write(response.getContent(), out));
+
+                JsonNode result = MAPPER.readTree(out.toByteArray());
+                assertEquals("query", result.get("methodName").asText());
+                assertEquals(i, result.get("args").get(0).asLong());
+                assertFalse(result.has("@type"));
+                assertFalse(result.get("error").has("stackTraceElements"));
+            }
+            finally
+            {
+                response.release();
+            }
+        }
+        assertEquals(200, server.getRequestCount());
+    }
+
+    @Test
+    public void sendBlocksForResult() throws Exception {
+
+        server.setPayloadBytes(64 * 1024);
+        RpcResponse response = handler.send(newPlan(3000L), new Object[]{7L}, 0L);
+
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(RpcResultStatus.SUCCESS, RpcResultWriter.write(response.getContent(), out));
+            assertEquals(64 * 1024, MAPPER.readTree(out.toByteArray()).get("payload").asText().length());
+        }
+        finally
+        {
+            response.release();
+        }
+    }
+
+    @Test
+    public void failsFastWhenBackendIsSlow() throws Exception {
+
+        server.setLatencyMillis(300);
+        RpcFuture future = handler.sendAsync(newPlan(3000L), new Object[]{1L}, 100L);
+
+        try
+        {
+            future.get(2, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof TimeoutException);
+        }
+
+        // 迟到的回复被丢弃, 关联表中不留下请求
+        Thread.sleep(400);
+        EndpointChannelPool pool = transport.acquirePool("127.0.0.1", server.getPort());
+        try
+        {
+            assertEquals(0, pool.getInFlightCount());
+            assertTrue(pool.isAlive());
+        }
+        finally
+        {
+            transport.releasePool(pool);
+        }
+    }
+
+    @Test
+    public void reportsRpcFailure() throws Exception {
+
+        server.setErrorRate(1.0);
+        RpcResponse response = handler.send(newPlan(3000L), new Object[]{1L}, 0L);
+
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(RpcResultStatus.RPC_FAILURE, RpcResultWriter.write(response.getContent(), out));
+            assertEquals(0, out.size());
+        }
+        finally
+        {
+            response.release();
+        }
+    }
+
+    @Test
+    public void rejectsExpiredRequestsWithoutSending() throws Exception {
+
+        RpcRequestFrame frame = new RpcRequestFrame(newPlan(3000L).getTemplate(), new Object[]{1L}, System.nanoTime() - 1);
+
+        try
+        {
+            handler.doAction("query", new Object[]{frame});
+            fail();
+        }
+        catch (Exception e)
+        {
+            assertEquals(504, GateException.find(e).getStatus());
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void spreadsRequestsAcrossHealthyPoolsWhenSelectedPoolIsOpen() throws Exception {
+
+        StubRpcServer second = new StubRpcServer();
+        StubRpcServer third = new StubRpcServer();
+        second.start();
+        third.start();
+
+        try
+        {
+            handler.connect("127.0.0.1", second.getPort());
+            handler.connect("127.0.0.1", third.getPort());
+
+            // 软负载固定选中的地址熔断
+            EndpointChannelPool pool = transport.acquirePool("127.0.0.1", server.getPort());
+            try
+            {
+                CircuitBreaker breaker = pool.getCircuitBreaker();
+                while (breaker.getState() != CircuitBreaker.State.OPEN)
+                {
+                    breaker.record(breaker.acquirePermit(), 0L, false);
+                }
+            }
+            finally
+            {
+                transport.releasePool(pool);
+            }
+
+            RoutePlan plan = newPlan(3000L);
+            for (int i = 0; i < 40; i++)
+            {
+                handler.send(plan, new Object[]{(long) i}, 0L).release();
+            }
+
+            assertEquals(0, server.getRequestCount());
+            assertEquals(20, second.getRequestCount());
+            assertEquals(20, third.getRequestCount());
+        }
+        finally
+        {
+            second.stop();
+            third.stop();
+        }
+    }
+
+    /**
+     * 构造测试用的路由计划, 一个长整数参数
+     * @param timeoutMillis 超时时间, 毫秒
+     * @return 路由计划
+     */
+    static RoutePlan newPlan(long timeoutMillis)
+    {
+        return new RoutePlan("t.001", SERVICE_INTERFACE, "query",
+                RequestTemplate.compile("'{'\"serviceInterface\":\"" + SERVICE_INTERFACE + "\",\"methodName\":\"query\",\"args\":[{0}]'}'"),
+                new String[]{"id"}, new ParameterType[]{ParameterType.LONG},
+                Collections.singletonMap("id", "id"), timeoutMillis);
+    }
+}
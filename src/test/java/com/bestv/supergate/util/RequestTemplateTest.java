@@ -0,0 +1,175 @@
+package com.bestv.supergate.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 请求模板测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class RequestTemplateTest {
+
+    /** JSON解析, 校验输出是合法JSON */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 两个参数的请求样式, 花括号按MessageFormat规则用单引号转义 */
+    private static final String TWO_ARGS = "'{'\"args\":[{0},{1}]'}'";
+
+    @Test
+    public void escapesQuotesBackslashesAndControlCharacters() throws Exception {
+
+        String value = "a\"b\\c\n\t\r\b\f\u0001\u001f";
+        JsonNode node = writeAndParse(TWO_ARGS, new Object[]{value, null}, "t1", 100L);
+
+        assertEquals(value, node.get("args").get(0).asText());
+        assertTrue(node.get("args").get(1).isNull());
+
+        String raw = write(TWO_ARGS, new Object[]{value, null}, "t1", 100L);
+        assertTrue(raw, raw.contains("\"a\\\"b\\\\c\\n\\t\\r\\b\\f\\u0001\\u001f\""));
+    }
+
+    @Test
+    public void encodesSurrogatePairsAndReplacesLoneSurrogates() throws Exception {
+
+        String emoji = new String(Character.toChars(0x1F600));
+        ByteBuf out = Unpooled.buffer();
+        RequestTemplate.compile(TWO_ARGS).write(out, new Object[]{emoji, "x\uD800y\uDC00"}, "t", 1L);
+
+        String json = out.toString(CharsetUtil.UTF_8);
+        byte[] emojiBytes = emoji.getBytes(CharsetUtil.UTF_8);
+        assertEquals(4, emojiBytes.length);
+        assertTrue(indexOf(out, emojiBytes) >= 0);
+
+        JsonNode node = MAPPER.readTree(json);
+        assertEquals(emoji, node.get("args").get(0).asText());
+        assertEquals("x?y?", node.get("args").get(1).asText());
+    }
+
+    @Test
+    public void encodesMultiByteCharacters() throws Exception {
+
+        JsonNode node = writeAndParse(TWO_ARGS, new Object[]{"中文", "é"}, "t", 1L);
+
+        assertEquals("中文", node.get("args").get(0).asText());
+        assertEquals("é", node.get("args").get(1).asText());
+    }
+
+    @Test
+    public void singleQuotesFollowMessageFormatRules() throws Exception {
+
+        JsonNode node = writeAndParse("'{'\"name\":\"it''s\",\"v\":{0}'}'", new Object[]{"x"}, "t", 1L);
+
+        assertEquals("it's", node.get("name").asText());
+        assertEquals("x", node.get("v").asText());
+    }
+
+    @Test
+    public void reusesArgumentIndexesInAnyOrder() throws Exception {
+
+        JsonNode node = writeAndParse("'{'\"a\":{1},\"b\":{0},\"c\":{1}'}'", new Object[]{"zero", "one"}, "t", 1L);
+
+        assertEquals("one", node.get("a").asText());
+        assertEquals("zero", node.get("b").asText());
+        assertEquals("one", node.get("c").asText());
+    }
+
+    @Test
+    public void writesTypedValuesWithoutQuotes() throws Exception {
+
+        String template = "'{'\"args\":[{0},{1},{2},{3},{4},{5}]'}'";
+        Object[] args = {7, -42L, Long.MIN_VALUE, Boolean.TRUE, Boolean.FALSE, Arrays.asList("a", 1L, null)};
+        String raw = write(template, args, "t", 0L);
+
+        assertTrue(raw, raw.startsWith("{\"args\":[7,-42," + Long.MIN_VALUE + ",true,false,[\"a\",1,null]]"));
+
+        JsonNode node = MAPPER.readTree(raw);
+        assertEquals(Long.MIN_VALUE, node.get("args").get(2).asLong());
+        assertTrue(node.get("args").get(3).isBoolean());
+    }
+
+    @Test
+    public void appendsEscapedTraceIdAndTimeout() throws Exception {
+
+        String traceId = "node-\"1\"\\x";
+        JsonNode node = writeAndParse(TWO_ARGS, new Object[]{"a", "b"}, traceId, 1234L);
+
+        assertEquals(traceId, node.get("traceId").asText());
+        assertEquals(1234L, node.get("timeout").asLong());
+    }
+
+    @Test
+    public void sizeHintCoversTypicalRequests() {
+
+        RequestTemplate template = RequestTemplate.compile(TWO_ARGS);
+        ByteBuf out = Unpooled.buffer(template.getSizeHint());
+        template.write(out, new Object[]{"short", 1}, "abcdefghijklmnopqrstuvwxyz0123456789", 3000L);
+
+        assertTrue(out.readableBytes() <= template.getSizeHint());
+    }
+
+    @Test
+    public void rejectsInvalidTemplates() {
+
+        String[] invalids = {"'{'\"a\":{0'}'", "'{'\"a\":{x}'}'", "[{0}]", ""};
+        for (String invalid : invalids)
+        {
+            try
+            {
+                RequestTemplate.compile(invalid);
+                fail("应拒绝: " + invalid);
+            }
+            catch (RuntimeException e)
+            {
+                // 预期
+            }
+        }
+    }
+
+    /**
+     * 按模板写出请求
+     */
+    private static String write(String template, Object[] args, String traceId, long timeoutMillis)
+    {
+        ByteBuf out = Unpooled.buffer();
+        RequestTemplate.compile(template).write(out, args, traceId, timeoutMillis);
+        return out.toString(CharsetUtil.UTF_8);
+    }
+
+    /**
+     * 按模板写出请求并解析
+     */
+    private static JsonNode writeAndParse(String template, Object[] args, String traceId, long timeoutMillis) throws Exception
+    {
+        return MAPPER.readTree(write(template, args, traceId, timeoutMillis));
+    }
+
+    /**
+     * 查找字节序列
+     */
+    private static int indexOf(ByteBuf buf, byte[] bytes)
+    {
+        outer:
+        for (int i = buf.readerIndex(); i <= buf.writerIndex() - bytes.length; i++)
+        {
+            for (int j = 0; j < bytes.length; j++)
+            {
+                if (buf.getByte(i + j) != bytes[j])
+                {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,144 @@
+package com.bestv.supergate.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * rpc回复输出测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class RpcResultWriterTest {
+
+    /** JSON解析, 按结构比较输出 */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void readsTopLevelTraceIdOnly() throws Exception {
+
+        ByteBuf frame = frame("{\"targetResult\":{\"traceId\":\"inner\"},\"traceId\":\"outer\",\"success\":true}");
+        int readerIndex = frame.readerIndex();
+
+        assertEquals("outer", RpcResultWriter.readTraceId(frame));
+        assertEquals(readerIndex, frame.readerIndex());
+        assertNull(RpcResultWriter.readTraceId(frame("{\"success\":true}")));
+        assertNull(RpcResultWriter.readTraceId(frame("[1]")));
+    }
+
+    @Test
+    public void stripsTypeKeysAndStackTraces() throws Exception {
+
+        String json = "{\"success\":true,\"traceId\":\"t\",\"targetResult\":{\"@type\":\"com.x.Result\",\"success\":true,"
+                + "\"data\":{\"@type\":\"com.x.Data\",\"name\":\"n\",\"tags\":[{\"@type\":\"com.x.Tag\",\"v\":1}]},"
+                + "\"empty\":{\"@type\":\"com.x.Empty\"},"
+                + "\"error\":{\"message\":\"m\",\"stackTraceElements\":[{\"lineNumber\":1}]}}}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(RpcResultStatus.SUCCESS, RpcResultWriter.write(frame(json), out));
+        assertJsonEquals("{\"success\":true,\"data\":{\"name\":\"n\",\"tags\":[{\"v\":1}]},\"error\":{\"message\":\"m\"}}", out);
+    }
+
+    @Test
+    public void keepsObjectsWhoseTypeIsNotFirst() throws Exception {
+
+        String json = "{\"success\":true,\"targetResult\":{\"data\":{\"name\":\"n\",\"@type\":\"com.x.Data\"}}}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RpcResultWriter.write(frame(json), out);
+        assertJsonEquals("{\"data\":{\"name\":\"n\"}}", out);
+    }
+
+    @Test
+    public void buffersTargetResultArrivingBeforeSuccess() throws Exception {
+
+        String json = "{\"targetResult\":{\"@type\":\"com.x.Result\",\"success\":false,\"code\":\"E1\"},\"success\":true}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(RpcResultStatus.BUSINESS_FAILURE, RpcResultWriter.write(frame(json), out));
+        assertJsonEquals("{\"success\":false,\"code\":\"E1\"}", out);
+    }
+
+    @Test
+    public void writesNothingWhenRpcFails() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(RpcResultStatus.RPC_FAILURE,
+                RpcResultWriter.write(frame("{\"targetResult\":{\"a\":1},\"success\":false}"), out));
+        assertEquals(RpcResultStatus.RPC_FAILURE,
+                RpcResultWriter.write(frame("{\"targetResult\":{\"a\":1}}"), out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void writesScalarAndArrayResults() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RpcResultWriter.write(frame("{\"success\":true,\"targetResult\":\"中文\"}"), out);
+        assertJsonEquals("\"中文\"", out);
+
+        out.reset();
+        RpcResultWriter.write(frame("{\"success\":true,\"targetResult\":[1,{\"@type\":\"x\",\"a\":2}]}"), out);
+        assertJsonEquals("[1,{\"a\":2}]", out);
+    }
+
+    @Test
+    public void rejectsMissingResult() throws Exception {
+
+        String[] invalids = {"{\"success\":true}", "{\"success\":true,\"targetResult\":null}", "[]"};
+        for (String invalid : invalids)
+        {
+            try
+            {
+                RpcResultWriter.write(frame(invalid), new ByteArrayOutputStream());
+                fail("应拒绝: " + invalid);
+            }
+            catch (RuntimeException e)
+            {
+                // 预期
+            }
+        }
+    }
+
+    @Test
+    public void readsDirectBuffers() throws Exception {
+
+        String json = "{\"success\":true,\"traceId\":\"t\",\"targetResult\":{\"a\":1}}";
+        byte[] bytes = json.getBytes(CharsetUtil.UTF_8);
+        ByteBuf direct = Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals("t", RpcResultWriter.readTraceId(direct));
+        assertEquals(RpcResultStatus.SUCCESS, RpcResultWriter.write(direct, out));
+        assertJsonEquals("{\"a\":1}", out);
+        direct.release();
+    }
+
+    /**
+     * 构造回复帧, 前面留出已读字节, 校验按读取位置解析
+     */
+    private static ByteBuf frame(String json)
+    {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeBytes("xx".getBytes(CharsetUtil.UTF_8));
+        frame.writeBytes(json.getBytes(CharsetUtil.UTF_8));
+        frame.skipBytes(2);
+        return frame;
+    }
+
+    /**
+     * 按结构比较输出
+     */
+    private static void assertJsonEquals(String expected, ByteArrayOutputStream out) throws Exception
+    {
+        assertEquals(MAPPER.readTree(expected), MAPPER.readTree(out.toByteArray()));
+    }
+}
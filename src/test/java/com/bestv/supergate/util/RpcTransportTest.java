@@ -0,0 +1,93 @@
+package com.bestv.supergate.util;
+
+import com.bestv.supergate.config.GateProperties;
+import com.codahale.metrics.MetricRegistry;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * rpc传输资源测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class RpcTransportTest {
+
+    /** 测试用rpc服务端 */
+    private StubRpcServer server;
+
+    /** rpc传输资源 */
+    private RpcTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+
+        GateProperties gateProperties = new GateProperties();
+        gateProperties.getLimiter().setEnabled(false);
+        RpcRequestContext.setGateProperties(gateProperties);
+        RpcRequestContext.setMetricRegistry(new MetricRegistry());
+        RpcRequestContext.setTraceIdGenerator(new SequenceTraceIdGenerator());
+
+        server = new StubRpcServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        if (transport != null)
+        {
+            transport.shutdown();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void usesSettingsGivenAtConstruction() throws Exception {
+
+        // 全局设置保持默认的16MB, 只有传给传输资源的设置限制帧长度
+        GateProperties transportProperties = new GateProperties();
+        transportProperties.setMaxFrameLength(1024);
+        transport = new RpcTransport(transportProperties, new MetricRegistry());
+        RpcRequestContext.setTransport(transport);
+
+        server.setPayloadBytes(4096);
+        RequestSenderHandler handler = new RequestSenderHandler("stub", "com.bestv.stub.StubFacade",
+                "127.0.0.1", server.getPort(), true, false, null, null);
+
+        try
+        {
+            handler.sendAsync(RequestSenderHandlerTest.newPlan(3000L), new Object[]{1L}, 0L).get(2, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof TooLongFrameException);
+        }
+    }
+
+    @Test
+    public void shutdownClosesPoolsAndRemovesGauges() throws Exception {
+
+        MetricRegistry metricRegistry = new MetricRegistry();
+        transport = new RpcTransport(new GateProperties(), metricRegistry);
+
+        EndpointChannelPool pool = transport.acquirePool("127.0.0.1", server.getPort());
+        assertTrue(pool.isAlive());
+        assertEquals(3, metricRegistry.getGauges().size());
+
+        transport.shutdown();
+        transport = null;
+
+        assertFalse(pool.isAlive());
+        assertTrue(metricRegistry.getGauges().isEmpty());
+    }
+}
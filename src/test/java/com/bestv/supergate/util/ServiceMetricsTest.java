@@ -0,0 +1,114 @@
+package com.bestv.supergate.util;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 服务码指标测试
+ * Created by flamhaze on 16/10/18.
+ */
+public class ServiceMetricsTest {
+
+    /** 服务码序号, 指标按服务码全局缓存, 每个用例使用新的服务码 */
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    /** 指标注册表 */
+    private MetricRegistry registry;
+
+    /** 服务码 */
+    private String serviceCode;
+
+    /** 指标 */
+    private ServiceMetrics metrics;
+
+    @Before
+    public void setUp() {
+
+        registry = new MetricRegistry();
+        RpcRequestContext.setMetricRegistry(registry);
+        serviceCode = "m." + SEQUENCE.incrementAndGet();
+        metrics = ServiceMetrics.of(serviceCode);
+    }
+
+    @Test
+    public void countsDeadlineFailuresAsTimeouts() {
+
+        metrics.fail(metrics.begin(), new GateException(504, "请求已超过截止时间, 不再发送"));
+        metrics.fail(metrics.begin(), new RuntimeException("rpc请求失败", new GateException(504, "请求超时")));
+
+        assertCounts(2, 0, 0, 0);
+    }
+
+    @Test
+    public void countsRpcTimeoutsAsTimeouts() {
+
+        metrics.fail(metrics.begin(), new ExecutionException(new TimeoutException("没有收到回复, 快速失败")));
+
+        assertCounts(1, 0, 0, 0);
+    }
+
+    @Test
+    public void countsLoadSheddingAsRejections() {
+
+        metrics.fail(metrics.begin(), new GateException(503, "应用并发已满"));
+        metrics.fail(metrics.begin(), new PoolSaturatedException("连接并发已满"));
+        metrics.fail(metrics.begin(), new GateException(429, "请求过多"));
+
+        assertCounts(0, 3, 0, 0);
+    }
+
+    @Test
+    public void countsBadRequestsAsClientErrors() {
+
+        metrics.fail(metrics.begin(), new GateException(400, "参数 id 应为整数"));
+        metrics.fail(metrics.begin(), new GateException(413, "请求体不能超过 1024 字节"));
+
+        assertCounts(0, 0, 2, 0);
+    }
+
+    @Test
+    public void countsOtherFailuresAsRpcFailures() {
+
+        metrics.fail(metrics.begin(), new RuntimeException("连接已关闭"));
+        metrics.end(metrics.begin(), RpcResultStatus.RPC_FAILURE);
+        metrics.end(metrics.begin(), RpcResultStatus.SUCCESS);
+
+        assertCounts(0, 0, 0, 2);
+        assertEquals(3L, registry.counter(name("requests")).getCount());
+        assertEquals(0L, registry.counter(name("inFlight")).getCount());
+        assertEquals(3L, registry.timer(name("latency")).getCount());
+    }
+
+    /**
+     * 检查各失败计数
+     * @param timeouts    超时数
+     * @param rejections  网关拒绝数
+     * @param clientErrors 请求错误数
+     * @param rpcFailures rpc调用失败数
+     */
+    private void assertCounts(long timeouts, long rejections, long clientErrors, long rpcFailures)
+    {
+        assertEquals("timeout", timeouts, registry.counter(name("errors", "timeout")).getCount());
+        assertEquals("rejected", rejections, registry.counter(name("errors", "rejected")).getCount());
+        assertEquals("clientError", clientErrors, registry.counter(name("errors", "clientError")).getCount());
+        assertEquals("rpcFailure", rpcFailures, registry.counter(name("errors", "rpcFailure")).getCount());
+        assertEquals(0L, registry.counter(name("inFlight")).getCount());
+    }
+
+    /**
+     * 指标名
+     * @param names 服务码之后的名称
+     * @return 指标名
+     */
+    private String name(String... names)
+    {
+        return MetricRegistry.name("supergate.service." + serviceCode, names);
+    }
+}
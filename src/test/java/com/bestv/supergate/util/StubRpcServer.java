@@ -0,0 +1,295 @@
+package com.bestv.supergate.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用rpc服务端
+ * 与后端服务相同的4字节长度前缀JSON帧, 回复带上请求id,
+ * 业务结果回显请求的methodName和args; 可设置延迟、附加内容大小和失败比例
+ * Created by flamhaze on 16/10/18.
+ */
+public class StubRpcServer {
+
+    /** JSON解析 */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 最大帧长度 */
+    private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /** io线程组 */
+    private final EventLoopGroup eventLoopGroup;
+
+    /** 已接受的连接 */
+    private final ChannelGroup channels;
+
+    /** 累计接受的连接数 */
+    private final AtomicInteger acceptedCount;
+
+    /** 累计收到的请求数 */
+    private final AtomicInteger requestCount;
+
+    /** 监听通道 */
+    private Channel serverChannel;
+
+    /** 最小回复延迟, 毫秒 */
+    private volatile long minLatencyMillis;
+
+    /** 最大回复延迟, 毫秒, 在最小和最大之间随机, 回复会乱序到达 */
+    private volatile long maxLatencyMillis;
+
+    /** 业务结果附加内容大小, 字节 */
+    private volatile int payloadBytes;
+
+    /** rpc调用失败的比例, 0到1 */
+    private volatile double errorRate;
+
+    /**
+     * 构造函数
+     */
+    public StubRpcServer()
+    {
+        this.eventLoopGroup = new NioEventLoopGroup(2, new DefaultThreadFactory("stub-rpc", true));
+        this.channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        this.acceptedCount = new AtomicInteger();
+        this.requestCount = new AtomicInteger();
+    }
+
+    /**
+     * 在本机随机端口启动
+     * @return 端口号
+     */
+    public int start() throws InterruptedException
+    {
+        final ChannelHandler requestHandler = new RequestHandler();
+
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        channels.add(ch);
+                        acceptedCount.incrementAndGet();
+                        ch.pipeline()
+                                .addLast(new LengthFieldPrepender(4, false))
+                                .addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4))
+                                .addLast(requestHandler);
+                    }
+                });
+
+        serverChannel = bootstrap.bind("127.0.0.1", 0).sync().channel();
+        return getPort();
+    }
+
+    /**
+     * 关闭已接受的连接, 继续监听
+     */
+    public void closeConnections() throws InterruptedException
+    {
+        channels.close().await();
+    }
+
+    /**
+     * 停止服务
+     */
+    public void stop() throws InterruptedException
+    {
+        if (serverChannel != null)
+        {
+            serverChannel.close().await();
+        }
+        channels.close().await();
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).await();
+    }
+
+    /**
+     * 设置固定延迟
+     * @param latencyMillis 回复延迟, 毫秒
+     */
+    public void setLatencyMillis(long latencyMillis)
+    {
+        setLatencyMillis(latencyMillis, latencyMillis);
+    }
+
+    /**
+     * 设置随机延迟
+     * @param minLatencyMillis 最小回复延迟, 毫秒
+     * @param maxLatencyMillis 最大回复延迟, 毫秒
+     */
+    public void setLatencyMillis(long minLatencyMillis, long maxLatencyMillis)
+    {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * method for set payloadBytes
+     */
+    public void setPayloadBytes(int payloadBytes) {
+        this.payloadBytes = payloadBytes;
+    }
+
+    /**
+     * method for set errorRate
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * method for get port
+     */
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    /**
+     * 获取累计接受的连接数
+     * @return 连接数
+     */
+    public int getAcceptedCount()
+    {
+        return acceptedCount.get();
+    }
+
+    /**
+     * 获取当前打开的连接数
+     * @return 连接数
+     */
+    public int getOpenCount()
+    {
+        return channels.size();
+    }
+
+    /**
+     * 获取累计收到的请求数
+     * @return 请求数
+     */
+    public int getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * 生成回复帧
+     * @param request 请求
+     * @return 回复帧内容
+     */
+    private byte[] buildResponse(JsonNode request) throws IOException
+    {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("@type", "com.bestv.flame.common.dto.RpcResponse");
+        response.set("traceId", request.get("traceId"));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (errorRate > 0 && random.nextDouble() < errorRate)
+        {
+            response.put("success", false);
+            response.putNull("targetResult");
+            return MAPPER.writeValueAsBytes(response);
+        }
+
+        ObjectNode targetResult = response.putObject("targetResult");
+        targetResult.put("@type", "com.bestv.stub.StubResult");
+        targetResult.put("success", true);
+        targetResult.set("methodName", request.get("methodName"));
+        targetResult.set("args", request.get("args"));
+        targetResult.putObject("error").putArray("stackTraceElements").addObject().put("lineNumber", 1);
+
+        if (payloadBytes > 0)
+        {
+            char[] payload = new char[payloadBytes];
+            for (int i = 0; i < payload.length; i++)
+            {
+                payload[i] = (char) ('a' + i % 26);
+            }
+            targetResult.put("payload", new String(payload));
+        }
+
+        response.put("success", true);
+        return MAPPER.writeValueAsBytes(response);
+    }
+
+    /**
+     * 请求处理, 按设置的延迟在连接的io线程回复
+     */
+    @ChannelHandler.Sharable
+    private final class RequestHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        /**
+         * @see SimpleChannelInboundHandler#channelRead0(ChannelHandlerContext, Object)
+         */
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+
+            requestCount.incrementAndGet();
+            JsonNode request = MAPPER.readTree(new ByteBufInputStream(frame));
+            final byte[] response = buildResponse(request);
+
+            long min = minLatencyMillis;
+            long max = maxLatencyMillis;
+            long latency = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+
+            if (latency <= 0)
+            {
+                reply(ctx, response);
+                return;
+            }
+
+            ctx.executor().schedule(new Runnable() {
+                public void run() {
+                    reply(ctx, response);
+                }
+            }, latency, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 写出回复
+         * @param ctx      通道上下文
+         * @param response 回复帧内容
+         */
+        private void reply(ChannelHandlerContext ctx, byte[] response)
+        {
+            if (!ctx.channel().isActive())
+            {
+                return;
+            }
+
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(response));
+        }
+
+        /**
+         * @see SimpleChannelInboundHandler#exceptionCaught(ChannelHandlerContext, Throwable)
+         */
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+    }
+}